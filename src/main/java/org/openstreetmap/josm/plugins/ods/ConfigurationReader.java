@@ -18,6 +18,8 @@ import org.apache.commons.configuration.SubnodeConfiguration;
 import org.apache.commons.configuration.XMLConfiguration;
 import org.geotools.filter.text.cql2.CQL;
 import org.geotools.filter.text.cql2.CQLException;
+import org.openstreetmap.josm.plugins.ods.entities.DefaultEntitySet;
+import org.openstreetmap.josm.plugins.ods.entities.Entity;
 import org.openstreetmap.josm.plugins.ods.entities.EntityFactory;
 import org.openstreetmap.josm.plugins.ods.geotools.GTDataLayer;
 import org.openstreetmap.josm.plugins.ods.metadata.HttpMetaDataLoader;
@@ -49,6 +51,7 @@ public class ConfigurationReader {
             conf.setAttributeSplittingDisabled(true);
             conf.load(configFile);
             configureImports(conf);
+            configureEntities(conf);
             configureHosts(conf);
             if (module != null) {
                 configureModule(conf);
@@ -82,6 +85,38 @@ public class ConfigurationReader {
         }
     }
 
+    private void configureEntities(HierarchicalConfiguration conf)
+            throws ConfigurationException {
+        List<HierarchicalConfiguration> confs = conf.configurationsAt("entity");
+        for (HierarchicalConfiguration c : confs) {
+            configureEntity(c);
+        }
+    }
+
+    /**
+     * Configure the store for an entity type. Entity types with id="long"
+     * have Long ids, and are kept in a LongEntityStore.
+     * 
+     * @param conf
+     * @throws ConfigurationException
+     */
+    private void configureEntity(HierarchicalConfiguration conf)
+            throws ConfigurationException {
+        conf.setThrowExceptionOnMissing(true);
+        String className = conf.getString("[@class]");
+        String idType = conf.getString("[@id]", null);
+        Class<? extends Entity> entityType;
+        try {
+            entityType = classLoader.loadClass(className).asSubclass(Entity.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new ConfigurationException(I18n.tr(
+                    "A class named {0} could not be found", className));
+        }
+        if ("long".equals(idType)) {
+            DefaultEntitySet.registerLongIdType(entityType);
+        }
+    }
+
     private void configureHosts(HierarchicalConfiguration conf)
             throws ConfigurationException {
         List<HierarchicalConfiguration> confs = conf.configurationsAt("host");
@@ -92,25 +127,37 @@ public class ConfigurationReader {
 
     private void configureHost(HierarchicalConfiguration conf)
             throws ConfigurationException {
-        Integer maxFeatures = null;
-        String s = conf.getString("[@maxFeatures]");
-        if (s!=null) {
-            try {
-                maxFeatures = Integer.parseInt(s);
-            } catch (NumberFormatException e) {
-                // Ignore
-            }
-        }
+        Integer maxFeatures = parseInteger(conf, "[@maxFeatures]");
+        Integer pageSize = parseInteger(conf, "[@pageSize]");
+        Integer maxRequests = parseInteger(conf, "[@maxRequests]");
+        String cacheVersion = conf.getString("[@cacheVersion]", null);
         conf.setThrowExceptionOnMissing(true);
         String name = conf.getString("[@name]");
         String type = conf.getString("[@type]");
         String url = conf.getString("[@url]", "");
         Host host = ODS.registerHost(type, name, url, maxFeatures);
+        host.setPageSize(pageSize);
+        host.setCacheVersionKey(cacheVersion);
+        if (maxRequests != null) {
+            host.setMaxRequests(maxRequests);
+        }
         for (MetaDataLoader metaDataLoader : parseMetaDataLoaders(conf)) {
             host.addMetaDataLoader(metaDataLoader);
         }
     }
 
+    private static Integer parseInteger(HierarchicalConfiguration conf, String key) {
+        String s = conf.getString(key);
+        if (s != null) {
+            try {
+                return Integer.parseInt(s);
+            } catch (NumberFormatException e) {
+                // Ignore
+            }
+        }
+        return null;
+    }
+
     private void configureDataSource(GTDataLayer layer, HierarchicalConfiguration conf) throws ConfigurationException {
         OdsFeatureSource odsFeatureSource = configureOdsFeatureSource(conf);
         OdsDataSource dataSource = odsFeatureSource.newDataSource();
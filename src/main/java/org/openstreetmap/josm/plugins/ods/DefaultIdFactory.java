@@ -18,6 +18,11 @@ public class DefaultIdFactory implements IdFactory {
     this.keyAttribute = keyAttribute;
   }
 
+  @Override
+  public String getKeyAttribute() {
+    return keyAttribute;
+  }
+
   @Override
   public Serializable getId(SimpleFeature feature) {
     if (keyAttribute == null) {
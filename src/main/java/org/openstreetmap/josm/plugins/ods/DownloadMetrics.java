@@ -0,0 +1,359 @@
+package org.openstreetmap.josm.plugins.ods;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.plugins.Plugin;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Stage;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.StageListener;
+
+/**
+ * Measurements of a single download. The wall time and an estimate of the
+ * allocated memory are recorded for every stage. The download tasks add
+ * counters, like the number of features per source, and timings of the
+ * work within a stage, like the analyzers and the merge into the data layer.
+ *
+ * The allocation estimate only counts the memory allocated by the thread
+ * that runs the stage, and is only available on Java runtimes that support
+ * com.sun.management.ThreadMXBean.
+ *
+ * After a download, the metrics are kept for the metrics dialog. If the
+ * openservices.metrics.log preference is set, they are also appended to
+ * metrics.log in the plugin directory as a line of JSON.
+ *
+ * @author gertjan
+ *
+ */
+public class DownloadMetrics implements StageListener {
+    private final static long NO_ALLOCATION = -1;
+    private final static long MAX_LOG_SIZE = 1024 * 1024;
+    private final static Method allocatedBytesMethod = getAllocatedBytesMethod();
+    private static volatile DownloadMetrics last;
+
+    private final Date date = new Date();
+    private final long start = System.nanoTime();
+    private long wallTime = -1;
+    private final Map<Stage, StageMetrics> stages = new LinkedHashMap<>();
+    private final Map<String, SourceMetrics> sources = new LinkedHashMap<>();
+
+    /**
+     * Get the metrics of the last download.
+     *
+     * @return the metrics, or null if nothing has been downloaded yet
+     */
+    public static DownloadMetrics getLast() {
+        return last;
+    }
+
+    @Override
+    public void stageStarted(Stage stage) {
+        StageMetrics metrics = new StageMetrics(stage);
+        metrics.start = System.nanoTime();
+        metrics.allocated = getAllocatedBytes();
+        synchronized (this) {
+            stages.put(stage, metrics);
+        }
+    }
+
+    @Override
+    public void stageFinished(Stage stage, boolean succeeded) {
+        long end = System.nanoTime();
+        long allocated = getAllocatedBytes();
+        synchronized (this) {
+            StageMetrics metrics = stages.get(stage);
+            if (metrics == null) {
+                return;
+            }
+            metrics.wallTime = end - metrics.start;
+            metrics.succeeded = succeeded;
+            if (metrics.allocated == NO_ALLOCATION || allocated == NO_ALLOCATION) {
+                metrics.allocated = NO_ALLOCATION;
+            }
+            else {
+                metrics.allocated = allocated - metrics.allocated;
+            }
+        }
+    }
+
+    /**
+     * Add a value to a counter of a source.
+     *
+     * @param source The name of the source, or null for the task as a whole
+     * @param name The name of the counter, like "features"
+     * @param value The value to add
+     */
+    public synchronized void count(String source, String name, long value) {
+        add(getSource(source).counters, name, value);
+    }
+
+    /**
+     * Add time spent on part of the work of a stage.
+     *
+     * @param source The name of the source, or null for the task as a whole
+     * @param name What the time was spent on, like "merge"
+     * @param nanos The time in nanoseconds
+     */
+    public synchronized void time(String source, String name, long nanos) {
+        add(getSource(source).timings, name, nanos);
+    }
+
+    /**
+     * Stop the clock of the download.
+     */
+    public synchronized void finish() {
+        wallTime = System.nanoTime() - start;
+    }
+
+    /**
+     * Keep these metrics as the last metrics. If the openservices.metrics.log
+     * preference is set, they are also appended to the metrics log. The log
+     * is off by default, and is kept below 1 MB by rotating it.
+     */
+    public void publish() {
+        last = this;
+        if (!Main.pref.getBoolean("openservices.metrics.log", false)) {
+            return;
+        }
+        Plugin plugin = (Plugin) ODS.getModule();
+        try {
+            write(new File(plugin.getPluginDir(), "metrics.log"),
+                ODS.getModule().getName(), plugin.getPluginInformation().version,
+                MAX_LOG_SIZE);
+        } catch (IOException e) {
+            Main.warn("Unable to write download metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Append the metrics to a file as a single line of JSON. If the file has
+     * grown beyond maxSize, it is renamed to file.1 first, replacing the
+     * previous one, so at most two files are kept.
+     */
+    public void write(File file, String module, String version, long maxSize)
+            throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        if (file.length() >= maxSize) {
+            File old = new File(file.getPath() + ".1");
+            if ((old.exists() && !old.delete()) || !file.renameTo(old)) {
+                throw new IOException("Unable to rotate " + file);
+            }
+        }
+        String line = toJson(module, version);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true),
+                StandardCharsets.UTF_8)) {
+            out.write(line);
+            out.write("\n");
+        }
+    }
+
+    /**
+     * Create a JSON representation of the metrics. Times are in
+     * milliseconds, allocations in bytes.
+     */
+    public synchronized String toJson(String module, String version) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        JsonObjectBuilder json = Json.createObjectBuilder()
+            .add("date", format.format(date));
+        if (module != null) {
+            json.add("module", module);
+        }
+        if (version != null) {
+            json.add("version", version);
+        }
+        json.add("wallTime", millis(wallTime));
+        JsonArrayBuilder stageArray = Json.createArrayBuilder();
+        for (StageMetrics metrics : stages.values()) {
+            JsonObjectBuilder stage = Json.createObjectBuilder()
+                .add("stage", metrics.name);
+            if (metrics.source != null) {
+                stage.add("source", metrics.source);
+            }
+            stage.add("io", metrics.io)
+                .add("succeeded", metrics.succeeded)
+                .add("start", millis(metrics.start - start))
+                .add("wallTime", millis(metrics.wallTime));
+            if (metrics.allocated != NO_ALLOCATION) {
+                stage.add("allocated", metrics.allocated);
+            }
+            stageArray.add(stage);
+        }
+        json.add("stages", stageArray);
+        JsonArrayBuilder sourceArray = Json.createArrayBuilder();
+        for (Map.Entry<String, SourceMetrics> entry : sources.entrySet()) {
+            JsonObjectBuilder source = Json.createObjectBuilder();
+            if (entry.getKey() != null) {
+                source.add("source", entry.getKey());
+            }
+            JsonObjectBuilder counters = Json.createObjectBuilder();
+            for (Map.Entry<String, Long> counter : entry.getValue().counters.entrySet()) {
+                counters.add(counter.getKey(), counter.getValue());
+            }
+            JsonObjectBuilder timings = Json.createObjectBuilder();
+            for (Map.Entry<String, Long> timing : entry.getValue().timings.entrySet()) {
+                timings.add(timing.getKey(), millis(timing.getValue()));
+            }
+            sourceArray.add(source.add("counters", counters).add("timings", timings));
+        }
+        json.add("sources", sourceArray);
+        return json.build().toString();
+    }
+
+    /**
+     * Create a human readable report of the metrics.
+     */
+    public synchronized String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Download: ").append(millis(wallTime)).append(" ms\n");
+        sb.append("\nStages:\n");
+        for (StageMetrics metrics : stages.values()) {
+            sb.append(String.format("  %-30s %8d ms", metrics.toString(), millis(metrics.wallTime)));
+            sb.append(String.format("  start %6d ms", millis(metrics.start - start)));
+            if (metrics.allocated != NO_ALLOCATION) {
+                sb.append(String.format("  %8d kB allocated", metrics.allocated / 1024));
+            }
+            if (!metrics.succeeded) {
+                sb.append("  failed");
+            }
+            sb.append("\n");
+        }
+        for (Map.Entry<String, SourceMetrics> entry : sources.entrySet()) {
+            sb.append("\n").append(entry.getKey() == null ? "All sources" : entry.getKey())
+              .append(":\n");
+            for (Map.Entry<String, Long> counter : entry.getValue().counters.entrySet()) {
+                sb.append(String.format("  %-30s %8d\n", counter.getKey(), counter.getValue()));
+            }
+            for (Map.Entry<String, Long> timing : entry.getValue().timings.entrySet()) {
+                sb.append(String.format("  %-30s %8d ms\n", timing.getKey(), millis(timing.getValue())));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the stages in the order in which they started.
+     */
+    public synchronized List<String> getStageNames() {
+        List<String> names = new ArrayList<>(stages.size());
+        for (StageMetrics metrics : stages.values()) {
+            names.add(metrics.toString());
+        }
+        return names;
+    }
+
+    public synchronized Map<String, Long> getCounters(String source) {
+        SourceMetrics metrics = sources.get(source);
+        return (metrics == null ? new LinkedHashMap<String, Long>()
+            : new LinkedHashMap<>(metrics.counters));
+    }
+
+    public synchronized Map<String, Long> getTimings(String source) {
+        SourceMetrics metrics = sources.get(source);
+        return (metrics == null ? new LinkedHashMap<String, Long>()
+            : new LinkedHashMap<>(metrics.timings));
+    }
+
+    private SourceMetrics getSource(String source) {
+        SourceMetrics metrics = sources.get(source);
+        if (metrics == null) {
+            metrics = new SourceMetrics();
+            sources.put(source, metrics);
+        }
+        return metrics;
+    }
+
+    private static void add(Map<String, Long> map, String name, long value) {
+        Long old = map.get(name);
+        map.put(name, (old == null ? value : old + value));
+    }
+
+    private static long millis(long nanos) {
+        return (nanos < 0 ? -1 : nanos / 1000000);
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread.
+     *
+     * @return the number of bytes, or -1 if not supported
+     */
+    private static long getAllocatedBytes() {
+        if (allocatedBytesMethod == null) {
+            return NO_ALLOCATION;
+        }
+        try {
+            return (Long) allocatedBytesMethod.invoke(ManagementFactory.getThreadMXBean(),
+                Thread.currentThread().getId());
+        } catch (Exception e) {
+            return NO_ALLOCATION;
+        }
+    }
+
+    /**
+     * Look up com.sun.management.ThreadMXBean.getThreadAllocatedBytes by
+     * reflection, so the plug-in still runs on Java runtimes without it.
+     */
+    private static Method getAllocatedBytesMethod() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            Class<?> sunBean = Class.forName("com.sun.management.ThreadMXBean");
+            if (!sunBean.isInstance(bean)) {
+                return null;
+            }
+            if (!(Boolean) sunBean.getMethod("isThreadAllocatedMemorySupported").invoke(bean)
+                    || !(Boolean) sunBean.getMethod("isThreadAllocatedMemoryEnabled").invoke(bean)) {
+                return null;
+            }
+            return sunBean.getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static class StageMetrics {
+        final String name;
+        final String source;
+        final boolean io;
+        long start;
+        long wallTime = -1;
+        long allocated = NO_ALLOCATION;
+        boolean succeeded = false;
+
+        public StageMetrics(Stage stage) {
+            this.name = stage.getName();
+            this.source = stage.getSource();
+            this.io = stage.isIo();
+        }
+
+        @Override
+        public String toString() {
+            return (source == null ? name : name + " " + source);
+        }
+    }
+
+    private static class SourceMetrics {
+        final Map<String, Long> counters = new LinkedHashMap<>();
+        final Map<String, Long> timings = new LinkedHashMap<>();
+    }
+}
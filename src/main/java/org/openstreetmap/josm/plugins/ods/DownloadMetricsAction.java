@@ -0,0 +1,49 @@
+package org.openstreetmap.josm.plugins.ods;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+
+import org.openstreetmap.josm.Main;
+
+/**
+ * Show the metrics of the last download.
+ *
+ * @author gertjan
+ *
+ */
+public class DownloadMetricsAction extends AbstractAction {
+
+    private static final long serialVersionUID = 1L;
+
+    public DownloadMetricsAction() {
+        super(tr("Download metrics"));
+        super.putValue("description", tr("Show the timings of the last download"));
+        this.setEnabled(false);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        DownloadMetrics metrics = DownloadMetrics.getLast();
+        if (metrics == null) {
+            JOptionPane.showMessageDialog(Main.parent,
+                tr("Nothing has been downloaded yet."),
+                tr("Download metrics"), JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        JTextArea text = new JTextArea(metrics.getReport());
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, text.getFont().getSize()));
+        JScrollPane scrollPane = new JScrollPane(text);
+        scrollPane.setPreferredSize(new Dimension(700, 400));
+        JOptionPane.showMessageDialog(Main.parent, scrollPane,
+            tr("Download metrics"), JOptionPane.PLAIN_MESSAGE);
+    }
+}
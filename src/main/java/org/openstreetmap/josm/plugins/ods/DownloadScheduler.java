@@ -0,0 +1,382 @@
+package org.openstreetmap.josm.plugins.ods;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived scheduler for downloads. All downloads of a module share a
+ * bounded number of threads, which are kept between downloads.
+ *
+ * A download is a graph of stages. A stage is submitted as soon as the
+ * stages it depends on have finished, so independent chains of stages
+ * don't wait for each other. If a stage fails, the stages that depend on
+ * it are skipped. A download can be cancelled without affecting other
+ * downloads.
+ * Stages that mainly wait for I/O can be added with addIo. They run on a
+ * separate I/O executor if one is given, for example one with virtual
+ * threads, so they don't occupy the bounded pool.
+ * Stages that consume the output of another stage while it runs can be
+ * added with addConsumer. They get a platform thread of their own, so a
+ * producer that waits for its consumer can never hold the thread the
+ * consumer is queued for.
+ * A stage has a name, like "download", and optionally the name of the
+ * source it works on. A StageListener is informed when a stage starts
+ * and finishes.
+ *
+ * @author gertjan
+ *
+ */
+public class DownloadScheduler {
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService ioExecutor;
+    private final ThreadPoolExecutor consumerExecutor;
+
+    public DownloadScheduler(int nThreads) {
+        this(nThreads, null);
+    }
+
+    /**
+     * @param nThreads The number of threads of the bounded pool
+     * @param ioExecutor The executor for I/O stages, or null to run them
+     *     on the bounded pool
+     */
+    public DownloadScheduler(int nThreads, ExecutorService ioExecutor) {
+        executor = new ThreadPoolExecutor(nThreads, nThreads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ODS download");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        // Don't keep idle threads when there is nothing to download
+        executor.allowCoreThreadTimeOut(true);
+        this.ioExecutor = (ioExecutor == null ? executor : ioExecutor);
+        // A new thread for every consumer stage that runs at the same time
+        consumerExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ODS build");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
+
+    public Download newDownload() {
+        return new Download();
+    }
+
+    public int getMaxThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public boolean hasIoExecutor() {
+        return ioExecutor != executor;
+    }
+
+    public interface StageListener {
+        public void stageStarted(Stage stage);
+
+        public void stageFinished(Stage stage, boolean succeeded);
+    }
+
+    private static enum Kind {
+        CPU, IO, CONSUMER
+    }
+
+    private static enum State {
+        WAITING, SUBMITTED, RUNNING, FINISHED, SKIPPED
+    }
+
+    public class Stage {
+        private final Download download;
+        private final String name;
+        private final String source;
+        private final Callable<?> callable;
+        private final Kind kind;
+        private final List<Stage> dependents = new LinkedList<>();
+        private int pending = 0;
+        private State state = State.WAITING;
+        private boolean failed = false;
+        private Future<?> future;
+
+        Stage(Download download, String name, String source, Callable<?> callable,
+                Kind kind) {
+            this.download = download;
+            this.name = name;
+            this.source = source;
+            this.callable = callable;
+            this.kind = kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The name of the source this stage works on, or null if the
+         * stage works on all sources of a task.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        public boolean isIo() {
+            return kind == Kind.IO;
+        }
+
+        public boolean isConsumer() {
+            return kind == Kind.CONSUMER;
+        }
+
+        @Override
+        public String toString() {
+            return (source == null ? name : name + " " + source);
+        }
+
+        void run() {
+            if (!download.begin(this)) {
+                return;
+            }
+            StageListener listener = download.listener;
+            boolean succeeded = false;
+            try {
+                if (listener != null) {
+                    listener.stageStarted(this);
+                }
+                callable.call();
+                succeeded = true;
+            } catch (Exception e) {
+                download.addException(e);
+            } finally {
+                try {
+                    if (listener != null) {
+                        listener.stageFinished(this, succeeded);
+                    }
+                } finally {
+                    download.finish(this, succeeded);
+                }
+            }
+        }
+    }
+
+    /**
+     * The stages of a single download.
+     */
+    public class Download {
+        private final List<Stage> stages = new ArrayList<>();
+        private final List<Exception> exceptions = new LinkedList<>();
+        private int unfinished = 0;
+        private boolean started = false;
+        private boolean cancelled = false;
+        private volatile StageListener listener;
+
+        /**
+         * Set the listener for the stages of this download. The listener
+         * is called from the threads of the scheduler.
+         */
+        public void setListener(StageListener listener) {
+            this.listener = listener;
+        }
+
+        public Stage add(String name, Callable<?> callable, Stage... dependencies) {
+            return addStage(name, null, callable, Kind.CPU, dependencies);
+        }
+
+        /**
+         * Add a stage to this download.
+         *
+         * @param name The name of the stage
+         * @param source The name of the source, or null
+         * @param callable The work of the stage
+         * @param dependencies The stages that must finish before this stage
+         *     starts. Null values are ignored.
+         * @return The new stage
+         */
+        public Stage add(String name, String source, Callable<?> callable,
+                Stage... dependencies) {
+            return addStage(name, source, callable, Kind.CPU, dependencies);
+        }
+
+        /**
+         * Add a stage that mainly waits for I/O. It runs on the I/O
+         * executor of the scheduler.
+         *
+         * @see #add(String, String, Callable, Stage...)
+         */
+        public Stage addIo(String name, String source, Callable<?> callable,
+                Stage... dependencies) {
+            return addStage(name, source, callable, Kind.IO, dependencies);
+        }
+
+        /**
+         * Add a stage that consumes the output of another stage while that
+         * stage runs. It runs on a thread of its own, not on the bounded
+         * pool, so it can't be queued behind its producer.
+         *
+         * @see #add(String, String, Callable, Stage...)
+         */
+        public Stage addConsumer(String name, String source, Callable<?> callable,
+                Stage... dependencies) {
+            return addStage(name, source, callable, Kind.CONSUMER, dependencies);
+        }
+
+        private synchronized Stage addStage(String name, String source, Callable<?> callable,
+                Kind kind, Stage... dependencies) {
+            Stage stage = new Stage(this, name, source, callable, kind);
+            stages.add(stage);
+            for (Stage dependency : dependencies) {
+                if (dependency == null) {
+                    continue;
+                }
+                if (dependency.state == State.SKIPPED || dependency.failed) {
+                    stage.state = State.SKIPPED;
+                }
+                else if (dependency.state != State.FINISHED) {
+                    dependency.dependents.add(stage);
+                    stage.pending++;
+                }
+            }
+            if (cancelled || stage.state == State.SKIPPED) {
+                stage.state = State.SKIPPED;
+                return stage;
+            }
+            unfinished++;
+            if (started && stage.pending == 0) {
+                submit(stage);
+            }
+            return stage;
+        }
+
+        /**
+         * Submit the stages without pending dependencies.
+         */
+        public synchronized void start() {
+            started = true;
+            for (Stage stage : new ArrayList<>(stages)) {
+                if (stage.state == State.WAITING && stage.pending == 0) {
+                    submit(stage);
+                }
+            }
+        }
+
+        /**
+         * Wait until all stages have finished or have been skipped.
+         *
+         * @throws InterruptedException
+         */
+        public synchronized void await() throws InterruptedException {
+            while (unfinished > 0) {
+                wait();
+            }
+        }
+
+        /**
+         * Cancel this download. Stages that have not started yet are
+         * skipped, running stages are interrupted.
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            for (Stage stage : stages) {
+                switch (stage.state) {
+                case WAITING:
+                case SUBMITTED:
+                    skip(stage);
+                    break;
+                case RUNNING:
+                    stage.future.cancel(true);
+                    break;
+                default:
+                    break;
+                }
+            }
+            notifyAll();
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        public synchronized List<Exception> getExceptions() {
+            return new ArrayList<>(exceptions);
+        }
+
+        private void submit(Stage stage) {
+            stage.state = State.SUBMITTED;
+            final Stage theStage = stage;
+            stage.future = getExecutor(stage.kind).submit(new Runnable() {
+                @Override
+                public void run() {
+                    theStage.run();
+                }
+            });
+        }
+
+        private ExecutorService getExecutor(Kind kind) {
+            switch (kind) {
+            case IO:
+                return ioExecutor;
+            case CONSUMER:
+                return consumerExecutor;
+            default:
+                return executor;
+            }
+        }
+
+        synchronized boolean begin(Stage stage) {
+            if (stage.state != State.SUBMITTED) {
+                return false;
+            }
+            stage.state = State.RUNNING;
+            return true;
+        }
+
+        synchronized void addException(Exception e) {
+            exceptions.add(e);
+        }
+
+        synchronized void finish(Stage stage, boolean succeeded) {
+            stage.state = State.FINISHED;
+            stage.failed = !succeeded;
+            unfinished--;
+            for (Stage dependent : stage.dependents) {
+                if (dependent.state != State.WAITING) {
+                    continue;
+                }
+                if (!succeeded || cancelled) {
+                    skip(dependent);
+                }
+                else if (--dependent.pending == 0 && started) {
+                    submit(dependent);
+                }
+            }
+            notifyAll();
+        }
+
+        private void skip(Stage stage) {
+            if (stage.state == State.SKIPPED || stage.state == State.FINISHED) {
+                return;
+            }
+            if (stage.future != null) {
+                stage.future.cancel(false);
+            }
+            stage.state = State.SKIPPED;
+            unfinished--;
+            for (Stage dependent : stage.dependents) {
+                skip(dependent);
+            }
+        }
+    }
+}
@@ -1,14 +1,35 @@
 package org.openstreetmap.josm.plugins.ods;
 
-import java.util.concurrent.Callable;
+import java.util.Collection;
+
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Download;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Stage;
 
 public interface DownloadTask {
-    public Callable<Object> stage(String subTask);
+    /**
+     * Add the stages of this task to a download. Each source of the task
+     * gets its own chain of stages, so a source doesn't wait for the
+     * stages of other sources. Only stages that need the results of all
+     * sources depend on more than one chain.
+     * 
+     * @param download The download to add the stages to
+     * @param dependencies Stages that must finish before this task starts
+     * @return The stages that must finish before this task is complete
+     */
+    public Collection<Stage> schedule(Download download, Stage... dependencies);
 
     public void cancel();
     public boolean cancelled();
     public boolean failed();
     public String getMessage();
 
+    /**
+     * Add the counters and timings of this task to the metrics of the
+     * download. Called when all stages have finished.
+     * 
+     * @param metrics
+     */
+    public void reportMetrics(DownloadMetrics metrics);
+
     //Exception getException();
 }
@@ -1,20 +1,36 @@
 package org.openstreetmap.josm.plugins.ods;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.openstreetmap.josm.plugins.ods.metadata.MetaData;
 import org.openstreetmap.josm.plugins.ods.metadata.MetaDataException;
 import org.openstreetmap.josm.plugins.ods.metadata.MetaDataLoader;
 
 public abstract class Host {
+  // Shared by all hosts, so the loaders of hosts that are initialized at
+  // the same time run concurrently as well.
+  private static ExecutorService metaDataExecutor;
+
   private String name;
   private String type;
   private String url;
   private Integer maxFeatures;
+  private Integer pageSize;
+  private int maxRequests = 2;
+  private String cacheVersionKey;
   private MetaData metaData;
   private final List<MetaDataLoader> metaDataLoaders = new LinkedList<MetaDataLoader>();
   private Boolean initialized = false;
+  // Not the monitor of the host, because a virtual thread that blocks
+  // inside a monitor pins its carrier thread
+  private final ReentrantLock initializationLock = new ReentrantLock();
 
   public final String getName() {
     return name;
@@ -48,6 +64,48 @@ public abstract class Host {
       this.maxFeatures = maxFeatures;
   }
 
+  /**
+   * The number of features to retrieve per request when paging is
+   * supported by the host. Null means no paging.
+   * 
+   * @return
+   */
+  public Integer getPageSize() {
+      return pageSize;
+  }
+
+  public void setPageSize(Integer pageSize) {
+      this.pageSize = pageSize;
+  }
+
+  /**
+   * The maximum number of concurrent requests to this host.
+   * 
+   * @return
+   */
+  public int getMaxRequests() {
+      return maxRequests;
+  }
+
+  public void setMaxRequests(int maxRequests) {
+      this.maxRequests = maxRequests;
+  }
+
+  /**
+   * The name of the metadata attribute that identifies the version of the
+   * data on this host, for example the date of the last update.
+   * Downloaded features are only cached if this key is set.
+   * 
+   * @return
+   */
+  public String getCacheVersionKey() {
+      return cacheVersionKey;
+  }
+
+  public void setCacheVersionKey(String cacheVersionKey) {
+      this.cacheVersionKey = cacheVersionKey;
+  }
+
   public void addMetaDataLoader(MetaDataLoader metaDataLoader) {
     metaDataLoaders.add(metaDataLoader);
   }
@@ -65,15 +123,69 @@ public abstract class Host {
         && other.getUrl().equals(url);
   }
 
-  public synchronized void initialize() throws InitializationException {
+  /**
+   * Initialize the host. The metadata loaders run concurrently. Each of
+   * them populates its own metaData object, and the results are merged in
+   * the order of the loaders.
+   * A host is initialized once per session, so the metadata is not
+   * refreshed during the session. Cached metadata is at most as old as
+   * the maximum age of the metadata cache.
+   * 
+   * @throws InitializationException
+   */
+  public void initialize() throws InitializationException {
+    initializationLock.lock();
+    try {
+      loadMetaData();
+    } finally {
+      initializationLock.unlock();
+    }
+  }
+
+  /**
+   * The lock that subclasses hold while they initialize. It is reentrant,
+   * so they can call super.initialize() while they hold it.
+   * 
+   * @return
+   */
+  protected final ReentrantLock getInitializationLock() {
+    return initializationLock;
+  }
+
+  private void loadMetaData() throws InitializationException {
     if (initialized) return;
     metaData = new MetaData();
     List<Exception> exceptions = new LinkedList<Exception>();
-    for (MetaDataLoader loader : metaDataLoaders) {
-      try {
-        loader.populateMetaData(metaData);
-      } catch (MetaDataException e) {
-          exceptions.add(e);
+    List<Future<MetaData>> futures = new ArrayList<>(metaDataLoaders.size());
+    if (metaDataLoaders.size() > 1) {
+      for (final MetaDataLoader loader : metaDataLoaders) {
+        futures.add(getMetaDataExecutor().submit(new Callable<MetaData>() {
+          @Override
+          public MetaData call() throws MetaDataException {
+            MetaData result = new MetaData();
+            loader.populateMetaData(result);
+            return result;
+          }
+        }));
+      }
+      for (Future<MetaData> future : futures) {
+        try {
+          metaData.putAll(future.get());
+        } catch (ExecutionException e) {
+          exceptions.add(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InitializationException("Initialization was interrupted", e);
+        }
+      }
+    }
+    else {
+      for (MetaDataLoader loader : metaDataLoaders) {
+        try {
+          loader.populateMetaData(metaData);
+        } catch (MetaDataException e) {
+            exceptions.add(e);
+        }
       }
     }
     if (!exceptions.isEmpty()) {
@@ -87,6 +199,13 @@ public abstract class Host {
     initialized = true;
   }
 
+  private static synchronized ExecutorService getMetaDataExecutor() {
+    if (metaDataExecutor == null) {
+      metaDataExecutor = IoExecutors.newCachedExecutor("ODS metadata");
+    }
+    return metaDataExecutor;
+  }
+
   public abstract boolean hasFeatureType(String feature) throws ServiceException;
 
   public abstract OdsFeatureSource getOdsFeatureSource(String feature) throws ServiceException;
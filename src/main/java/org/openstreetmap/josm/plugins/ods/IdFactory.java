@@ -8,4 +8,11 @@ import org.opengis.feature.simple.SimpleFeatureType;
 public interface IdFactory {
   public SimpleFeatureType getFeatureType();
   public Serializable getId(SimpleFeature feature);
+
+  /**
+   * Get the name of the attribute that holds the id.
+   * 
+   * @return the attribute name, or null if the feature id is used
+   */
+  public String getKeyAttribute();
 }
@@ -0,0 +1,89 @@
+package org.openstreetmap.josm.plugins.ods;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.openstreetmap.josm.Main;
+
+/**
+ * Executors for callables that spend most of their time waiting for I/O,
+ * like WFS requests, Osm API requests and metadata fetches.
+ * If the openservices.download.virtualthreads preference is set, and the
+ * Java runtime supports virtual threads, these callables run on a
+ * virtual thread each. The virtual thread executor is looked up by
+ * reflection, so the plug-in still runs on older Java versions. Otherwise
+ * the caller falls back to its own bounded thread pool.
+ *
+ * @author gertjan
+ *
+ */
+public class IoExecutors {
+    private static boolean initialized = false;
+    private static ExecutorService virtualThreadExecutor;
+
+    private IoExecutors() {
+        // Utility class
+    }
+
+    /**
+     * Get the shared virtual thread executor.
+     *
+     * @return the executor, or null if virtual threads are disabled or not
+     *     supported by the Java runtime.
+     */
+    public static synchronized ExecutorService getVirtualThreadExecutor() {
+        if (!initialized) {
+            initialized = true;
+            if (Main.pref != null && Main.pref.getBoolean("openservices.download.virtualthreads", false)) {
+                virtualThreadExecutor = createVirtualThreadExecutor();
+                if (virtualThreadExecutor == null) {
+                    Main.info("Virtual threads are not supported by this Java runtime. Using thread pools.");
+                }
+            }
+        }
+        return virtualThreadExecutor;
+    }
+
+    /**
+     * Get an executor for I/O-bound work that would otherwise get its own
+     * unbounded cached thread pool.
+     *
+     * @param name The name of the threads of the fallback pool
+     * @return the virtual thread executor if available, or a new cached pool
+     *     of daemon threads.
+     */
+    public static ExecutorService newCachedExecutor(final String name) {
+        ExecutorService executor = getVirtualThreadExecutor();
+        if (executor != null) {
+            return executor;
+        }
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for each task.
+     *
+     * @return the executor, or null if the runtime doesn't support it
+     */
+    public static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // Preview feature that has not been enabled
+            return null;
+        }
+    }
+}
@@ -1,13 +1,8 @@
 package org.openstreetmap.josm.plugins.ods;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import javax.swing.JOptionPane;
 
@@ -17,14 +12,15 @@ import org.openstreetmap.josm.data.osm.DataSource;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Download;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Stage;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.StageListener;
 import org.openstreetmap.josm.plugins.ods.geotools.DownloadGtLayerTask;
 import org.openstreetmap.josm.plugins.ods.jts.Boundary;
 import org.openstreetmap.josm.plugins.ods.osm.DownloadOsmLayerTask;
 import org.openstreetmap.josm.tools.I18n;
 
 public class OdsDownloader {
-    private static final int NTHREADS = 10;
-
     private OdsWorkingSet workingSet;
     
     private DownloadOsmLayerTask internalDownloadTask;
@@ -33,7 +29,7 @@ public class OdsDownloader {
     private boolean downloadOsm;
     private boolean downloadOds;
     
-    private List<DownloadTask> downloadTasks;
+    private volatile List<DownloadTask> downloadTasks;
     private Boundary boundary;
     
     private ProgressMonitor pm;
@@ -41,7 +37,8 @@ public class OdsDownloader {
     boolean cancelled = false;
     boolean interrupted = false;
     
-    private ExecutorService executor;
+    private volatile Download download;
+    private DownloadMetrics metrics;
 
     protected OdsDownloader(Boundary boundary, ProgressMonitor progressMonitor) {
         super();
@@ -53,21 +50,16 @@ public class OdsDownloader {
     public void run(boolean downloadOsm, boolean downloadOds) throws ExecutionException, InterruptedException {
         this.downloadOsm = downloadOsm;
         this.downloadOds = downloadOds;
+        synchronized (this) {
+            if (cancelled) {
+                pm.finishTask();
+                return;
+            }
+            download = ODS.getModule().getDownloadScheduler().newDownload();
+        }
         setup();
         pm.indeterminateSubTask(I18n.tr("Preparing"));
-        subTask("prepare");
-        if (cancelled || interrupted) {
-            pm.finishTask();
-            return;
-        }
-        pm.indeterminateSubTask(I18n.tr("Downloading"));
-        subTask("download");
-        if (cancelled || interrupted) {
-            pm.finishTask();
-            return;
-        }
-        pm.indeterminateSubTask(I18n.tr("Processing data"));
-        subTask("process");
+        runStages();
         if (cancelled || interrupted) {
             pm.finishTask();
             return;
@@ -105,35 +97,40 @@ public class OdsDownloader {
         }
     }
 
-    private void subTask(String subTask) throws ExecutionException, InterruptedException {
+    /**
+     * Run the stages of all download tasks on the download scheduler.
+     * Each task, and each data source within a task, moves through its
+     * own stages. So the processing of the Osm data doesn't wait for the
+     * download of the imported data, and a small data source doesn't wait
+     * for a large one. If a task fails or is cancelled, the whole download
+     * is cancelled.
+     * The metrics of the stages and the tasks are published when all
+     * stages have finished, also if the download failed.
+     * 
+     * @throws ExecutionException
+     * @throws InterruptedException
+     */
+    private void runStages() throws ExecutionException, InterruptedException {
         workingSet.activate();
-        List<Future<?>> futures = new ArrayList<Future<?>>(downloadTasks.size());
-
-        executor = Executors.newFixedThreadPool(NTHREADS);
+        metrics = new DownloadMetrics();
+        download.setListener(new ProgressListener());
         for (DownloadTask task : downloadTasks) {
-            Callable<Object> callable = task.stage(subTask);
-            if (callable != null) {
-                Future<?> future = executor.submit(callable);
-                futures.add(future);
-            }
+            task.schedule(download);
         }
-        executor.shutdown();
+        download.start();
         interrupted = false;
-        List<Exception> exceptions = new LinkedList<Exception>();
-        // Wait for all futures to finish
-        for (Future<?> future : futures) {
-            try {
-                future.get();
-                if (future.isCancelled()) {
-                    executor.shutdownNow();
-                    interrupted = true;                    
-                }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                interrupted = true;
-            } catch (Exception e) {
-                exceptions.add(e);
-            }
+        try {
+            download.await();
+        } catch (InterruptedException e) {
+            download.cancel();
+            interrupted = true;
+        }
+        publishMetrics();
+        List<Exception> exceptions = download.getExceptions();
+        // A download that was cancelled because of an exception is
+        // reported as an error below
+        if (download.isCancelled() && exceptions.isEmpty()) {
+            cancelled = true;
         }
         for (DownloadTask task : downloadTasks) {
             if (task.failed()) {
@@ -168,6 +165,56 @@ public class OdsDownloader {
         }
     }
 
+    private void publishMetrics() {
+        metrics.finish();
+        for (DownloadTask task : downloadTasks) {
+            task.reportMetrics(metrics);
+        }
+        metrics.publish();
+    }
+
+    public DownloadMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reports the progress of the stages, records their metrics, and
+     * cancels the download if a stage or a task fails.
+     */
+    private class ProgressListener implements StageListener {
+
+        @Override
+        public void stageStarted(Stage stage) {
+            metrics.stageStarted(stage);
+            switch (stage.getName()) {
+            case "download":
+                pm.indeterminateSubTask(I18n.tr("Downloading"));
+                break;
+            case "build":
+            case "process":
+                pm.indeterminateSubTask(I18n.tr("Processing data"));
+                break;
+            default:
+                break;
+            }
+        }
+
+        @Override
+        public void stageFinished(Stage stage, boolean succeeded) {
+            metrics.stageFinished(stage, succeeded);
+            if (!succeeded) {
+                download.cancel();
+                return;
+            }
+            for (DownloadTask task : downloadTasks) {
+                if (task.failed() || task.cancelled()) {
+                    download.cancel();
+                    return;
+                }
+            }
+        }
+    }
+
 //    /**
 //     * Prepare the 
 //     * @throws ExecutionException
@@ -356,9 +403,16 @@ public class OdsDownloader {
     }
 
     public void cancel() {
-        cancelled = true;
-        if (executor != null) {
-            executor.shutdownNow();
+        synchronized (this) {
+            cancelled = true;
+        }
+        if (downloadTasks != null) {
+            for (DownloadTask task : downloadTasks) {
+                task.cancel();
+            }
+        }
+        if (download != null) {
+            download.cancel();
         }
     }
 }
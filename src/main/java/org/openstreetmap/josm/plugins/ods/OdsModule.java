@@ -79,4 +79,13 @@ public interface OdsModule {
     public <T> EntityFactory<T> getEntityFactory(Class<T> clazz, String type);
 
     public PrimitiveFactory getPrimitiveFactory(DataSet dataSet);
+
+    /**
+     * Get the scheduler that runs the downloads for this module.
+     * The scheduler lives as long as the module, so its threads are
+     * reused by subsequent downloads.
+     * 
+     * @return
+     */
+    public DownloadScheduler getDownloadScheduler();
 }
@@ -2,6 +2,7 @@ package org.openstreetmap.josm.plugins.ods;
 
 import java.io.File;
 
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.plugins.Plugin;
 import org.openstreetmap.josm.plugins.PluginInformation;
 
@@ -15,6 +16,7 @@ import org.openstreetmap.josm.plugins.PluginInformation;
 public abstract class OdsModulePlugin extends Plugin implements OdsModule {
     private OdsWorkingSet workingSet;
     private boolean enabled = false;
+    private DownloadScheduler downloadScheduler;
     
     public OdsModulePlugin(PluginInformation info) {
         super(info);
@@ -52,6 +54,16 @@ public abstract class OdsModulePlugin extends Plugin implements OdsModule {
         return workingSet;
     }
 
+    @Override
+    public synchronized DownloadScheduler getDownloadScheduler() {
+        if (downloadScheduler == null) {
+            downloadScheduler = new DownloadScheduler(
+                Main.pref.getInteger("openservices.download.threads", 10),
+                IoExecutors.getVirtualThreadExecutor());
+        }
+        return downloadScheduler;
+    }
+
     @Override
     public boolean usePolygonFile() {
         return false;
@@ -51,7 +51,8 @@ public class OdsWorkingSet implements LayerChangeListener {
 //    private EntityFactory entityFactory;
     // TODO this is a dependency on the BuiltEnvironment submodule
     // Change to a more generic solution like a Container pattern
-    private BlockStore blockStore = new BlockStoreImpl();
+    // Use the same tolerance as the crossing building analysis
+    private BlockStore blockStore = new BlockStoreImpl(2e-7);
 
     public OdsWorkingSet(OdsModule module) {
         this.module = module;
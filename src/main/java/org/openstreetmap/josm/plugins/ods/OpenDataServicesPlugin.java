@@ -66,6 +66,7 @@ public class OpenDataServicesPlugin extends Plugin {
                     4, ht("/Plugin/ODS"));
             menu.add(new OdsAction());
             menu.add(new OdsDownloadAction());
+            menu.add(new DownloadMetricsAction());
             ODS.setMenu(menu);
         }
         return menu;
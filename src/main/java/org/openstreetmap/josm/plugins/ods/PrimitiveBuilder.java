@@ -13,6 +13,7 @@ import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.ods.osm.NodeCache;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateSequence;
@@ -191,16 +192,27 @@ public class PrimitiveBuilder {
      */
     public Node buildNode(Coordinate coordinate, boolean merge) {
         LatLon latlon = new LatLon(coordinate.y, coordinate.x);
-        Node node = new Node(latlon);
+        NodeCache nodeCache = NodeCache.getSession(dataSet);
         if (merge) {
-            BBox bbox = new BBox(node);
-            List<Node> existingNodes = dataSet.searchNodes(bbox);
-            if (existingNodes.size() > 0) {
-                node = existingNodes.get(0);
-                return node;
+            // Use the node cache in a merge session, otherwise search the dataset
+            if (nodeCache != null) {
+                Node existingNode = nodeCache.get(latlon);
+                if (existingNode != null) {
+                    return existingNode;
+                }
+            }
+            else {
+                List<Node> existingNodes = dataSet.searchNodes(new BBox(latlon, latlon));
+                if (existingNodes.size() > 0) {
+                    return existingNodes.get(0);
+                }
             }
         }
+        Node node = new Node(latlon);
         dataSet.addPrimitive(node);
+        if (nodeCache != null) {
+            nodeCache.put(node);
+        }
         return node;
     }
 
@@ -1,8 +1,28 @@
 package org.openstreetmap.josm.plugins.ods.analysis;
 
+import java.util.Set;
+
 import org.openstreetmap.josm.plugins.ods.DataLayer;
 import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
 
 public interface Analyzer {
     public void analyze(DataLayer dataLayer, EntitySet newEntities);
+
+    /**
+     * Get the aspects of the entity set this analyzer reads.
+     * 
+     * @return
+     */
+    public Set<EntityAspect> getReads();
+
+    /**
+     * Get the aspects of the entity set this analyzer modifies.
+     * Analyzers in the same stage share the entity stores and their spatial
+     * indexes, which are not thread-safe. So an analyzer that enables or
+     * updates the spatial index of a store must declare the geometry aspect
+     * of that store as written.
+     * 
+     * @return
+     */
+    public Set<EntityAspect> getWrites();
 }
@@ -0,0 +1,172 @@
+package org.openstreetmap.josm.plugins.ods.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.openstreetmap.josm.plugins.ods.DataLayer;
+import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
+
+/**
+ * The AnalyzerScheduler runs a list of analyzers on an entity set.
+ * The order of the list is the logical order of the analyzers. Using the
+ * aspects an analyzer reads and writes, the scheduler groups the analyzers
+ * into stages. An analyzer is placed in the first stage after all earlier
+ * analyzers it conflicts with. The analyzers in one stage run at the same
+ * time on a fork-join pool.
+ * 
+ * @author gertjan
+ *
+ */
+public class AnalyzerScheduler {
+    private final static ForkJoinPool defaultPool = new ForkJoinPool();
+
+    private final List<Analyzer> analyzers;
+    private final ForkJoinPool pool;
+    private final Map<Analyzer, Long> timings = new LinkedHashMap<>();
+
+    public AnalyzerScheduler(List<Analyzer> analyzers) {
+        this(analyzers, defaultPool);
+    }
+
+    public AnalyzerScheduler(List<Analyzer> analyzers, ForkJoinPool pool) {
+        this.analyzers = analyzers;
+        this.pool = pool;
+    }
+
+    /**
+     * Get the pool that is used when no pool is supplied. Analyzers that
+     * split their own work into parallel tasks can share this pool.
+     * 
+     * @return
+     */
+    public static ForkJoinPool getDefaultPool() {
+        return defaultPool;
+    }
+
+    /**
+     * Run all analyzers, stage by stage.
+     * 
+     * @param dataLayer
+     * @param newEntities
+     * @throws ExecutionException if one of the analyzers failed
+     * @throws InterruptedException
+     */
+    public void run(final DataLayer dataLayer, final EntitySet newEntities)
+            throws ExecutionException, InterruptedException {
+        Map<Analyzer, Long> elapsed = new LinkedHashMap<>();
+        for (List<Analyzer> stage : getStages()) {
+            List<Callable<Long>> tasks = new ArrayList<>(stage.size());
+            for (final Analyzer analyzer : stage) {
+                tasks.add(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        long start = System.nanoTime();
+                        analyzer.analyze(dataLayer, newEntities);
+                        return System.nanoTime() - start;
+                    }
+                });
+            }
+            if (tasks.size() == 1) {
+                // No need to hand a single analyzer over to the pool
+                try {
+                    elapsed.put(stage.get(0), tasks.get(0).call());
+                } catch (Exception e) {
+                    throw new ExecutionException(e);
+                }
+                continue;
+            }
+            List<Future<Long>> futures = pool.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                elapsed.put(stage.get(i), futures.get(i).get());
+            }
+        }
+        synchronized (timings) {
+            timings.clear();
+            for (Analyzer analyzer : analyzers) {
+                timings.put(analyzer, elapsed.get(analyzer));
+            }
+        }
+    }
+
+    /**
+     * Split the analyzers into stages. The analyzers within a stage don't
+     * conflict with each other. The order of the analyzers within a stage is
+     * the order of the original list.
+     * 
+     * @return
+     */
+    public List<List<Analyzer>> getStages() {
+        int n = analyzers.size();
+        int[] levels = new int[n];
+        int maxLevel = -1;
+        for (int j = 0; j < n; j++) {
+            Analyzer later = analyzers.get(j);
+            for (int i = 0; i < j; i++) {
+                if (levels[i] >= levels[j] && conflicts(analyzers.get(i), later)) {
+                    levels[j] = levels[i] + 1;
+                }
+            }
+            maxLevel = Math.max(maxLevel, levels[j]);
+        }
+        List<List<Analyzer>> stages = new ArrayList<>(maxLevel + 1);
+        for (int level = 0; level <= maxLevel; level++) {
+            stages.add(new ArrayList<Analyzer>());
+        }
+        for (int j = 0; j < n; j++) {
+            stages.get(levels[j]).add(analyzers.get(j));
+        }
+        return stages;
+    }
+
+    /**
+     * Check if the later analyzer has to wait for the earlier one.
+     * This is the case if one of them writes an aspect the other one reads
+     * or writes.
+     * 
+     * @param earlier
+     * @param later
+     * @return
+     */
+    static boolean conflicts(Analyzer earlier, Analyzer later) {
+        return intersects(earlier.getWrites(), later.getReads())
+            || intersects(earlier.getWrites(), later.getWrites())
+            || intersects(earlier.getReads(), later.getWrites());
+    }
+
+    private static boolean intersects(Set<EntityAspect> set1, Set<EntityAspect> set2) {
+        return !Collections.disjoint(set1, set2);
+    }
+
+    /**
+     * Get the elapsed time in nanoseconds per analyzer of the last run.
+     * 
+     * @return
+     */
+    public Map<Analyzer, Long> getTimings() {
+        synchronized (timings) {
+            return new LinkedHashMap<>(timings);
+        }
+    }
+
+    /**
+     * Create a human readable report of the timings of the last run.
+     * 
+     * @return
+     */
+    public String getTimingReport() {
+        StringBuilder sb = new StringBuilder("Analyzer timings:");
+        for (Map.Entry<Analyzer, Long> entry : getTimings().entrySet()) {
+            sb.append("\n  ").append(entry.getKey().getClass().getSimpleName())
+              .append(": ").append(entry.getValue() / 1000000).append(" ms");
+        }
+        return sb.toString();
+    }
+}
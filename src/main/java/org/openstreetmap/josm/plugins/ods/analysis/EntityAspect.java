@@ -0,0 +1,22 @@
+package org.openstreetmap.josm.plugins.ods.analysis;
+
+/**
+ * The parts of an entity set an analyzer can read or modify.
+ * The AnalyzerScheduler uses these to find out which analyzers can
+ * run at the same time.
+ * 
+ * @author gertjan
+ *
+ */
+public enum EntityAspect {
+    /** The geometry of the buildings */
+    BUILDING_GEOMETRY,
+    /** The incomplete flag of the buildings */
+    BUILDING_COMPLETENESS,
+    /** The geometry (point) of the address nodes */
+    ADDRESS_GEOMETRY,
+    /** The links between address nodes and buildings, in both directions */
+    ADDRESS_BUILDING,
+    /** The links between addresses and streets */
+    ADDRESS_STREET;
+}
@@ -2,14 +2,17 @@ package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.openstreetmap.josm.plugins.ods.DataLayer;
 import org.openstreetmap.josm.plugins.ods.analysis.Analyzer;
+import org.openstreetmap.josm.plugins.ods.analysis.EntityAspect;
 import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
 import org.openstreetmap.josm.plugins.ods.jts.GeoUtil;
 
@@ -134,4 +137,15 @@ public class AddressNodeDistributor implements Analyzer {
             return result;
         }
     }
+
+    @Override
+    public Set<EntityAspect> getReads() {
+        return EnumSet.of(EntityAspect.BUILDING_GEOMETRY,
+            EntityAspect.ADDRESS_GEOMETRY, EntityAspect.ADDRESS_BUILDING);
+    }
+
+    @Override
+    public Set<EntityAspect> getWrites() {
+        return EnumSet.of(EntityAspect.ADDRESS_GEOMETRY);
+    }
 }
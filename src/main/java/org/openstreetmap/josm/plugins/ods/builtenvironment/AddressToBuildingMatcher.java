@@ -1,12 +1,21 @@
 package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import org.openstreetmap.josm.plugins.ods.DataLayer;
 import org.openstreetmap.josm.plugins.ods.analysis.Analyzer;
+import org.openstreetmap.josm.plugins.ods.analysis.EntityAspect;
 import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
 import org.openstreetmap.josm.plugins.ods.entities.EntityStore;
 
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
 
 /**
  * This analyzer builds the relation between address nodes and buildings
@@ -20,6 +29,9 @@ public class AddressToBuildingMatcher implements Analyzer {
         BuiltEnvironment be = new BuiltEnvironment(newEntities);
         EntityStore<AddressNode> newAddresses = be.getAddresses();
         EntityStore<Building> newBuildings = be.getBuildings();
+        // The index is only built when we encounter the first address
+        // without a building reference.
+        BuildingIndex buildingIndex = null;
         Iterator<AddressNode> it = newAddresses.iterator();
         while (it.hasNext()) {
             AddressNode addressNode = (AddressNode) it.next();
@@ -29,7 +41,10 @@ public class AddressToBuildingMatcher implements Analyzer {
                 analyzeAddressBuildingByRef(addressNode, newBuildings);
             }
             else {
-                analyzeAddressBuildingByGeometry(addressNode, newBuildings);
+                if (buildingIndex == null) {
+                    buildingIndex = new BuildingIndex(newBuildings);
+                }
+                analyzeAddressBuildingByGeometry(addressNode, buildingIndex);
             }
         }
     }
@@ -56,16 +71,80 @@ public class AddressToBuildingMatcher implements Analyzer {
      * 
      * @param address
      */
-    private void analyzeAddressBuildingByGeometry(AddressNode address, EntityStore<Building> newBuildings) {
-        Iterator<Building> iterator = newBuildings.iterator();
-        boolean found = false;
-        while (iterator.hasNext() && !found) {
-            Building building = iterator.next();
-            if (building.getGeometry().covers(address.getGeometry())) {
-                address.setBuilding(building);
-                building.getAddressNodes().add(address);
-                found = true;
+    private void analyzeAddressBuildingByGeometry(AddressNode address, BuildingIndex buildingIndex) {
+        Building building = buildingIndex.findCoveringBuilding(address.getGeometry());
+        if (building != null) {
+            address.setBuilding(building);
+            building.getAddressNodes().add(address);
+        }
+    }
+
+    /**
+     * STR-tree over the envelopes of the buildings in a store. The tree is
+     * built once per analyze run. The exact covers test is done on a
+     * PreparedGeometry, that is created when a building is first hit by a query.
+     * If more than one building covers a point, the building that comes first
+     * in the store's iteration order wins, like it did with the linear search.
+     */
+    static class BuildingIndex {
+        private final STRtree index = new STRtree();
+
+        public BuildingIndex(EntityStore<Building> buildings) {
+            int ordinal = 0;
+            Iterator<Building> it = buildings.iterator();
+            while (it.hasNext()) {
+                Building building = it.next();
+                Geometry geometry = building.getGeometry();
+                if (geometry != null) {
+                    index.insert(geometry.getEnvelopeInternal(),
+                        new IndexedBuilding(building, ordinal));
+                }
+                ordinal++;
+            }
+            index.build();
+        }
+
+        public Building findCoveringBuilding(Geometry geometry) {
+            @SuppressWarnings("unchecked")
+            List<IndexedBuilding> candidates = index.query(geometry.getEnvelopeInternal());
+            IndexedBuilding result = null;
+            for (IndexedBuilding candidate : candidates) {
+                if (result != null && result.ordinal < candidate.ordinal) {
+                    continue;
+                }
+                if (candidate.getPreparedGeometry().covers(geometry)) {
+                    result = candidate;
+                }
             }
+            return (result == null ? null : result.building);
         }
     }
+
+    private static class IndexedBuilding {
+        final Building building;
+        final int ordinal;
+        private PreparedGeometry preparedGeometry;
+
+        public IndexedBuilding(Building building, int ordinal) {
+            this.building = building;
+            this.ordinal = ordinal;
+        }
+
+        public PreparedGeometry getPreparedGeometry() {
+            if (preparedGeometry == null) {
+                preparedGeometry = PreparedGeometryFactory.prepare(building.getGeometry());
+            }
+            return preparedGeometry;
+        }
+    }
+
+    @Override
+    public Set<EntityAspect> getReads() {
+        return EnumSet.of(EntityAspect.BUILDING_GEOMETRY, EntityAspect.ADDRESS_GEOMETRY);
+    }
+
+    @Override
+    public Set<EntityAspect> getWrites() {
+        return EnumSet.of(EntityAspect.ADDRESS_BUILDING);
+    }
 }
@@ -1,9 +1,12 @@
 package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.Set;
 
 import org.openstreetmap.josm.plugins.ods.DataLayer;
 import org.openstreetmap.josm.plugins.ods.analysis.Analyzer;
+import org.openstreetmap.josm.plugins.ods.analysis.EntityAspect;
 import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
 
 
@@ -37,4 +40,14 @@ public class AddressToStreetMatcher implements Analyzer {
             }
         }
     }
+
+    @Override
+    public Set<EntityAspect> getReads() {
+        return EnumSet.noneOf(EntityAspect.class);
+    }
+
+    @Override
+    public Set<EntityAspect> getWrites() {
+        return EnumSet.of(EntityAspect.ADDRESS_STREET);
+    }
 }
\ No newline at end of file
@@ -23,4 +23,10 @@ public interface Block {
 
     public boolean isIncomplete();
     
+    /**
+     * Get the number of buildings in this block
+     * 
+     * @return
+     */
+    public int size();
 }
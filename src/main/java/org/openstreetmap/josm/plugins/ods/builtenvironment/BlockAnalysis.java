@@ -0,0 +1,97 @@
+package org.openstreetmap.josm.plugins.ods.builtenvironment;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.plugins.ods.DataLayer;
+import org.openstreetmap.josm.plugins.ods.analysis.Analyzer;
+import org.openstreetmap.josm.plugins.ods.analysis.EntityAspect;
+import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
+import org.openstreetmap.josm.plugins.ods.entities.EntityStore;
+
+/**
+ * This analyzer adds the new buildings to a block store, and runs the
+ * block analyzers on the blocks that received new buildings.
+ * Each block is analyzed by a separate task, so the blocks are analyzed
+ * in parallel, and the cost of an analysis depends on the size of the
+ * block instead of the total number of buildings.
+ * 
+ * @author gertjan
+ *
+ */
+public class BlockAnalysis implements Analyzer {
+    private final BlockStore blockStore;
+    private final List<BlockAnalyzer> analyzers;
+    private final ForkJoinPool pool;
+
+    public BlockAnalysis(BlockStore blockStore, List<BlockAnalyzer> analyzers,
+            ForkJoinPool pool) {
+        super();
+        this.blockStore = blockStore;
+        this.analyzers = analyzers;
+        this.pool = pool;
+    }
+
+    @Override
+    public void analyze(DataLayer dataLayer, EntitySet newEntities) {
+        BuiltEnvironment newEnvironment = new BuiltEnvironment(newEntities);
+        final EntityStore<Building> buildingStore = newEnvironment.getBuildings();
+        List<Building> newBuildings = new ArrayList<>();
+        Iterator<Building> it = buildingStore.iterator();
+        while (it.hasNext()) {
+            Building building = it.next();
+            if (building.getGeometry() != null) {
+                blockStore.addBuilding(building);
+                newBuildings.add(building);
+            }
+        }
+        // Blocks may have been merged while adding the buildings, so
+        // look them up afterwards.
+        Set<Block> blocks = new HashSet<>();
+        for (Building building : newBuildings) {
+            blocks.add(blockStore.getBlock(building));
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(blocks.size());
+        for (final Block block : blocks) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (BlockAnalyzer analyzer : analyzers) {
+                        analyzer.analyze(block, buildingStore);
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        Main.info("Block analysis: " + blockStore.getStatistics());
+    }
+
+    @Override
+    public Set<EntityAspect> getReads() {
+        return EnumSet.of(EntityAspect.BUILDING_GEOMETRY);
+    }
+
+    @Override
+    public Set<EntityAspect> getWrites() {
+        return EnumSet.of(EntityAspect.BUILDING_GEOMETRY);
+    }
+}
@@ -1,6 +1,16 @@
 package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
+import org.openstreetmap.josm.plugins.ods.entities.EntityStore;
+
 public interface BlockAnalyzer {
 
-    void analyze(Block block);
+    /**
+     * Analyze a block. Blocks are analyzed in parallel, so an analyzer
+     * that changes the geometry of a building must update the block store
+     * and the building store, with the building store locked.
+     * 
+     * @param block
+     * @param buildings The store with the new buildings
+     */
+    void analyze(Block block, EntityStore<Building> buildings);
 }
@@ -1,10 +1,21 @@
 package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import com.vividsolutions.jts.geom.Geometry;
 
+/**
+ * A block is a group of buildings that touch each other.
+ * The geometry of the block is the union of the building geometries. It is
+ * computed when it is requested, because most blocks grow one building at
+ * a time.
+ * 
+ * @author gertjan
+ *
+ */
 public class BlockImpl implements Block {
     private static Integer nextId = 1;
     
@@ -47,29 +58,30 @@ public class BlockImpl implements Block {
         if (building.isIncomplete()) {
             incomplete = true;
         }
-        if (geometry == null) {
-            geometry = building.getGeometry();
-        }
-        else {
-            geometry = geometry.union(building.getGeometry());
-        }
+        geometry = null;
 //        building.setBlock(this);
     }
     
     @Override
     public void merge(Block other) {
-        geometry = getGeometry().union(other.getGeometry());
         for (Building building : other.getInternalBuildings()) {
             internalBuildings.add(building);
 //            building.setBlock(this);
         }
         for (Building building : other.getExternalBuildings()) {
-            internalBuildings.add(building);
+            externalBuildings.add(building);
 //            building.setBlock(this);
         }
+        addresses.addAll(other.getAddresses());
         if (other.isIncomplete()) {
             incomplete = true;
         }
+        geometry = null;
+    }
+
+    @Override
+    public int size() {
+        return internalBuildings.size() + externalBuildings.size();
     }
     
     @Override
@@ -84,6 +96,16 @@ public class BlockImpl implements Block {
 
     @Override
     public Geometry getGeometry() {
+        if (geometry == null && size() > 0) {
+            List<Geometry> geometries = new ArrayList<>(size());
+            for (Building building : internalBuildings) {
+                geometries.add(building.getGeometry());
+            }
+            for (Building building : externalBuildings) {
+                geometries.add(building.getGeometry());
+            }
+            geometry = geometries.get(0).getFactory().buildGeometry(geometries).union();
+        }
         return geometry;
     }
 
@@ -0,0 +1,74 @@
+package org.openstreetmap.josm.plugins.ods.builtenvironment;
+
+import java.util.Collection;
+
+/**
+ * Statistics of the blocks in a block store. The cost of the block analysis
+ * depends on the size of the blocks, not on the total number of buildings.
+ * 
+ * @author gertjan
+ *
+ */
+public class BlockStatistics {
+    private final int blockCount;
+    private final int buildingCount;
+    private final int maxBlockSize;
+    private final int singleBuildingBlocks;
+    // Building pairs within the same block, a measure for the cost of pairwise checks
+    private final long pairCount;
+
+    public BlockStatistics(Collection<Block> blocks) {
+        int buildings = 0;
+        int max = 0;
+        int singles = 0;
+        long pairs = 0;
+        for (Block block : blocks) {
+            int size = block.size();
+            buildings += size;
+            max = Math.max(max, size);
+            if (size == 1) {
+                singles++;
+            }
+            pairs += (long) size * (size - 1) / 2;
+        }
+        this.blockCount = blocks.size();
+        this.buildingCount = buildings;
+        this.maxBlockSize = max;
+        this.singleBuildingBlocks = singles;
+        this.pairCount = pairs;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public int getBuildingCount() {
+        return buildingCount;
+    }
+
+    public int getMaxBlockSize() {
+        return maxBlockSize;
+    }
+
+    public double getMeanBlockSize() {
+        return (blockCount == 0 ? 0 : (double) buildingCount / blockCount);
+    }
+
+    public int getSingleBuildingBlocks() {
+        return singleBuildingBlocks;
+    }
+
+    /**
+     * @return The number of building pairs within the same block
+     */
+    public long getPairCount() {
+        return pairCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d buildings in %d blocks (max size %d, mean size %.1f, " +
+            "%d single buildings, %d pairs)", buildingCount, blockCount, maxBlockSize,
+            getMeanBlockSize(), singleBuildingBlocks, pairCount);
+    }
+}
@@ -1,6 +1,20 @@
 package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
+import java.util.Collection;
+
 public interface BlockStore {
     public void addBuilding(Building building);
     public void remove(Block block);
+
+    /**
+     * Get the block that contains this building.
+     * 
+     * @param building
+     * @return The block, or null if the building was not added to the store
+     */
+    public Block getBlock(Building building);
+
+    public Collection<Block> getBlocks();
+
+    public BlockStatistics getStatistics();
 }
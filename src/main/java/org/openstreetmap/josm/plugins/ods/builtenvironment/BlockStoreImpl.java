@@ -1,22 +1,59 @@
 package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.openstreetmap.josm.plugins.ods.entities.Entity;
+import org.openstreetmap.josm.plugins.ods.entities.GeometryListener;
+
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.index.quadtree.Quadtree;
 
+/**
+ * The BlockStore groups buildings into blocks of touching buildings.
+ * The blocks are the connected components of the adjacency graph of the
+ * buildings. They are maintained incrementally with a union-find structure,
+ * so adding a building only costs the neighbour search and the merging of
+ * the blocks it touches.
+ * The store listens to the geometry of its buildings, to keep its spatial
+ * index up to date.
+ * 
+ * @author gertjan
+ *
+ */
 public class BlockStoreImpl implements BlockStore {
     private Double tolerance = 1e-7;
-    private Set<Block> blocks = new HashSet<>();
+    // The blocks by the root building of their union-find tree
+    private Map<Building, Block> blocks = new HashMap<>();
+    private Map<Building, Building> parents = new HashMap<>();
     private Set<Building> internalBuildings = new HashSet<>();
     private Set<Building> externalBuildings = new HashSet<>();
     private Quadtree index = new Quadtree();
+    // The envelopes the buildings were indexed with
+    private Map<Building, Envelope> envelopes = new HashMap<>();
+    private final GeometryListener geometryListener = new GeometryListener() {
+        @Override
+        public void geometryChanged(Entity entity) {
+            updateGeometry((Building) entity);
+        }
+    };
      
+    public BlockStoreImpl() {
+        super();
+    }
+
+    public BlockStoreImpl(Double tolerance) {
+        super();
+        this.tolerance = tolerance;
+    }
+
      @Override
-     public void addBuilding(Building building) {
+     public synchronized void addBuilding(Building building) {
          if (building.isInternal()) {
              if (!internalBuildings.add(building)) {
                  return;
@@ -27,42 +64,127 @@ public class BlockStoreImpl implements BlockStore {
                  return;
              }
          }
-         Envelope envelope = building.getGeometry().getEnvelopeInternal();
+         Envelope envelope = new Envelope(building.getGeometry().getEnvelopeInternal());
          envelope.expandBy(tolerance);
+         Block newBlock = new BlockImpl(this);
+         newBlock.add(building);
+         blocks.put(building, newBlock);
+         parents.put(building, building);
          @SuppressWarnings("unchecked")
          List<Building> nearByBuildings = index.query(envelope);
-         Set<Block> nearByBlocks = new HashSet<>();
          for (Building neighbour : nearByBuildings) {
               if (building.getGeometry().distance(neighbour.getGeometry()) < tolerance) {
-//                  nearByBlocks.add(neighbour.getBlock());
+                  union(building, neighbour);
                   if (building.isInternal() == neighbour.isInternal()) {
                       building.addNeighbour(neighbour);
                       neighbour.addNeighbour(building);
                   }
               }
          }
-         if (nearByBlocks.isEmpty()) {
-//             Block newBlock = new BlockImpl(this);
-//             newBlock.add(building);
-//             blocks.add(newBlock);
-//             building.setBlock(newBlock);
-         } 
-         else {
-             Iterator<Block> it = nearByBlocks.iterator();
-             Block block = it.next();
-             block.add(building);
-//             building.setBlock(block);
-             while (it.hasNext()) {
-                 Block otherBlock = it.next();
-                 block.merge(otherBlock);
-                 block.getStore().remove(otherBlock);
-             }
-         }
          index.insert(envelope, building);
+         envelopes.put(building, envelope);
+         building.addGeometryListener(geometryListener);
      }
 
+    /**
+     * Remove a block and all its buildings from the store.
+     */
     @Override
-    public void remove(Block block) {
-        blocks.remove(block);
+    public synchronized void remove(Block block) {
+        Set<Building> buildings = new HashSet<>(block.getInternalBuildings());
+        buildings.addAll(block.getExternalBuildings());
+        if (buildings.isEmpty()) {
+            return;
+        }
+        Building root = find(buildings.iterator().next());
+        if (blocks.get(root) != block) {
+            // Not a block of this store
+            return;
+        }
+        blocks.remove(root);
+        for (Building building : buildings) {
+            parents.remove(building);
+            internalBuildings.remove(building);
+            externalBuildings.remove(building);
+            index.remove(envelopes.remove(building), building);
+            building.removeGeometryListener(geometryListener);
+        }
+    }
+
+    /**
+     * Update the spatial index after the geometry of a building has
+     * changed. The blocks are not changed.
+     * 
+     * @param building
+     */
+    private synchronized void updateGeometry(Building building) {
+        Envelope oldEnvelope = envelopes.get(building);
+        if (oldEnvelope == null) {
+            return;
+        }
+        index.remove(oldEnvelope, building);
+        Envelope envelope = new Envelope(building.getGeometry().getEnvelopeInternal());
+        envelope.expandBy(tolerance);
+        index.insert(envelope, building);
+        envelopes.put(building, envelope);
+    }
+
+    @Override
+    public synchronized Block getBlock(Building building) {
+        if (!parents.containsKey(building)) {
+            return null;
+        }
+        return blocks.get(find(building));
+    }
+
+    @Override
+    public synchronized Collection<Block> getBlocks() {
+        return new ArrayList<>(blocks.values());
+    }
+
+    @Override
+    public synchronized BlockStatistics getStatistics() {
+        return new BlockStatistics(blocks.values());
+    }
+
+    /**
+     * Find the root of the tree of this building, and halve the path
+     * on the way.
+     */
+    private Building find(Building building) {
+        Building current = building;
+        Building parent = parents.get(current);
+        while (parent != current) {
+            Building grandParent = parents.get(parent);
+            parents.put(current, grandParent);
+            current = grandParent;
+            parent = parents.get(current);
+        }
+        return current;
+    }
+
+    /**
+     * Merge the blocks of both buildings. The smaller block is merged
+     * into the larger one.
+     */
+    private void union(Building building1, Building building2) {
+        Building root1 = find(building1);
+        Building root2 = find(building2);
+        if (root1 == root2) {
+            return;
+        }
+        Block block1 = blocks.get(root1);
+        Block block2 = blocks.get(root2);
+        if (block1.size() < block2.size()) {
+            Building root = root1;
+            root1 = root2;
+            root2 = root;
+            Block block = block1;
+            block1 = block2;
+            block2 = block;
+        }
+        block1.merge(block2);
+        parents.put(root2, root1);
+        blocks.remove(root2);
     }
 }
@@ -1,10 +1,16 @@
 package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.Set;
 
 import org.openstreetmap.josm.plugins.ods.DataLayer;
 import org.openstreetmap.josm.plugins.ods.analysis.Analyzer;
+import org.openstreetmap.josm.plugins.ods.analysis.EntityAspect;
 import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
+import org.openstreetmap.josm.plugins.ods.jts.PreparedBoundary;
+
+import com.vividsolutions.jts.geom.Geometry;
 
 
 /**
@@ -12,18 +18,59 @@ import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
  * all address nodes in the building, have been downloaded.
  * It sets the incomplete flag in the building accordingly. 
  * 
+ * In prepared mode, the boundary is prepared once per run. Buildings in the
+ * interior of the boundary are accepted without an exact covers test.
+ * Otherwise the (cached) covers test of the entity set is used.
+ * 
  * @author gertjan
  *
  */
 public class BuildingCompletenessAnalyzer implements Analyzer {
+    private final boolean prepared;
     
+    public BuildingCompletenessAnalyzer() {
+        this(true);
+    }
+
+    public BuildingCompletenessAnalyzer(boolean prepared) {
+        super();
+        this.prepared = prepared;
+    }
+
     public void analyze(DataLayer dataLayer, EntitySet newEntities) {
         BuiltEnvironment entitySet = new BuiltEnvironment(newEntities);
+        if (prepared) {
+            analyzePrepared(entitySet);
+            return;
+        }
+        Iterator<Building> it = entitySet.getBuildings().iterator();
+        while (it.hasNext()) {
+            Building building = it.next();
+            boolean incomplete = !entitySet.boundaryCovers(building.getGeometry());
+            building.setIncomplete(incomplete);
+        }
+    }
+
+    private void analyzePrepared(BuiltEnvironment entitySet) {
+        Geometry boundary = entitySet.getBoundary();
+        PreparedBoundary preparedBoundary = (boundary == null ? null :
+            new PreparedBoundary(boundary));
         Iterator<Building> it = entitySet.getBuildings().iterator();
         while (it.hasNext()) {
             Building building = it.next();
-            boolean incomplete = !entitySet.getBoundary().covers(building.getGeometry());
+            boolean incomplete = (preparedBoundary == null ||
+                !preparedBoundary.covers(building.getGeometry()));
             building.setIncomplete(incomplete);
         }
     }
+
+    @Override
+    public Set<EntityAspect> getReads() {
+        return EnumSet.of(EntityAspect.BUILDING_GEOMETRY);
+    }
+
+    @Override
+    public Set<EntityAspect> getWrites() {
+        return EnumSet.of(EntityAspect.BUILDING_COMPLETENESS);
+    }
 }
@@ -1,10 +1,24 @@
 package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.plugins.ods.DataLayer;
 import org.openstreetmap.josm.plugins.ods.analysis.Analyzer;
+import org.openstreetmap.josm.plugins.ods.analysis.EntityAspect;
 import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
+import org.openstreetmap.josm.plugins.ods.entities.EntityStore;
+import org.openstreetmap.josm.plugins.ods.issue.DefaultIssue;
+import org.openstreetmap.josm.plugins.ods.issue.Issue;
 import org.openstreetmap.josm.tools.I18n;
 
 import com.vividsolutions.jts.geom.Geometry;
@@ -17,35 +31,138 @@ import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
  * 
  * TODO consider running over all buildings, not just the new ones.
  * 
+ * If a pool is supplied, the buildings are split into chunks that are
+ * simplified in parallel. The simplified geometries are applied after all
+ * chunks have finished, so the result is the same as in serial mode.
+ * 
  * @author gertjan
  *
  */
 public class BuildingSimplifier implements Analyzer {
+    private final static int DEFAULT_CHUNK_SIZE = 1000;
+    
     private Double tolerance;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private List<Issue> issues = new LinkedList<>();
     
     public BuildingSimplifier(Double tolerance) {
+        this(tolerance, null, DEFAULT_CHUNK_SIZE);
+    }
+
+    public BuildingSimplifier(Double tolerance, ForkJoinPool pool) {
+        this(tolerance, pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    public BuildingSimplifier(Double tolerance, ForkJoinPool pool, int chunkSize) {
         super();
         this.tolerance = tolerance;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
     }
 
     public void analyze(DataLayer dataLayer, EntitySet newEntities) {
         BuiltEnvironment newEnvironment = new BuiltEnvironment(newEntities);
-        Iterator<Building> buildings = newEnvironment.getBuildings().iterator();
-        while (buildings.hasNext()) {
-            Building building = buildings.next();
-            Geometry geom = building.getGeometry();
-            if (geom.isValid()) {
+        EntityStore<Building> store = newEnvironment.getBuildings();
+        List<Building> buildings = new ArrayList<>();
+        Iterator<Building> it = store.iterator();
+        while (it.hasNext()) {
+            buildings.add(it.next());
+        }
+        List<Chunk> chunks = new ArrayList<>(buildings.size() / chunkSize + 1);
+        for (int start = 0; start < buildings.size(); start += chunkSize) {
+            int end = Math.min(start + chunkSize, buildings.size());
+            chunks.add(new Chunk(buildings.subList(start, end)));
+        }
+        if (pool == null || chunks.size() < 2) {
+            for (Chunk chunk : chunks) {
+                chunk.call();
+            }
+        }
+        else {
+            try {
+                for (Future<Chunk> future : pool.invokeAll(chunks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        // Apply the results in the original order
+        List<Issue> newIssues = new LinkedList<>();
+        for (Chunk chunk : chunks) {
+            chunk.apply();
+            newIssues.addAll(chunk.issues);
+        }
+        for (Issue issue : newIssues) {
+            Main.warn(issue.getMessage());
+        }
+        issues = newIssues;
+    }
+
+    /**
+     * Get the issues of the last run. 
+     * 
+     * @return
+     */
+    public List<Issue> getIssues() {
+        return issues;
+    }
+
+    /**
+     * A range of buildings that is simplified by one task.
+     * The buildings themselves are not modified until apply() is called.
+     */
+    private class Chunk implements Callable<Chunk> {
+        private final List<Building> buildings;
+        private final Geometry[] results;
+        private final List<Issue> issues = new LinkedList<>();
+        
+        public Chunk(List<Building> buildings) {
+            this.buildings = buildings;
+            this.results = new Geometry[buildings.size()];
+        }
+
+        @Override
+        public Chunk call() {
+            for (int i = 0; i < buildings.size(); i++) {
+                Building building = buildings.get(i);
+                Geometry geom = building.getGeometry();
+                if (geom.isValid()) {
 //            geom = DouglasPeuckerSimplifier.simplify(
 //                    building.getGeometry(), tolerance);
 //            if (!geom.isValid()) {
-                geom = TopologyPreservingSimplifier.simplify(geom, tolerance);
-                if (geom.isValid()) {
-                    building.setGeometry(geom);
+                    geom = TopologyPreservingSimplifier.simplify(geom, tolerance);
+                    if (geom.isValid()) {
+                        results[i] = geom;
+                    }
+                    else {
+                        issues.add(new DefaultIssue(I18n.tr("Could not simplify building {0}", building.getId())));
+                    }
                 }
-                else {
-                    System.out.println(I18n.tr("Could not simplify building {0}", building.getId()));
+            }
+            return this;
+        }
+        
+        public void apply() {
+            for (int i = 0; i < buildings.size(); i++) {
+                if (results[i] != null) {
+                    buildings.get(i).setGeometry(results[i]);
                 }
             }
         }
     }
+
+    @Override
+    public Set<EntityAspect> getReads() {
+        return EnumSet.of(EntityAspect.BUILDING_GEOMETRY);
+    }
+
+    @Override
+    public Set<EntityAspect> getWrites() {
+        return EnumSet.of(EntityAspect.BUILDING_GEOMETRY);
+    }
 }
@@ -36,6 +36,10 @@ public class BuiltEnvironment  {
         return entitySet.getBoundary();
     }
 
+    public boolean boundaryCovers(Geometry geometry) {
+        return entitySet.boundaryCovers(geometry);
+    }
+
     public Street getStreet(String fullName) {
         return (Street) streets.getByName(fullName);
     }
@@ -1,11 +1,17 @@
 package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import org.openstreetmap.josm.plugins.ods.DataLayer;
 import org.openstreetmap.josm.plugins.ods.analysis.Analyzer;
+import org.openstreetmap.josm.plugins.ods.analysis.EntityAspect;
 import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
+import org.openstreetmap.josm.plugins.ods.entities.EntityStore;
 
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 
 
@@ -23,19 +29,32 @@ public class CrossingBuildingAnalyzer implements Analyzer, BlockAnalyzer {
     private final CrossingBuildingFixer fixer;
     
     public CrossingBuildingAnalyzer(Double tolerance) {
+        this(tolerance, new CrossingBuildingFixer(tolerance));
+    }
+
+    /**
+     * @param tolerance
+     * @param fixer The fixer for the analysis of an entity set
+     */
+    public CrossingBuildingAnalyzer(Double tolerance, CrossingBuildingFixer fixer) {
         super();
         this.tolerance = tolerance;
-        this.fixer = new CrossingBuildingFixer(tolerance);
+        this.fixer = fixer;
     }
 
+    /**
+     * Check the neighbouring buildings in a block. Blocks don't share
+     * buildings, so different blocks can be analyzed at the same time.
+     * The block store and the building store update their spatial indexes
+     * themselves when the fixer changes a geometry.
+     */
     @Override
-    public  void analyze(Block block) {
+    public  void analyze(Block block, EntityStore<Building> store) {
+        CrossingBuildingFixer blockFixer = new CrossingBuildingFixer(tolerance);
         for (Building building : block.getExternalBuildings()) {
-            Comparable<Object> buildingId = building.getId();
             for (Building neighbour :building.getNeighbours()) {
-                Comparable<Object> neighbourId = neighbour.getId();
-                 if (neighbourId.compareTo(buildingId) == 1) {
-                     analyzeCrossing(building, neighbour);
+                 if (compareIds(neighbour, building) > 0) {
+                     analyzeCrossing(building, neighbour, blockFixer);
                  }
             }
         }
@@ -43,25 +62,58 @@ public class CrossingBuildingAnalyzer implements Analyzer, BlockAnalyzer {
     
     public void analyze(DataLayer dataLayer, EntitySet newEntities) {
         BuiltEnvironment newEnvironment = new BuiltEnvironment(newEntities);
-        Iterator<Building> buildings1 = newEnvironment.getBuildings().iterator();
-        while (buildings1.hasNext()) {
-            Building building1 = buildings1.next();
-            analyze(building1, newEnvironment);
+        EntityStore<Building> store = newEnvironment.getBuildings();
+        store.enableSpatialIndex();
+        Iterator<Building> buildings = store.iterator();
+        while (buildings.hasNext()) {
+            Building building1 = buildings.next();
+            if (building1.getGeometry() != null) {
+                analyze(building1, store);
+            }
         }
     }
     
-    private void analyze(Building building1, BuiltEnvironment newEnvironment) {
-        Iterator<Building> buildings2 = newEnvironment.getBuildings().iterator();
-        while (buildings2.hasNext()) {
-            Building building2 = buildings2.next(); 
+    /**
+     * Check building1 against the buildings whose envelope intersects the
+     * tolerance-expanded envelope of building1.
+     * The fixer may change the geometry of both buildings. The store updates
+     * its spatial index itself.
+     * 
+     * @param building1
+     * @param store
+     */
+    private void analyze(Building building1, EntityStore<Building> store) {
+        List<Building> candidates = store.query(getSearchEnvelope(building1));
+        for (Building building2 : candidates) {
             // No need to run each comparison twice
-            if (building1.getId().toString().compareTo(building2.getId().toString()) > 0) {
-                analyzeCrossing(building1, building2);
+            if (compareIds(building1, building2) > 0) {
+                analyzeCrossing(building1, building2, fixer);
             }
         }
     }
     
-    private void analyzeCrossing(Building building1, Building building2) {
+    private Envelope getSearchEnvelope(Building building) {
+        Envelope envelope = new Envelope(building.getGeometry().getEnvelopeInternal());
+        envelope.expandBy(tolerance);
+        return envelope;
+    }
+    
+    /**
+     * Compare the ids of 2 buildings. Buildings in one store share the
+     * same id type, so we can use the natural ordering of the ids.
+     * 
+     * @param building1
+     * @param building2
+     * @return
+     */
+    private static int compareIds(Building building1, Building building2) {
+        Comparable<Object> id1 = building1.getId();
+        Object id2 = building2.getId();
+        return id1.compareTo(id2);
+    }
+    
+    private void analyzeCrossing(Building building1, Building building2,
+            CrossingBuildingFixer fixer) {
         Geometry geom1 = building1.getGeometry();
         Geometry geom2 = building2.getGeometry();
         if (geom1.isWithinDistance(geom2, tolerance)) {
@@ -70,4 +122,13 @@ public class CrossingBuildingAnalyzer implements Analyzer, BlockAnalyzer {
         }
     }
 
+    @Override
+    public Set<EntityAspect> getReads() {
+        return EnumSet.of(EntityAspect.BUILDING_GEOMETRY);
+    }
+
+    @Override
+    public Set<EntityAspect> getWrites() {
+        return EnumSet.of(EntityAspect.BUILDING_GEOMETRY);
+    }
 }
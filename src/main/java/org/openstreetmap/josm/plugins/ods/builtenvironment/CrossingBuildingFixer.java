@@ -1,7 +1,9 @@
 package org.openstreetmap.josm.plugins.ods.builtenvironment;
 
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.plugins.ods.jts.GeoUtil;
 import org.openstreetmap.josm.plugins.ods.jts.LinearRingAligner;
+import org.openstreetmap.josm.plugins.ods.jts.PackedRingAligner;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LinearRing;
@@ -11,10 +13,22 @@ public class CrossingBuildingFixer {
     private Building building1;
     private Building building2;
     private final Double tolerance;
+    private final boolean packed;
     
     public CrossingBuildingFixer(Double tolerance) {
+        this(tolerance, Main.pref != null
+            && Main.pref.getBoolean("openservices.aligner.packed", false));
+    }
+
+    /**
+     * @param tolerance
+     * @param packed Use the {@link PackedRingAligner} instead of the
+     *     {@link LinearRingAligner}
+     */
+    public CrossingBuildingFixer(Double tolerance, boolean packed) {
         super();
         this.tolerance = tolerance;
+        this.packed = packed;
     }
 
     public void setBuildings(Building building1, Building building2) {
@@ -34,14 +48,30 @@ public class CrossingBuildingFixer {
         Polygon polygon2 = (Polygon) geom2;
         LinearRing ring1 = (LinearRing)polygon1.getExteriorRing();
         LinearRing ring2 = (LinearRing)polygon2.getExteriorRing();
-        LinearRingAligner aligner = new LinearRingAligner(ring1, ring2, tolerance);
-        aligner.run();
+        if (packed) {
+            PackedRingAligner aligner = new PackedRingAligner(ring1, ring2, tolerance);
+            aligner.run();
+            update(polygon1, polygon2, aligner.ring1Modified() ? aligner.getRing1() : null,
+                aligner.ring2Modified() ? aligner.getRing2() : null);
+        }
+        else {
+            LinearRingAligner aligner = new LinearRingAligner(ring1, ring2, tolerance);
+            aligner.run();
+            update(polygon1, polygon2, aligner.ring1Modified() ? aligner.getRing1() : null,
+                aligner.ring2Modified() ? aligner.getRing2() : null);
+        }
+    }
+
+    /**
+     * Replace the exterior rings of the buildings that have been modified.
+     */
+    private void update(Polygon polygon1, Polygon polygon2, LinearRing ring1, LinearRing ring2) {
         GeoUtil geoUtil = GeoUtil.getInstance();
-        if (aligner.ring1Modified()) {
-            building1.setGeometry(geoUtil.toPolygon(aligner.getRing1(), getInteriorRings(polygon1)));            
+        if (ring1 != null) {
+            building1.setGeometry(geoUtil.toPolygon(ring1, getInteriorRings(polygon1)));
         }
-        if (aligner.ring2Modified()) {
-            building2.setGeometry(geoUtil.toPolygon(aligner.getRing2(), getInteriorRings(polygon2)));            
+        if (ring2 != null) {
+            building2.setGeometry(geoUtil.toPolygon(ring2, getInteriorRings(polygon2)));
         }
     }
     
@@ -11,6 +11,7 @@ import org.openstreetmap.josm.plugins.ods.builtenvironment.Address;
 import org.openstreetmap.josm.plugins.ods.builtenvironment.City;
 import org.openstreetmap.josm.plugins.ods.builtenvironment.Street;
 import org.openstreetmap.josm.plugins.ods.entities.Entity;
+import org.openstreetmap.josm.plugins.ods.entities.GeometryListener;
 
 import com.vividsolutions.jts.geom.Geometry;
 
@@ -93,6 +94,16 @@ public class StreetImpl implements Street {
     public Geometry getGeometry() {
         return null;
     }
+
+    @Override
+    public void addGeometryListener(GeometryListener listener) {
+        // A street has no geometry, so it never changes
+    }
+
+    @Override
+    public void removeGeometryListener(GeometryListener listener) {
+        // A street has no geometry, so it never changes
+    }
     
     public static String getFullName(String cityName, String streetName) {
         return streetName + "|" + cityName;
@@ -137,6 +148,11 @@ public class StreetImpl implements Street {
         return null;
     }
 
+    @Override
+    public void setPrimitives(Collection<OsmPrimitive> primitives) {
+        // A street has no primitives of its own
+    }
+
     @Override
     public Map<String, String> getOtherTags() {
         return Collections.emptyMap();
@@ -1,7 +1,7 @@
 package org.openstreetmap.josm.plugins.ods.crs;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
@@ -27,7 +27,7 @@ public abstract class CRSUtil {
             10000000);
     protected final static GeometryFactory OSM_GEOMETRY_FACTORY = new GeometryFactory(
             OSM_PRECISION_MODEL, OSM_SRID);
-    private static Map<String, CoordinateReferenceSystem> coordinateReferenceSystems = new HashMap<>();
+    private static Map<String, CoordinateReferenceSystem> coordinateReferenceSystems = new ConcurrentHashMap<>();
 
     static {
         try {
@@ -39,7 +39,7 @@ public abstract class CRSUtil {
         }
     }
     
-    public synchronized static CRSUtil getInstance() {
+    public static CRSUtil getInstance() {
         return instance;
     }
     
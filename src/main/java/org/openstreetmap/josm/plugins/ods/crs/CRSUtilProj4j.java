@@ -1,7 +1,7 @@
 package org.openstreetmap.josm.plugins.ods.crs;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
@@ -10,6 +10,7 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.TransformException;
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.tools.I18n;
 
@@ -23,21 +24,36 @@ import com.vividsolutions.jts.geom.PrecisionModel;
 /**
  * A Proj4j based implementation of CRSUtils. The opengis Mathtransform has
  * issues with EPSG:28992
+ * This class is thread safe. The transforms are cached in concurrent maps,
+ * so no locking is needed to transform a feature.
  * 
  * @author gertjan
  * 
  */
 public class CRSUtilProj4j extends CRSUtil {
     private final static Long OSM_SRID = 4326L;
-    private final static JTSCoordinateTransformFactory ctFactory = new Proj4jCRSTransformFactory();
+    private final static JTSCoordinateTransformFactory ctFactory = createTransformFactory();
     private final static PrecisionModel OSM_PRECISION_MODEL = new PrecisionModel(
             10000000);
     public final static GeometryFactory OSM_GEOMETRY_FACTORY = new GeometryFactory(
             OSM_PRECISION_MODEL, OSM_SRID.intValue());
-    private static Map<CoordinateReferenceSystem, JTSCoordinateTransform> toOsmTransforms = new HashMap<>();
-    private static Map<CoordinateReferenceSystem, JTSCoordinateTransform> fromOsmTransforms = new HashMap<>();
+    private static ConcurrentMap<CoordinateReferenceSystem, JTSCoordinateTransform> toOsmTransforms = new ConcurrentHashMap<>();
+    private static ConcurrentMap<CoordinateReferenceSystem, JTSCoordinateTransform> fromOsmTransforms = new ConcurrentHashMap<>();
 
-    public synchronized Geometry transform(SimpleFeature feature)
+    /**
+     * Use the fast path for RD-New to WGS84, unless it has been switched off.
+     * 
+     * @return
+     */
+    private static JTSCoordinateTransformFactory createTransformFactory() {
+        JTSCoordinateTransformFactory factory = new Proj4jCRSTransformFactory();
+        if (Main.pref != null && !Main.pref.getBoolean("openservices.crs.fastpath", true)) {
+            return factory;
+        }
+        return new FastPathCRSTransformFactory(factory);
+    }
+
+    public Geometry transform(SimpleFeature feature)
             throws CRSException {
         JTSCoordinateTransform transform = getToOsmTransform(feature.getType()
                 .getCoordinateReferenceSystem());
@@ -77,13 +93,13 @@ public class CRSUtilProj4j extends CRSUtil {
         return transform;
     }
 
-    private static synchronized JTSCoordinateTransform createToOsmTransform(
+    private static JTSCoordinateTransform createToOsmTransform(
             CoordinateReferenceSystem crs) {
         Long sourceSRID = getSRID(crs);
         JTSCoordinateTransform transform = ctFactory
                 .createJTSCoordinateTransform(sourceSRID, OSM_SRID, 10000000.0);
-        toOsmTransforms.put(crs, transform);
-        return transform;
+        JTSCoordinateTransform existing = toOsmTransforms.putIfAbsent(crs, transform);
+        return (existing == null ? transform : existing);
     }
 
     private static Long getSRID(CoordinateReferenceSystem crs) {
@@ -100,7 +116,7 @@ public class CRSUtilProj4j extends CRSUtil {
         return transform;
     }
 
-    private static synchronized JTSCoordinateTransform createFromOsmTransform(
+    private static JTSCoordinateTransform createFromOsmTransform(
             CoordinateReferenceSystem crs) {
         Long sourceSRID;
         if (crs.getClass() == DefaultGeographicCRS.class) {
@@ -110,8 +126,8 @@ public class CRSUtilProj4j extends CRSUtil {
         }
         JTSCoordinateTransform transform = ctFactory
                 .createJTSCoordinateTransform(OSM_SRID, sourceSRID);
-        fromOsmTransforms.put(crs, transform);
-        return transform;
+        JTSCoordinateTransform existing = fromOsmTransforms.putIfAbsent(crs, transform);
+        return (existing == null ? transform : existing);
     }
 
     public static Envelope toEnvelope(Bounds bounds) {
@@ -128,7 +144,7 @@ public class CRSUtilProj4j extends CRSUtil {
      * @return
      * @throws TransformException
      */
-    public synchronized ReferencedEnvelope createBoundingBox(CoordinateReferenceSystem crs,
+    public ReferencedEnvelope createBoundingBox(CoordinateReferenceSystem crs,
             Bounds bounds) throws CRSException {
         Envelope envelope = toEnvelope(bounds);
         JTSCoordinateTransform transform;
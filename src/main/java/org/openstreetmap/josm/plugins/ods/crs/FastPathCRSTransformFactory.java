@@ -0,0 +1,52 @@
+package org.openstreetmap.josm.plugins.ods.crs;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+/**
+ * JTSCoordinateTransformFactory that uses a fast approximation for
+ * specific CRS pairs, and delegates to an other factory for all other pairs.
+ * Currently, the only fast path is RD-New to WGS84.
+ * 
+ * @author gertjan
+ *
+ */
+public class FastPathCRSTransformFactory implements JTSCoordinateTransformFactory {
+    private final JTSCoordinateTransformFactory delegate;
+    private final ConcurrentMap<String, JTSCoordinateTransform> cache = new ConcurrentHashMap<>();
+
+    public FastPathCRSTransformFactory(JTSCoordinateTransformFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public JTSCoordinateTransform createJTSCoordinateTransform(Long sourceSRID,
+            Long targetSRID) {
+        return createJTSCoordinateTransform(sourceSRID, targetSRID, null);
+    }
+
+    @Override
+    public JTSCoordinateTransform createJTSCoordinateTransform(
+            Long sourceSRID, Long targetSRID, Double scale) {
+        if (!RDNewToWgs84Transform.RD_NEW.equals(sourceSRID)
+                || !RDNewToWgs84Transform.WGS84.equals(targetSRID)) {
+            return delegate.createJTSCoordinateTransform(sourceSRID, targetSRID, scale);
+        }
+        String key = String.valueOf(scale);
+        JTSCoordinateTransform transform = cache.get(key);
+        if (transform == null) {
+            PrecisionModel precisionModel = (scale == null ? new PrecisionModel()
+                : new PrecisionModel(scale));
+            transform = new RDNewToWgs84Transform(
+                delegate.createJTSCoordinateTransform(sourceSRID, targetSRID),
+                precisionModel);
+            JTSCoordinateTransform existing = cache.putIfAbsent(key, transform);
+            if (existing != null) {
+                transform = existing;
+            }
+        }
+        return transform;
+    }
+}
@@ -1,6 +1,7 @@
 package org.openstreetmap.josm.plugins.ods.crs;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
@@ -161,6 +162,28 @@ public abstract class JTSCoordinateTransform {
         return result;
     }
 
+    /**
+     * Transform a coordinate sequence into a new sequence. The default
+     * implementation transforms the coordinates one by one. Subclasses can
+     * override this method to transform the whole sequence at once.
+     * 
+     * @param sequence
+     * @return
+     */
+    public CoordinateSequence transform(CoordinateSequence sequence) {
+        CoordinateSequence result = targetFactory.getCoordinateSequenceFactory()
+                .create(sequence.size(), sequence.getDimension());
+        for (int i = 0; i < sequence.size(); i++) {
+            Coordinate coord = transform(sequence.getCoordinate(i));
+            result.setOrdinate(i, CoordinateSequence.X, coord.x);
+            result.setOrdinate(i, CoordinateSequence.Y, coord.y);
+            if (sequence.getDimension() > 2) {
+                result.setOrdinate(i, CoordinateSequence.Z, coord.z);
+            }
+        }
+        return result;
+    }
+
     /**
      * Transform a Point object
      * 
@@ -168,7 +191,7 @@ public abstract class JTSCoordinateTransform {
      * @return
      */
     public Point transform(Point point) {
-        return targetFactory.createPoint(transform(point.getCoordinate()));
+        return targetFactory.createPoint(transform(point.getCoordinateSequence()));
     }
 
     /**
@@ -179,7 +202,7 @@ public abstract class JTSCoordinateTransform {
      */
     public LineString transform(LineString lineString) {
         return targetFactory.createLineString(transform(lineString
-                .getCoordinates()));
+                .getCoordinateSequence()));
     }
 
     /**
@@ -189,7 +212,7 @@ public abstract class JTSCoordinateTransform {
      * @return
      */
     public LinearRing transform(LinearRing linearRing) {
-        return targetFactory.createLinearRing(transform(linearRing.getCoordinates()));
+        return targetFactory.createLinearRing(transform(linearRing.getCoordinateSequence()));
     }
 
     /**
@@ -1,8 +1,8 @@
 package org.openstreetmap.josm.plugins.ods.crs;
 
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.osgeo.proj4j.CoordinateReferenceSystem;
 import org.osgeo.proj4j.CoordinateTransform;
@@ -12,11 +12,15 @@ import org.osgeo.proj4j.ProjCoordinate;
 import org.osgeo.proj4j.util.CRSCache;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
 
 /**
  * Proj4j based implementation of JTSCoordinateTransformFactory Caches created
- * Transforms to prevent duplication
+ * Transforms to prevent duplication.
+ * The created transforms are thread safe. Proj4j CoordinateTransform objects
+ * are not, so every thread gets its own instance.
  * 
  * @author Gertjan Idema
  * 
@@ -24,7 +28,7 @@ import com.vividsolutions.jts.geom.PrecisionModel;
 public class Proj4jCRSTransformFactory implements JTSCoordinateTransformFactory {
     static CRSCache crsCache = new CRSCache();
     static CoordinateTransformFactory CTFactory = new CoordinateTransformFactory();
-    static Map<String, JTSCoordinateTransform> JTSCoordinateTransformCache = new HashMap<>();
+    static ConcurrentMap<String, JTSCoordinateTransform> JTSCoordinateTransformCache = new ConcurrentHashMap<>();
 
     @Override
     public JTSCoordinateTransform createJTSCoordinateTransform(Long sourceSRID,
@@ -33,14 +37,17 @@ public class Proj4jCRSTransformFactory implements JTSCoordinateTransformFactory
     }
 
     @Override
-    public synchronized JTSCoordinateTransform createJTSCoordinateTransform(
+    public JTSCoordinateTransform createJTSCoordinateTransform(
             Long sourceSRID, Long targetSRID, Double scale) {
         String key = String.format(Locale.UK, "%d|%d|%f", sourceSRID,
                 targetSRID, scale);
         JTSCoordinateTransform crsUtil = JTSCoordinateTransformCache.get(key);
         if (crsUtil == null) {
             crsUtil = new CRSUtilImpl(sourceSRID, targetSRID, scale);
-            JTSCoordinateTransformCache.put(key, crsUtil);
+            JTSCoordinateTransform existing = JTSCoordinateTransformCache.putIfAbsent(key, crsUtil);
+            if (existing != null) {
+                crsUtil = existing;
+            }
         }
         return crsUtil;
     }
@@ -52,7 +59,15 @@ public class Proj4jCRSTransformFactory implements JTSCoordinateTransformFactory
     public class CRSUtilImpl extends JTSCoordinateTransform {
         private CoordinateReferenceSystem sourceCrsProj4j;
         private CoordinateReferenceSystem targetCrsProj4j;
-        private CoordinateTransform ct;
+        // CoordinateTransform keeps intermediate results in instance fields
+        private final ThreadLocal<Worker> worker = new ThreadLocal<Worker>() {
+            @Override
+            protected Worker initialValue() {
+                return new Worker(CTFactory.createTransform(sourceCrsProj4j, targetCrsProj4j));
+            }
+        };
+        // The scale of the fixed precision model, or 0 for a floating precision model
+        private double scale;
 
         public CRSUtilImpl(Long sourceSRID, Long targetSRID) {
             super(sourceSRID, targetSRID);
@@ -73,9 +88,14 @@ public class Proj4jCRSTransformFactory implements JTSCoordinateTransformFactory
         private void init() {
             String sourceCrsCode = String.format("epsg:%d", getSourceSRID());
             String targetCrsCode = String.format("epsg:%d", getTargetSRID());
-            sourceCrsProj4j = crsCache.createFromName(sourceCrsCode);
-            targetCrsProj4j = crsCache.createFromName(targetCrsCode);
-            ct = CTFactory.createTransform(sourceCrsProj4j, targetCrsProj4j);
+            // CRSCache is not thread safe
+            synchronized (crsCache) {
+                sourceCrsProj4j = crsCache.createFromName(sourceCrsCode);
+                targetCrsProj4j = crsCache.createFromName(targetCrsCode);
+            }
+            PrecisionModel precisionModel = getPrecisionModel();
+            scale = (precisionModel.getType() == PrecisionModel.FIXED ?
+                precisionModel.getScale() : 0);
         }
 
         @Override
@@ -91,7 +111,7 @@ public class Proj4jCRSTransformFactory implements JTSCoordinateTransformFactory
 
         private ProjCoordinate transform(ProjCoordinate coord) {
             try {
-                return ct.transform(coord, new ProjCoordinate());
+                return worker.get().ct.transform(coord, new ProjCoordinate());
             } catch (IllegalStateException e) {
                 // TODO Auto-generated catch block
                 e.printStackTrace();
@@ -99,6 +119,41 @@ public class Proj4jCRSTransformFactory implements JTSCoordinateTransformFactory
             }
         }
 
+        /**
+         * Transform a whole sequence into a packed sequence, reusing the
+         * same ProjCoordinates for all vertices. The precision model
+         * is applied inline.
+         */
+        @Override
+        public CoordinateSequence transform(CoordinateSequence sequence) {
+            Worker w = worker.get();
+            int size = sequence.size();
+            int dimension = Math.min(sequence.getDimension(), 3);
+            double[] coords = new double[size * dimension];
+            ProjCoordinate src = w.src;
+            ProjCoordinate dst = w.dst;
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                src.x = sequence.getOrdinate(i, CoordinateSequence.X);
+                src.y = sequence.getOrdinate(i, CoordinateSequence.Y);
+                src.z = (dimension > 2 ? sequence.getOrdinate(i, CoordinateSequence.Z) : Double.NaN);
+                w.ct.transform(src, dst);
+                coords[j++] = makePrecise(dst.x);
+                coords[j++] = makePrecise(dst.y);
+                if (dimension > 2) {
+                    coords[j++] = dst.z;
+                }
+            }
+            return new PackedCoordinateSequence.Double(coords, dimension);
+        }
+
+        private double makePrecise(double value) {
+            if (scale == 0 || Double.isNaN(value)) {
+                return value;
+            }
+            return Math.round(value * scale) / scale;
+        }
+
         /**
          * Convert form JTS Coordinate to Proj4j ProjCoordinate
          * 
@@ -123,4 +178,17 @@ public class Proj4jCRSTransformFactory implements JTSCoordinateTransformFactory
             return result;
         }
     }
+
+    /**
+     * Per-thread proj4j transform with scratch coordinates.
+     */
+    private static class Worker {
+        final CoordinateTransform ct;
+        final ProjCoordinate src = new ProjCoordinate();
+        final ProjCoordinate dst = new ProjCoordinate();
+
+        public Worker(CoordinateTransform ct) {
+            this.ct = ct;
+        }
+    }
 }
@@ -0,0 +1,179 @@
+package org.openstreetmap.josm.plugins.ods.crs;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+
+/**
+ * Fast transformation from RD-New (EPSG:28992) to WGS84 (EPSG:4326).
+ *
+ * The transformation uses the well known polynomial approximation by
+ * Schreutelkamp and Strang van Hees, with a correction grid on top of it.
+ * The correction grid holds the difference between the polynomial and the
+ * exact transformation, at 5 km intervals. It is computed from the exact
+ * transformation when this object is created, and is interpolated
+ * bilinearly.
+ *
+ * Within the RD domain (x from -7000 to 300000, y from 289000 to 629000),
+ * the maximum difference with the exact transformation is below 1e-8
+ * degrees (about 2e-10 degrees in practice). This is well below the 1e-7
+ * degrees precision of OSM coordinates. Coordinates outside the domain are
+ * handed to the exact transformation.
+ *
+ * @author gertjan
+ *
+ */
+public class RDNewToWgs84Transform extends JTSCoordinateTransform {
+    public final static Long RD_NEW = 28992L;
+    public final static Long WGS84 = 4326L;
+    /**
+     * The documented maximum error in degrees within the RD domain.
+     */
+    public final static double MAX_ERROR = 1e-8;
+
+    private final static double MIN_X = -7000;
+    private final static double MAX_X = 300000;
+    private final static double MIN_Y = 289000;
+    private final static double MAX_Y = 629000;
+    private final static double GRID_SIZE = 5000;
+
+    // Reference point of the polynomial (Amersfoort)
+    private final static double X0 = 155000;
+    private final static double Y0 = 463000;
+    private final static double LAT0 = 52.15517440;
+    private final static double LON0 = 5.38720621;
+
+    private final JTSCoordinateTransform exactTransform;
+    private final int nx;
+    private final int ny;
+    private final double[] lonCorrection;
+    private final double[] latCorrection;
+    // The scale of the fixed precision model, or 0 for a floating precision model
+    private final double scale;
+
+    /**
+     * @param exactTransform The exact RD-New to WGS84 transformation,
+     *     without precision reduction.
+     * @param precisionModel The precision model of the result
+     */
+    public RDNewToWgs84Transform(JTSCoordinateTransform exactTransform,
+            PrecisionModel precisionModel) {
+        super(RD_NEW, WGS84, precisionModel);
+        this.exactTransform = exactTransform;
+        this.scale = (precisionModel.getType() == PrecisionModel.FIXED ?
+            precisionModel.getScale() : 0);
+        nx = (int) Math.ceil((MAX_X - MIN_X) / GRID_SIZE) + 1;
+        ny = (int) Math.ceil((MAX_Y - MIN_Y) / GRID_SIZE) + 1;
+        lonCorrection = new double[nx * ny];
+        latCorrection = new double[nx * ny];
+        for (int i = 0; i < nx; i++) {
+            for (int j = 0; j < ny; j++) {
+                double x = MIN_X + i * GRID_SIZE;
+                double y = MIN_Y + j * GRID_SIZE;
+                Coordinate exact = exactTransform.transform(new Coordinate(x, y));
+                lonCorrection[i * ny + j] = exact.x - polynomialLon(x, y);
+                latCorrection[i * ny + j] = exact.y - polynomialLat(x, y);
+            }
+        }
+    }
+
+    @Override
+    public JTSCoordinateTransform getReverseTransform() {
+        return exactTransform.getReverseTransform();
+    }
+
+    @Override
+    public Coordinate transform(Coordinate coord) {
+        if (!inDomain(coord.x, coord.y)) {
+            Coordinate result = exactTransform.transform(coord);
+            getPrecisionModel().makePrecise(result);
+            return result;
+        }
+        double[] lonLat = new double[2];
+        transform(coord.x, coord.y, lonLat);
+        return new Coordinate(makePrecise(lonLat[0]), makePrecise(lonLat[1]), coord.z);
+    }
+
+    @Override
+    public CoordinateSequence transform(CoordinateSequence sequence) {
+        int size = sequence.size();
+        int dimension = Math.min(sequence.getDimension(), 3);
+        double[] coords = new double[size * dimension];
+        double[] lonLat = new double[2];
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            double x = sequence.getOrdinate(i, CoordinateSequence.X);
+            double y = sequence.getOrdinate(i, CoordinateSequence.Y);
+            if (inDomain(x, y)) {
+                transform(x, y, lonLat);
+            }
+            else {
+                Coordinate c = exactTransform.transform(new Coordinate(x, y));
+                lonLat[0] = c.x;
+                lonLat[1] = c.y;
+            }
+            coords[j++] = makePrecise(lonLat[0]);
+            coords[j++] = makePrecise(lonLat[1]);
+            if (dimension > 2) {
+                coords[j++] = sequence.getOrdinate(i, CoordinateSequence.Z);
+            }
+        }
+        return new PackedCoordinateSequence.Double(coords, dimension);
+    }
+
+    private static boolean inDomain(double x, double y) {
+        return x >= MIN_X && x <= MAX_X && y >= MIN_Y && y <= MAX_Y;
+    }
+
+    private void transform(double x, double y, double[] lonLat) {
+        double fx = (x - MIN_X) / GRID_SIZE;
+        double fy = (y - MIN_Y) / GRID_SIZE;
+        int i = Math.min((int) fx, nx - 2);
+        int j = Math.min((int) fy, ny - 2);
+        double tx = fx - i;
+        double ty = fy - j;
+        int i00 = i * ny + j;
+        int i10 = i00 + ny;
+        double w00 = (1 - tx) * (1 - ty);
+        double w10 = tx * (1 - ty);
+        double w01 = (1 - tx) * ty;
+        double w11 = tx * ty;
+        lonLat[0] = polynomialLon(x, y) + w00 * lonCorrection[i00] + w10 * lonCorrection[i10]
+            + w01 * lonCorrection[i00 + 1] + w11 * lonCorrection[i10 + 1];
+        lonLat[1] = polynomialLat(x, y) + w00 * latCorrection[i00] + w10 * latCorrection[i10]
+            + w01 * latCorrection[i00 + 1] + w11 * latCorrection[i10 + 1];
+    }
+
+    private double makePrecise(double value) {
+        if (scale == 0) {
+            return value;
+        }
+        return Math.round(value * scale) / scale;
+    }
+
+    private static double polynomialLat(double x, double y) {
+        double u = (x - X0) * 1e-5;
+        double v = (y - Y0) * 1e-5;
+        double u2 = u * u;
+        double v2 = v * v;
+        double sum = 3235.65389 * v - 32.58297 * u2 - 0.24750 * v2
+            - 0.84978 * u2 * v - 0.06550 * v2 * v - 0.01709 * u2 * v2
+            - 0.00738 * u + 0.00530 * u2 * u2 - 0.00039 * u2 * v2 * v
+            + 0.00033 * u2 * u2 * v - 0.00012 * u * v;
+        return LAT0 + sum / 3600;
+    }
+
+    private static double polynomialLon(double x, double y) {
+        double u = (x - X0) * 1e-5;
+        double v = (y - Y0) * 1e-5;
+        double u2 = u * u;
+        double u3 = u2 * u;
+        double v2 = v * v;
+        double sum = 5260.52916 * u + 105.94684 * u * v + 2.45656 * u * v2
+            - 0.81885 * u3 + 0.05594 * u * v2 * v - 0.05607 * u3 * v
+            + 0.01199 * v - 0.00256 * u3 * v2 + 0.00128 * u * v2 * v2
+            + 0.00022 * v2 - 0.00022 * u2 + 0.00026 * u3 * u2;
+        return LON0 + sum / 3600;
+    }
+}
@@ -1,24 +1,43 @@
 package org.openstreetmap.josm.plugins.ods.entities;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.plugins.ods.jts.GeoUtil;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+import com.vividsolutions.jts.operation.union.CascadedPolygonUnion;
 
 /**
  * An ODS entity set contains all entities belonging to a WorkingSet.
  * 
+ * The boundary of the entity set is the union of the download areas.
+ * The download polygons are kept in a quadtree, and are merged lazily with
+ * a cascaded union when the boundary is requested. Covers tests use prepared
+ * geometries of the polygons and of the merged boundary, that are discarded
+ * when the boundary is extended.
+ * 
  * @author gertjan
  *
  */
 public class DefaultEntitySet implements EntitySet {
+    private static Set<Class<? extends Entity>> longIdTypes = new CopyOnWriteArraySet<>();
 	private Map<Class<? extends Entity>, EntityStore<? extends Entity>> stores = new HashMap<>();
     private Geometry boundary = null;
+    // Download polygons that have not been merged into the boundary yet
+    private List<Polygon> newPolygons = new ArrayList<>();
+    private Quadtree polygonIndex = new Quadtree();
+    private PreparedGeometry preparedBoundary = null;
 	
     public DefaultEntitySet() {
 		// TODO Auto-generated constructor stub
@@ -30,35 +49,120 @@ public class DefaultEntitySet implements EntitySet {
     }
 
 
-    public Geometry getBoundary() {
+    public synchronized Geometry getBoundary() {
+        if (!newPolygons.isEmpty()) {
+            List<Geometry> polygons = new ArrayList<Geometry>(newPolygons);
+            if (boundary != null) {
+                polygons.add(boundary);
+            }
+            boundary = CascadedPolygonUnion.union(polygons);
+            newPolygons.clear();
+        }
         return boundary;
     }
 
+    @Override
+    public synchronized boolean boundaryCovers(Geometry geometry) {
+        // Most geometries are covered by a single download polygon
+        @SuppressWarnings("unchecked")
+        List<DownloadPolygon> candidates = polygonIndex.query(geometry.getEnvelopeInternal());
+        if (coveredByOnePolygon(geometry, candidates)) {
+            return true;
+        }
+        if (candidates.size() < 2) {
+            return false;
+        }
+        // The geometry may still be covered by the union of more polygons
+        if (preparedBoundary == null) {
+            preparedBoundary = PreparedGeometryFactory.prepare(getBoundary());
+        }
+        return preparedBoundary.covers(geometry);
+    }
+
+    private static boolean coveredByOnePolygon(Geometry geometry,
+            List<DownloadPolygon> candidates) {
+        for (DownloadPolygon candidate : candidates) {
+            if (candidate.covers(geometry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public <T extends Entity> boolean add(T entity) {
         EntityStore<T> store = getStore(entity.getType());
         return store.add(entity);
     }
         
-    public <T extends Entity> EntityStore<T> getStore(Class<? extends Entity> entityType) {
+    public synchronized <T extends Entity> EntityStore<T> getStore(Class<? extends Entity> entityType) {
         @SuppressWarnings("unchecked")
         EntityStore<T> store = (EntityStore<T>) stores.get(entityType);
         if (store == null) {
-            store = new EntityStore<T>();
+            if (longIdTypes.contains(entityType)) {
+                store = new LongEntityStore<T>();
+            }
+            else {
+                store = new EntityStore<T>();
+            }
             stores.put(entityType,  store);
         }
         return store;
     }
     
+    /**
+     * Use a {@link LongEntityStore} for entities of this type. Only
+     * affects stores that are created after this call.
+     * 
+     * @param entityType
+     */
+    public static void registerLongIdType(Class<? extends Entity> entityType) {
+        longIdTypes.add(entityType);
+    }
+
+    /**
+     * Stop using a {@link LongEntityStore} for entities of this type.
+     * Only affects stores that are created after this call.
+     * 
+     * @param entityType
+     */
+    public static void unregisterLongIdType(Class<? extends Entity> entityType) {
+        longIdTypes.remove(entityType);
+    }
+
     public void extendBoundary(Bounds bounds) {
         Polygon polygon = GeoUtil.getInstance().toPolygon(bounds);
         extendBoundary(polygon);
     }
 
     @Override
-    public void extendBoundary(Polygon polygon) {
-        if (boundary == null) {
-            boundary = polygon;
+    public synchronized void extendBoundary(Polygon polygon) {
+        @SuppressWarnings("unchecked")
+        List<DownloadPolygon> candidates = polygonIndex.query(polygon.getEnvelopeInternal());
+        if (coveredByOnePolygon(polygon, candidates)) {
+            // Nothing new, for example when the same area is downloaded again
+            return;
+        }
+        newPolygons.add(polygon);
+        polygonIndex.insert(polygon.getEnvelopeInternal(), new DownloadPolygon(polygon));
+        preparedBoundary = null;
+    }
+
+    private static class DownloadPolygon {
+        private final Polygon polygon;
+        private PreparedGeometry prepared;
+
+        public DownloadPolygon(Polygon polygon) {
+            this.polygon = polygon;
+        }
+
+        public boolean covers(Geometry geometry) {
+            if (!polygon.getEnvelopeInternal().covers(geometry.getEnvelopeInternal())) {
+                return false;
+            }
+            if (prepared == null) {
+                prepared = PreparedGeometryFactory.prepare(polygon);
+            }
+            return prepared.covers(geometry);
         }
-        boundary = boundary.union(polygon);
     }
 }
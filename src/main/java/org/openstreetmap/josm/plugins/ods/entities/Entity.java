@@ -49,9 +49,19 @@ public interface Entity {
     
     public boolean hasGeometry();
     
+    /**
+     * Set the geometry and notify the geometry listeners.
+     * 
+     * @param geometry
+     */
     public void setGeometry(Geometry geometry);
     
     public Geometry getGeometry();
+
+    public void addGeometryListener(GeometryListener listener);
+
+    public void removeGeometryListener(GeometryListener listener);
+
     /**
 	 * Get the unique id of this entity with respect to its datasource
 	 * 
@@ -70,6 +80,14 @@ public interface Entity {
 
     Collection<OsmPrimitive> getPrimitives();
 
+    /**
+     * Replace the primitives of this entity, after they have been merged
+     * into the dataset of a layer.
+     * 
+     * @param primitives
+     */
+    void setPrimitives(Collection<OsmPrimitive> primitives);
+
 	/**
 	 * Set the containing environment property of this entity
 	 * 
@@ -22,6 +22,16 @@ public interface EntitySet {
     
     public Geometry getBoundary();
 
+    /**
+     * Check if a geometry is covered by the boundary of this entity set.
+     * This is faster than getBoundary().covers(geometry) if it is called
+     * for many geometries.
+     * 
+     * @param geometry
+     * @return
+     */
+    public boolean boundaryCovers(Geometry geometry);
+
     public void extendBoundary(Polygon bounds);
 
     public void extendBoundary(Bounds bounds);
@@ -1,11 +1,24 @@
 package org.openstreetmap.josm.plugins.ods.entities;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+
 /**
  * The EntityStore stores entities of a single entity type.
+ * Optionally, the store maintains a spatial index over the envelopes of the
+ * entity geometries. The index is enabled with {@link #enableSpatialIndex()}
+ * and is updated when entities are added or removed. The store listens to
+ * the geometry of the indexed entities, so the index is also updated when
+ * {@link Entity#setGeometry} is called. The index may be updated from more
+ * than one thread.
  * 
  * @author gertjan
  *
@@ -14,20 +27,41 @@ public class EntityStore<T extends Entity> implements Iterable<T> {
     private Map<Object, T> entities = new HashMap<>();
     private Map<String, T> namedEntities = new HashMap<>();
     private Map<Object, T> referencedEntities = new HashMap<>();
+    private Quadtree spatialIndex = null;
+    // The envelopes the entities were indexed with. We need them to remove
+    // an entity from the index after its geometry has changed.
+    private Map<T, Envelope> indexedEnvelopes = null;
+    private final GeometryListener geometryListener = new GeometryListener() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public void geometryChanged(Entity entity) {
+            updateSpatialIndex((T) entity);
+        }
+    };
 	
 	public boolean add(T entity) {
 		if (!entities.containsKey(entity.getId())) {
             entities.put(entity.getId(), entity);
-            if (entity.hasName()) {
-      		    namedEntities.put(entity.getName(), entity);
-            }
-            if (entity.hasReferenceId()) {
-                referencedEntities.put(entity.getReferenceId(), entity);
-            }
+            addNameAndReference(entity);
+            addToSpatialIndex(entity);
             return true;
 		}
 		return false;
 	}
+
+    /**
+     * Add the entity to the name and reference id lookup maps.
+     * 
+     * @param entity
+     */
+    protected void addNameAndReference(T entity) {
+        if (entity.hasName()) {
+            namedEntities.put(entity.getName(), entity);
+        }
+        if (entity.hasReferenceId()) {
+            referencedEntities.put(entity.getReferenceId(), entity);
+        }
+    }
 	
 	public T get(Object id) {
 		return entities.get(id);
@@ -50,6 +84,107 @@ public class EntityStore<T extends Entity> implements Iterable<T> {
     }
     
     public void remove(T entity) {
-        entities.remove(entity.getId());
+        T removed = entities.remove(entity.getId());
+        if (removed != null) {
+            removeFromSpatialIndex(removed);
+        }
+    }
+
+    /**
+     * Enable the spatial index for this store. The entities that are
+     * already in the store are added to the index.
+     */
+    public synchronized void enableSpatialIndex() {
+        if (spatialIndex != null) {
+            return;
+        }
+        spatialIndex = new Quadtree();
+        indexedEnvelopes = new IdentityHashMap<>();
+        Iterator<T> it = iterator();
+        while (it.hasNext()) {
+            addToSpatialIndex(it.next());
+        }
+    }
+
+    public boolean hasSpatialIndex() {
+        return spatialIndex != null;
+    }
+
+    /**
+     * Find the entities with a geometry whose envelope intersects the given
+     * envelope. Without spatial index, all entities in the store are checked.
+     * 
+     * @param envelope
+     * @return
+     */
+    public synchronized List<T> query(Envelope envelope) {
+        List<T> result = new ArrayList<>();
+        if (spatialIndex != null) {
+            @SuppressWarnings("unchecked")
+            List<T> candidates = spatialIndex.query(envelope);
+            for (T entity : candidates) {
+                // The quadtree returns all entities in the matching nodes
+                if (indexedEnvelopes.get(entity).intersects(envelope)) {
+                    result.add(entity);
+                }
+            }
+        }
+        else {
+            Iterator<T> it = iterator();
+            while (it.hasNext()) {
+                T entity = it.next();
+                Geometry geometry = entity.getGeometry();
+                if (geometry != null && geometry.getEnvelopeInternal().intersects(envelope)) {
+                    result.add(entity);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add the entity to the spatial index, and start listening to its
+     * geometry.
+     * 
+     * @param entity
+     */
+    protected synchronized void addToSpatialIndex(T entity) {
+        if (spatialIndex == null) {
+            return;
+        }
+        entity.addGeometryListener(geometryListener);
+        indexEnvelope(entity);
+    }
+
+    protected synchronized void removeFromSpatialIndex(T entity) {
+        if (spatialIndex == null) {
+            return;
+        }
+        entity.removeGeometryListener(geometryListener);
+        removeEnvelope(entity);
+    }
+
+    private synchronized void updateSpatialIndex(T entity) {
+        if (spatialIndex != null) {
+            removeEnvelope(entity);
+            indexEnvelope(entity);
+        }
+    }
+
+    private void indexEnvelope(T entity) {
+        Geometry geometry = entity.getGeometry();
+        if (geometry == null || geometry.isEmpty()) {
+            return;
+        }
+        Envelope envelope = new Envelope(geometry.getEnvelopeInternal());
+        spatialIndex.insert(envelope, entity);
+        indexedEnvelopes.put(entity, envelope);
+    }
+
+    private void removeEnvelope(T entity) {
+        Envelope envelope = indexedEnvelopes.remove(entity);
+        if (envelope != null) {
+            spatialIndex.remove(envelope, entity);
+        }
     }
 }
@@ -0,0 +1,17 @@
+package org.openstreetmap.josm.plugins.ods.entities;
+
+/**
+ * Listener for changes of the geometry of an entity.
+ * Entity stores use it to keep their spatial index up to date.
+ * 
+ * @author gertjan
+ *
+ */
+public interface GeometryListener {
+    /**
+     * Called by {@link Entity#setGeometry} after the geometry has changed.
+     * 
+     * @param entity
+     */
+    public void geometryChanged(Entity entity);
+}
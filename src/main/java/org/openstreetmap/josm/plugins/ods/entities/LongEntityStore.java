@@ -0,0 +1,191 @@
+package org.openstreetmap.josm.plugins.ods.entities;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * EntityStore for entity types with Long ids. The entities are stored in an
+ * open addressing hash table with primitive long keys, so no boxed keys
+ * or map entries are needed for each entity.
+ * Entities with an id that is not a Long are stored in the maps of the
+ * default implementation.
+ *
+ * @author gertjan
+ *
+ */
+public class LongEntityStore<T extends Entity> extends EntityStore<T> {
+    private long[] keys;
+    private Entity[] values;
+    private int size = 0;
+
+    public LongEntityStore() {
+        this(1024);
+    }
+
+    public LongEntityStore(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new Entity[capacity];
+    }
+
+    @Override
+    public boolean add(T entity) {
+        Object id = entity.getId();
+        if (!(id instanceof Long)) {
+            return super.add(entity);
+        }
+        long key = (Long) id;
+        if (indexOf(key) >= 0) {
+            return false;
+        }
+        if (2 * (size + 1) > keys.length) {
+            resize();
+        }
+        insert(key, entity);
+        addNameAndReference(entity);
+        addToSpatialIndex(entity);
+        return true;
+    }
+
+    @Override
+    public T get(Object id) {
+        if (!(id instanceof Long)) {
+            return super.get(id);
+        }
+        int index = indexOf((Long) id);
+        return (index < 0 ? null : entityAt(index));
+    }
+
+    @Override
+    public void remove(T entity) {
+        Object id = entity.getId();
+        if (!(id instanceof Long)) {
+            super.remove(entity);
+            return;
+        }
+        int index = indexOf((Long) id);
+        if (index >= 0) {
+            T removed = entityAt(index);
+            delete(index);
+            removeFromSpatialIndex(removed);
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new LongStoreIterator(super.iterator());
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long key, Entity entity) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = entity;
+        size++;
+    }
+
+    /**
+     * Remove the entry at the given index and shift the following entries
+     * back, so no tombstones are needed.
+     */
+    private void delete(int index) {
+        int mask = keys.length - 1;
+        int hole = index;
+        int i = (index + 1) & mask;
+        while (values[i] != null) {
+            int home = hash(keys[i]) & mask;
+            // Move the entry to the hole if its home slot is not between
+            // the hole and its current position.
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        values[hole] = null;
+        size--;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Entity[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Entity[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T entityAt(int index) {
+        return (T) values[index];
+    }
+
+    private static int hash(long key) {
+        // Mix the bits, because ids are often sequential
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Iterates over the entities with Long ids, followed by the other
+     * entities.
+     */
+    private class LongStoreIterator implements Iterator<T> {
+        private final Iterator<T> otherEntities;
+        private int index = 0;
+
+        public LongStoreIterator(Iterator<T> otherEntities) {
+            this.otherEntities = otherEntities;
+            skipEmpty();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < values.length || otherEntities.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (index < values.length) {
+                T entity = entityAt(index++);
+                skipEmpty();
+                return entity;
+            }
+            if (otherEntities.hasNext()) {
+                return otherEntities.next();
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void skipEmpty() {
+            while (index < values.length && values[index] == null) {
+                index++;
+            }
+        }
+    }
+}
@@ -1,24 +1,30 @@
 package org.openstreetmap.josm.plugins.ods.geotools;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-
-import javax.swing.JOptionPane;
+import java.util.concurrent.ExecutionException;
 
 import org.opengis.feature.simple.SimpleFeature;
 import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.plugins.ods.DownloadMetrics;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Download;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Stage;
 import org.openstreetmap.josm.plugins.ods.DownloadTask;
 import org.openstreetmap.josm.plugins.ods.ODS;
 import org.openstreetmap.josm.plugins.ods.OdsDataSource;
 import org.openstreetmap.josm.plugins.ods.OdsWorkingSet;
 import org.openstreetmap.josm.plugins.ods.analysis.Analyzer;
+import org.openstreetmap.josm.plugins.ods.analysis.AnalyzerScheduler;
 import org.openstreetmap.josm.plugins.ods.builtenvironment.AddressNodeDistributor;
 import org.openstreetmap.josm.plugins.ods.builtenvironment.AddressToBuildingMatcher;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.BlockAnalysis;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.BlockAnalyzer;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.BlockStore;
 import org.openstreetmap.josm.plugins.ods.builtenvironment.BuildingCompletenessAnalyzer;
 import org.openstreetmap.josm.plugins.ods.builtenvironment.BuildingSimplifier;
 import org.openstreetmap.josm.plugins.ods.builtenvironment.CrossingBuildingAnalyzer;
@@ -27,12 +33,7 @@ import org.openstreetmap.josm.plugins.ods.entities.DefaultEntitySet;
 import org.openstreetmap.josm.plugins.ods.entities.Entity;
 import org.openstreetmap.josm.plugins.ods.entities.EntityFactory;
 import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
-import org.openstreetmap.josm.plugins.ods.issue.Issue;
 import org.openstreetmap.josm.plugins.ods.jts.Boundary;
-import org.openstreetmap.josm.plugins.ods.metadata.MetaData;
-import org.openstreetmap.josm.tools.I18n;
-
-import com.vividsolutions.jts.geom.prep.PreparedPolygon;
 
 public class DownloadGtLayerTask implements DownloadTask {
     private boolean cancelled;
@@ -44,157 +45,162 @@ public class DownloadGtLayerTask implements DownloadTask {
     private GTDataLayer dataLayer;
     private Boundary boundary;
     private List<GtDownloadTask> downloadTasks;
-    private ExecutorService executor;
 
     private EntitySet entities;
     private EntityFactory<SimpleFeature> entityFactory;
     private List<Analyzer> analyzers;
+    private AnalyzerScheduler analyzerScheduler;
+    // Build entities while downloading
+    private final boolean streaming;
+    // Metrics of the process stage
+    private long collectTime = 0;
+    private long mergeTime = 0;
 
     public DownloadGtLayerTask(Boundary boundary) {
         this.workingSet = ODS.getModule().getWorkingSet();
         this.dataLayer = workingSet.getExternalDataLayer();
         this.entityFactory = dataLayer.getEntityFactory();
         this.boundary = boundary;
+        this.streaming = Main.pref.getBoolean("openservices.download.streaming", false);
+        analyzers = createAnalyzers(workingSet.getBlockStore(),
+            Main.pref.getBoolean("openservices.analysis.blocks", false),
+            Main.pref.getBoolean("openservices.completeness.prepared", true));
+        analyzerScheduler = new AnalyzerScheduler(analyzers);
+        setup();
+    }
+
+    /**
+     * Create the analyzers for the imported data, in their logical order.
+     * 
+     * @param blockStore The block store for the block analysis
+     * @param blocks Analyze crossing buildings per block of touching buildings
+     * @param preparedCompleteness Use a prepared boundary for the
+     *     completeness analysis
+     * @return
+     */
+    public static List<Analyzer> createAnalyzers(BlockStore blockStore, boolean blocks,
+            boolean preparedCompleteness) {
         Double tolerance = 2e-7;
-        analyzers = new ArrayList<>(5);
-        analyzers.add(new BuildingSimplifier(tolerance));
-        analyzers.add(new CrossingBuildingAnalyzer(tolerance));
+        List<Analyzer> analyzers = new ArrayList<>(5);
+        analyzers.add(new BuildingSimplifier(tolerance,
+                AnalyzerScheduler.getDefaultPool()));
+        if (blocks) {
+            analyzers.add(new BlockAnalysis(blockStore,
+                Collections.<BlockAnalyzer>singletonList(new CrossingBuildingAnalyzer(tolerance)),
+                AnalyzerScheduler.getDefaultPool()));
+        }
+        else {
+            analyzers.add(new CrossingBuildingAnalyzer(tolerance));
+        }
         analyzers.add(new AddressToBuildingMatcher());
         analyzers.add(new AddressNodeDistributor());
-        analyzers.add(new BuildingCompletenessAnalyzer());
+        analyzers.add(new BuildingCompletenessAnalyzer(preparedCompleteness));
         // analyzers.add(new AddressToStreetMatcher());
-        setup();
+        return analyzers;
     }
 
     public void cancel() {
         cancelled = true;
+        for (GtDownloadTask task : downloadTasks) {
+            task.cancel();
+        }
     }
 
     private void setup() {
         downloadTasks = new ArrayList<GtDownloadTask>(dataLayer
                 .getDataSources().size());
         for (OdsDataSource dataSource : dataLayer.getDataSources()) {
-            downloadTasks.add((GtDownloadTask) dataSource.createDownloadTask(boundary));
+            GtDownloadTask task = (GtDownloadTask) dataSource.createDownloadTask(boundary);
+            if (streaming) {
+                task.enableStreaming(entityFactory);
+            }
+            else {
+                task.setEntityFactory(entityFactory);
+            }
+            downloadTasks.add(task);
         }
     }
 
+    /**
+     * Every data source moves through its own prepare, download and build
+     * stages. Only the process stage, which analyzes the entities of all
+     * sources together, waits for all of them.
+     */
     @Override
-    public Callable<Object> stage(final String stage) {
-        switch (stage) {
-        case "prepare":
-        case "download":
-            return stage(stage, downloadTasks);
-        case "process":
-            return new ProcessStage();
+    public Collection<Stage> schedule(Download download, Stage... dependencies) {
+        List<Stage> built = new ArrayList<>(2 * downloadTasks.size());
+        for (GtDownloadTask task : downloadTasks) {
+            built.addAll(task.schedule(download, dependencies));
         }
-        return null;
-    }
-
-    private Callable<Object> stage(final String subTask,
-            final List<? extends DownloadTask> tasks) {
-        // TODO move this code into a stand alone class.
-        return new Callable<Object>() {
-
-            @Override
-            public Object call() throws Exception {
-                if (tasks.isEmpty()) {
-                    // Nothing to do
-                    return null;
-                }
-                List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
-                List<Exception> exceptions = new LinkedList<Exception>();
-                try {
-                    futures = new ArrayList<Future<?>>(tasks.size());
-
-                    executor = Executors.newFixedThreadPool(tasks.size());
-                    for (DownloadTask task : downloadTasks) {
-                        Callable<Object> callable = task.stage(subTask);
-                        if (callable != null) {
-                            Future<?> future = executor.submit(callable);
-                            futures.add(future);
-                        }
-                    }
-                    executor.shutdown();
-                    cancelled = false;
-                    exceptions = new LinkedList<Exception>();
-                } catch (Exception e1) {
-                    // TODO Auto-generated catch block
-                    e1.printStackTrace();
-                }
-                // Wait for all futures to finish
-                for (Future<?> future : futures) {
-                    try {
-                        future.get();
-                        if (future.isCancelled()) {
-                            executor.shutdownNow();
-                            cancelled = true;
-                        }
-                    } catch (InterruptedException e) {
-                        executor.shutdownNow();
-                        cancelled = true;
-                    } catch (Exception e) {
-                        exceptions.add(e);
-                    }
-                }
-                for (DownloadTask task : tasks) {
-                    if (task.failed()) {
-                        cancelled = true;
-                        if (task.getMessage() != null) {
-                            JOptionPane.showMessageDialog(Main.parent,
-                                    task.getMessage());
-                        }
-                    }
-                }
-                for (DownloadTask task : tasks) {
-                    if (task.cancelled()) {
-                        cancelled = true;
-                        if (task.getMessage() != null) {
-                            JOptionPane.showMessageDialog(Main.parent,
-                                    task.getMessage());
-                        }
-                    }
-                }
-                if (cancelled) {
-                    return null;
-                }
-                for (DownloadTask task : tasks) {
-                    if (task.getMessage() != null) {
-                        JOptionPane.showMessageDialog(Main.parent,
-                                task.getMessage());
-                    }
-                }
-                if (!exceptions.isEmpty()) {
-                    StringBuilder msg = new StringBuilder();
-                    msg.append(I18n.trn(
-                            "An error occured while downloading the data:",
-                            "{0} errors occurred while downloading the data:",
-                            exceptions.size(), exceptions.size()));
-                    for (Exception e : exceptions) {
-                        msg.append("\n").append(e.getMessage());
-                    }
-                }
-                return null;
-            }
-        };
+        if (built.isEmpty()) {
+            built.addAll(Arrays.asList(dependencies));
+        }
+        return Collections.singletonList(download.add("process", new ProcessStage(),
+            built.toArray(new Stage[built.size()])));
     }
 
     @Override
     public boolean cancelled() {
-        return cancelled;
+        if (cancelled) {
+            return true;
+        }
+        for (GtDownloadTask task : downloadTasks) {
+            if (task.cancelled()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public boolean failed() {
-        return failed;
+        if (failed) {
+            return true;
+        }
+        for (GtDownloadTask task : downloadTasks) {
+            if (task.failed()) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * Get the message of this task, or the messages of the data sources.
+     */
     @Override
     public String getMessage() {
         if (message != null)
             return message;
         if (exception != null)
             return exception.getMessage();
-        return null;
+        StringBuilder sb = new StringBuilder();
+        for (GtDownloadTask task : downloadTasks) {
+            if (task.getMessage() != null) {
+                if (sb.length() > 0) {
+                    sb.append("\n");
+                }
+                sb.append(task.getMessage());
+            }
+        }
+        return (sb.length() == 0 ? null : sb.toString());
+    }
+
+    /**
+     * Report the metrics of the sources, and the timings of the analyzers
+     * and the merge into the data layer.
+     */
+    @Override
+    public void reportMetrics(DownloadMetrics metrics) {
+        for (GtDownloadTask task : downloadTasks) {
+            task.reportMetrics(metrics);
+        }
+        metrics.time(null, "collect entities", collectTime);
+        for (Map.Entry<Analyzer, Long> entry : analyzerScheduler.getTimings().entrySet()) {
+            metrics.time(null, "analyzer " + entry.getKey().getClass().getSimpleName(),
+                entry.getValue());
+        }
+        metrics.time(null, "merge", mergeTime);
     }
 
     class ProcessStage implements Callable<Object> {
@@ -212,59 +218,49 @@ public class DownloadGtLayerTask implements DownloadTask {
          * 
          * @see org.openstreetmap.josm.plugins.ods.DownloadJob#build()
          */
-        public void build() throws BuildException {
-            // First create entities for all downloaded features
+        public void build() throws BuildException, ExecutionException,
+                InterruptedException {
+            // The entities have been built per data source. Collect them.
+            long start = System.nanoTime();
             entities = new DefaultEntitySet();
             for (GtDownloadTask downloadTask : downloadTasks) {
                 buildEntities(downloadTask);
             }
             // Retrieve the results
             entities.extendBoundary(boundary.getPolygon());
+            collectTime = System.nanoTime() - start;
             // Next establish the relationships between the features
             analyze();
+            start = System.nanoTime();
             dataLayer.merge(entities);
+            mergeTime = System.nanoTime() - start;
         }
 
-        private void analyze() {
-            for (Analyzer analyzer : analyzers) {
-                analyzer.analyze(dataLayer, entities);
-            }
+        /**
+         * Run the analyzers. Analyzers that don't depend on each other
+         * run at the same time.
+         * 
+         * @throws ExecutionException
+         * @throws InterruptedException
+         */
+        private void analyze() throws ExecutionException, InterruptedException {
+            analyzerScheduler.run(dataLayer, entities);
+            Main.info(analyzerScheduler.getTimingReport());
         }
 
         /**
-         * Create entities for the downloaded features. Add them to the dataSet
-         * and to the new entities collection if they don't exist.
+         * Add the entities that were built in the build stage of the task.
          * 
          * @param task
          * @throws BuildException
          */
         private void buildEntities(GtDownloadTask task)
                 throws BuildException {
-            // String entityType = task.getDataSource().getEntityType();
-            // EntityStore store =
-            // dataLayer.getEntitySet().getStore(entityType);
-            MetaData metaData = task.getMetaData();
-            List<Issue> issues = new LinkedList<>();
-            PreparedPolygon preparedBoundary = new PreparedPolygon(
-                    boundary.getPolygon());
-            for (SimpleFeature feature : task.getFeatures()) {
-                try {
-                    Entity entity = entityFactory
-                            .buildEntity(feature, metaData);
-                    if (entity != null) {
-                        if (boundary.isRectangular()) {
-                            entities.add(entity);
-                        } else if (preparedBoundary.intersects(entity
-                                .getGeometry())) {
-                            entities.add(entity);
-                        }
-                    }
-                } catch (BuildException e) {
-                    issues.add(e.getIssue());
-                }
+            for (Entity entity : task.getEntities()) {
+                entities.add(entity);
             }
-            if (!issues.isEmpty()) {
-                throw new BuildException(issues);
+            if (!task.getIssues().isEmpty()) {
+                throw new BuildException(task.getIssues());
             }
         }
     }
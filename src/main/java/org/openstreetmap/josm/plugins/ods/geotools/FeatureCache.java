@@ -0,0 +1,481 @@
+package org.openstreetmap.josm.plugins.ods.geotools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.Filter;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.plugins.Plugin;
+import org.openstreetmap.josm.plugins.ods.ODS;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * On-disk cache for downloaded features.
+ * There is one cache file per host, feature type, data filter and tile.
+ * The tiles form a fixed grid of TILE_SIZE degrees, so a download of an
+ * area that overlaps an earlier download can use the tiles that were
+ * cached before.
+ * Each file records the version of the source it was downloaded from. This
+ * is the value of a metadata attribute, for example the date of the last
+ * update of the source. A cache file is stale when this value changes.
+ *
+ * Files that are older than the maximum age are removed. If the files take
+ * more space than the maximum size, the least recently used files are
+ * removed.
+ *
+ * The features are stored in a simple binary format. Geometries are stored
+ * as WKB.
+ *
+ * @author gertjan
+ *
+ */
+public class FeatureCache {
+    private final static int MAGIC = 0x4F445343; // "ODSC"
+    private final static int FORMAT_VERSION = 1;
+    /** The size of the tiles in degrees */
+    public final static double TILE_SIZE = 0.01;
+
+    private final static byte NULL = 0;
+    private final static byte STRING = 1;
+    private final static byte INTEGER = 2;
+    private final static byte LONG = 3;
+    private final static byte DOUBLE = 4;
+    private final static byte FLOAT = 5;
+    private final static byte BOOLEAN = 6;
+    private final static byte SHORT = 7;
+    private final static byte DATE = 8;
+    private final static byte DECIMAL = 9;
+    private final static byte GEOMETRY = 10;
+
+    private static FeatureCache instance;
+
+    private final File directory;
+    private final long maxSize;
+    private final long maxAge;
+
+    /**
+     * @param directory The directory for the cache files
+     * @param maxSize The maximum total size of the cache files in bytes
+     * @param maxAge The maximum age of a cache file in milliseconds
+     */
+    public FeatureCache(File directory, long maxSize, long maxAge) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Get the cache in the plugin directory of the current module.
+     * The maximum size is read from the openservices.cache.maxsize
+     * preference in MB, the maximum age from openservices.cache.maxage
+     * in days.
+     *
+     * @return
+     */
+    public static synchronized FeatureCache getInstance() {
+        if (instance == null) {
+            Plugin plugin = (Plugin) ODS.getModule();
+            long maxSize = Main.pref.getInteger("openservices.cache.maxsize", 200) * 1024L * 1024L;
+            long maxAge = Main.pref.getInteger("openservices.cache.maxage", 30) * 86400000L;
+            instance = new FeatureCache(new File(plugin.getPluginDir(), "cache"), maxSize, maxAge);
+        }
+        return instance;
+    }
+
+    /**
+     * Get the tiles of the grid that cover the given bounds.
+     *
+     * @param bounds
+     * @return
+     */
+    public static List<Tile> getTiles(Bounds bounds) {
+        int minX = (int) Math.floor(bounds.getMinLon() / TILE_SIZE);
+        int minY = (int) Math.floor(bounds.getMinLat() / TILE_SIZE);
+        int maxX = Math.max(minX, (int) Math.ceil(bounds.getMaxLon() / TILE_SIZE) - 1);
+        int maxY = Math.max(minY, (int) Math.ceil(bounds.getMaxLat() / TILE_SIZE) - 1);
+        List<Tile> tiles = new ArrayList<>((maxX - minX + 1) * (maxY - minY + 1));
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                tiles.add(new Tile(x, y));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Get the bounds that cover all given tiles.
+     *
+     * @param tiles
+     * @return
+     */
+    public static Bounds getBounds(List<Tile> tiles) {
+        Bounds bounds = null;
+        for (Tile tile : tiles) {
+            if (bounds == null) {
+                bounds = tile.getBounds();
+            }
+            else {
+                bounds.extend(tile.getBounds());
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Read the features for a tile from the cache.
+     *
+     * @param hostName
+     * @param featureType
+     * @param tile
+     * @param filter The data filter of the data source, or null
+     * @param version
+     * @return the features, or null if the tile is not in the cache or if
+     *     the cached version is not the same as the given version.
+     * @throws IOException
+     */
+    public List<SimpleFeature> read(String hostName, SimpleFeatureType featureType,
+            Tile tile, Filter filter, String version) throws IOException {
+        File file = getFile(hostName, featureType, tile, filter);
+        if (!file.exists()) {
+            return null;
+        }
+        // Keep track of the last use for the eviction
+        file.setLastModified(System.currentTimeMillis());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !version.equals(in.readUTF())) {
+                return null;
+            }
+            List<AttributeDescriptor> descriptors = featureType.getAttributeDescriptors();
+            if (in.readInt() != descriptors.size()) {
+                return null;
+            }
+            for (AttributeDescriptor descriptor : descriptors) {
+                if (!descriptor.getLocalName().equals(in.readUTF())) {
+                    return null;
+                }
+            }
+            int count = in.readInt();
+            List<SimpleFeature> features = new ArrayList<>(count);
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+            WKBReader wkbReader = new WKBReader();
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                for (int j = 0; j < descriptors.size(); j++) {
+                    builder.add(readValue(in, wkbReader));
+                }
+                features.add(builder.buildFeature(id));
+            }
+            return features;
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the size of the cache file for a tile.
+     *
+     * @return the size in bytes, or 0 if the tile is not in the cache
+     */
+    public long getSize(String hostName, SimpleFeatureType featureType,
+            Tile tile, Filter filter) {
+        return getFile(hostName, featureType, tile, filter).length();
+    }
+
+    /**
+     * Write the features for a tile to the cache. The file is written to
+     * a temporary file first, so readers never see a partial file.
+     * Afterwards, old files are evicted.
+     *
+     * @throws IOException if the features could not be written. This
+     *     includes features with attribute types that are not supported
+     *     by the cache.
+     */
+    public void write(String hostName, SimpleFeatureType featureType,
+            Tile tile, Filter filter, String version,
+            List<SimpleFeature> features) throws IOException {
+        File file = getFile(hostName, featureType, tile, filter);
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + dir);
+        }
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(version);
+            List<AttributeDescriptor> descriptors = featureType.getAttributeDescriptors();
+            out.writeInt(descriptors.size());
+            for (AttributeDescriptor descriptor : descriptors) {
+                out.writeUTF(descriptor.getLocalName());
+            }
+            out.writeInt(features.size());
+            WKBWriter wkbWriter = new WKBWriter();
+            for (SimpleFeature feature : features) {
+                out.writeUTF(feature.getID());
+                for (Object value : feature.getAttributes()) {
+                    writeValue(out, value, wkbWriter);
+                }
+            }
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        }
+        file.delete();
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Unable to write cache file " + file);
+        }
+        evict();
+    }
+
+    /**
+     * Remove the files that are older than the maximum age. Then remove the
+     * least recently used files until the cache fits in the maximum size.
+     */
+    public synchronized void evict() {
+        List<File> files = new LinkedList<>();
+        listFiles(directory, files);
+        long now = System.currentTimeMillis();
+        long size = 0;
+        List<File> remaining = new ArrayList<>(files.size());
+        for (File file : files) {
+            if (now - file.lastModified() > maxAge) {
+                file.delete();
+            }
+            else {
+                remaining.add(file);
+                size += file.length();
+            }
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        final long[] lastModified = new long[remaining.size()];
+        File[] sorted = remaining.toArray(new File[remaining.size()]);
+        for (int i = 0; i < sorted.length; i++) {
+            lastModified[i] = sorted[i].lastModified();
+        }
+        Integer[] order = new Integer[sorted.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Sort once on the timestamps taken above, because they can change
+        // while we sort
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Long.compare(lastModified[i1], lastModified[i2]);
+            }
+        });
+        for (Integer i : order) {
+            if (size <= maxSize) {
+                break;
+            }
+            size -= sorted[i].length();
+            sorted[i].delete();
+        }
+    }
+
+    private static void listFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listFiles(child, files);
+            }
+            else if (child.getName().endsWith(".bin")) {
+                files.add(child);
+            }
+        }
+    }
+
+    private File getFile(String hostName, SimpleFeatureType featureType,
+            Tile tile, Filter filter) {
+        String key = String.format("%d|%d|%s|%s", tile.x, tile.y, TILE_SIZE, filter);
+        File hostDir = new File(directory, toFileName(hostName));
+        File typeDir = new File(hostDir, toFileName(featureType.getTypeName()));
+        return new File(typeDir, digest(key) + ".bin");
+    }
+
+    private static String toFileName(String s) {
+        return s.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private static String digest(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] hash = md.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is available on every Java platform
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value,
+            WKBWriter wkbWriter) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        }
+        else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeBytes(out, ((String) value).getBytes(StandardCharsets.UTF_8));
+        }
+        else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        }
+        else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        }
+        else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        }
+        else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        }
+        else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        }
+        else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        }
+        else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            out.writeUTF(value.toString());
+        }
+        else if (value instanceof Geometry) {
+            out.writeByte(GEOMETRY);
+            writeBytes(out, wkbWriter.write((Geometry) value));
+        }
+        else {
+            throw new IOException("Unsupported attribute type: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in, WKBReader wkbReader) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return new String(readBytes(in), StandardCharsets.UTF_8);
+        case INTEGER:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case DOUBLE:
+            return in.readDouble();
+        case FLOAT:
+            return in.readFloat();
+        case BOOLEAN:
+            return in.readBoolean();
+        case SHORT:
+            return in.readShort();
+        case DATE:
+            return new Date(in.readLong());
+        case DECIMAL:
+            return new BigDecimal(in.readUTF());
+        case GEOMETRY:
+            try {
+                return wkbReader.read(readBytes(in));
+            } catch (ParseException e) {
+                throw new IOException(e);
+            }
+        default:
+            throw new IOException("Corrupt cache file");
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * A tile of the cache grid.
+     */
+    public static class Tile {
+        final int x;
+        final int y;
+
+        public Tile(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        public Bounds getBounds() {
+            return new Bounds(y * TILE_SIZE, x * TILE_SIZE,
+                (y + 1) * TILE_SIZE, (x + 1) * TILE_SIZE);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Tile)) {
+                return false;
+            }
+            Tile other = (Tile) obj;
+            return x == other.x && y == other.y;
+        }
+
+        @Override
+        public String toString() {
+            return "tile " + x + "," + y;
+        }
+    }
+}
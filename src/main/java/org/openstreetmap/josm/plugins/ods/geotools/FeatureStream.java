@@ -0,0 +1,85 @@
+package org.openstreetmap.josm.plugins.ods.geotools;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Bounded queue that hands features from the download stage to the build
+ * stage in streaming mode. The producer blocks while the queue is full,
+ * but gives up as soon as the consumer has stopped, so a build stage that
+ * fails can't leave the download stage waiting forever.
+ *
+ * @author gertjan
+ *
+ */
+public class FeatureStream {
+    private final static long POLL_MILLIS = 100;
+
+    private final BlockingQueue<SimpleFeature> queue;
+    private volatile boolean closed = false;
+    private volatile boolean stopped = false;
+
+    public FeatureStream(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Add a feature to the stream. Waits while the stream is full.
+     *
+     * @param feature
+     * @return false if the consumer has stopped and the feature was not added
+     * @throws InterruptedException
+     */
+    public boolean put(SimpleFeature feature) throws InterruptedException {
+        while (!stopped) {
+            if (queue.offer(feature, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tell the consumer that no more features will be added.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Get the next feature. Waits until a feature is available.
+     *
+     * @return the feature, or null if the stream has been closed and all
+     *     features have been taken
+     * @throws InterruptedException
+     */
+    public SimpleFeature take() throws InterruptedException {
+        while (true) {
+            // Check before polling, so no feature can be added in between
+            boolean wasClosed = closed;
+            SimpleFeature feature = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (feature != null) {
+                return feature;
+            }
+            if (wasClosed) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Tell the producer that no more features will be taken. The features
+     * that are still in the stream are dropped.
+     */
+    public void stop() {
+        stopped = true;
+        queue.clear();
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+}
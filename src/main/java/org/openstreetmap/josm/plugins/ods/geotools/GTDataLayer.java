@@ -1,12 +1,16 @@
 package org.openstreetmap.josm.plugins.ods.geotools;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.opengis.feature.simple.SimpleFeature;
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.plugins.ods.DataLayer;
@@ -17,6 +21,8 @@ import org.openstreetmap.josm.plugins.ods.entities.Entity;
 import org.openstreetmap.josm.plugins.ods.entities.EntityFactory;
 import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
 import org.openstreetmap.josm.plugins.ods.entities.EntityStore;
+import org.openstreetmap.josm.plugins.ods.osm.MergedPrimitiveFinder;
+import org.openstreetmap.josm.plugins.ods.osm.NodeCache;
 import org.openstreetmap.josm.plugins.ods.osm.PrimitiveFactory;
 
 /**
@@ -96,25 +102,72 @@ public class GTDataLayer implements DataLayer {
         return entitySet;
     }
 
+    /**
+     * Create primitives for the new entities and add them to the layer.
+     * The primitives are built in a detached dataset, on the download thread,
+     * and merged into the layer in one mergeFrom step. This way, the dataset
+     * of the layer is only locked once, in stead of once for every primitive.
+     * The merger copies the primitives, and joins new nodes with equal nodes
+     * of earlier downloads, so afterwards the entities are pointed at the
+     * primitives in the layer.
+     * 
+     * @param newEntities
+     */
     public void merge(EntitySet newEntities) {
-        DataSet data = osmDataLayer.data;
-        data.beginUpdate();
-        Iterator<EntityStore<? extends Entity>> stores = newEntities.stores();
-        PrimitiveFactory factory = getPrimitiveFactory(data);
-        while (stores.hasNext()) {
-            EntityStore<? extends Entity> store = stores.next();
-            Iterator<? extends Entity> entities = store.iterator();
-            while (entities.hasNext()) {
-                Entity entity = entities.next();
-                if (!entity.isIncomplete() && !entity.isDeleted()) {
-                    if (entitySet.add(entity)) {
-                        factory.buildPrimitives(entity);
-//                        entity.createPrimitives(primitiveBuilder);
-                    }
-                };
+        DataSet batch = new DataSet();
+        Map<Entity, OsmPrimitive[]> primitives = buildPrimitives(newEntities, batch);
+        osmDataLayer.mergeFrom(batch);
+        MergedPrimitiveFinder finder = new MergedPrimitiveFinder(osmDataLayer.data);
+        int missing = 0;
+        for (Map.Entry<Entity, OsmPrimitive[]> entry : primitives.entrySet()) {
+            List<OsmPrimitive> merged = new ArrayList<>(entry.getValue().length);
+            for (OsmPrimitive primitive : entry.getValue()) {
+                OsmPrimitive mergedPrimitive = finder.find(primitive);
+                if (mergedPrimitive != null) {
+                    merged.add(mergedPrimitive);
+                }
+                else {
+                    missing++;
+                }
+            }
+            entry.getKey().setPrimitives(merged);
+        }
+        if (missing > 0) {
+            Main.warn(missing + " primitives could not be found in layer " + name + " after the merge.");
+        }
+    }
+
+    /**
+     * Build the primitives for the new entities in the given dataset.
+     * 
+     * @return The primitives of each entity
+     */
+    private Map<Entity, OsmPrimitive[]> buildPrimitives(EntitySet newEntities, DataSet data) {
+        Map<Entity, OsmPrimitive[]> primitives = new IdentityHashMap<>();
+        NodeCache.beginSession(data);
+        try {
+            Iterator<EntityStore<? extends Entity>> stores = newEntities.stores();
+            PrimitiveFactory factory = getPrimitiveFactory(data);
+            while (stores.hasNext()) {
+                EntityStore<? extends Entity> store = stores.next();
+                Iterator<? extends Entity> entities = store.iterator();
+                while (entities.hasNext()) {
+                    Entity entity = entities.next();
+                    if (!entity.isIncomplete() && !entity.isDeleted()) {
+                        if (entitySet.add(entity)) {
+                            OsmPrimitive[] built = factory.buildPrimitives(entity);
+                            if (built != null) {
+                                primitives.put(entity, built);
+                            }
+//                            entity.createPrimitives(primitiveBuilder);
+                        }
+                    };
+                }
             }
+        } finally {
+            NodeCache.endSession(data);
         }
-        data.endUpdate();
+        return primitives;
     }
     
 //    public void setEntityFactory(@SuppressWarnings("rawtypes") EntityFactory entityFactory) {
@@ -1,9 +1,16 @@
 package org.openstreetmap.josm.plugins.ods.geotools;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
@@ -15,24 +22,54 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.plugins.ods.DownloadMetrics;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Download;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Stage;
 import org.openstreetmap.josm.plugins.ods.DownloadTask;
 import org.openstreetmap.josm.plugins.ods.Host;
+import org.openstreetmap.josm.plugins.ods.crs.CRSException;
 import org.openstreetmap.josm.plugins.ods.crs.CRSUtil;
+import org.openstreetmap.josm.plugins.ods.entities.BuildException;
+import org.openstreetmap.josm.plugins.ods.entities.Entity;
+import org.openstreetmap.josm.plugins.ods.entities.EntityFactory;
+import org.openstreetmap.josm.plugins.ods.geotools.FeatureCache.Tile;
+import org.openstreetmap.josm.plugins.ods.issue.Issue;
 import org.openstreetmap.josm.plugins.ods.jts.Boundary;
 import org.openstreetmap.josm.plugins.ods.metadata.MetaData;
 import org.openstreetmap.josm.tools.I18n;
 import org.threeten.bp.ZonedDateTime;
 
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedPolygon;
+
 public class GtDownloadTask implements DownloadTask {
     private final static CRSUtil crsUtil = CRSUtil.getInstance();
+    private final static int QUEUE_CAPACITY = 1000;
     
     private GtDataSource dataSource;
     private Boundary boundary;
     private SimpleFeatureSource featureSource;
     private Filter filter;
+    private ReferencedEnvelope bbox;
+    private CoordinateReferenceSystem crs;
+    private String geometryProperty;
     private MetaData metaData;
     private List<SimpleFeature> features;
+    // Streaming mode
+    private EntityFactory<SimpleFeature> entityFactory;
+    private boolean streaming = false;
+    private FeatureStream featureStream;
+    private int featureCount = 0;
+    // Metrics
+    private int cachedFeatureCount = 0;
+    private long cacheBytes = 0;
+    private long buildTime = 0;
+    private long filterTime = 0;
+    private List<Entity> entities;
+    private List<Issue> issues;
     boolean cancelled = false;
     boolean failed = false;
     private String message = null;
@@ -52,6 +89,37 @@ public class GtDownloadTask implements DownloadTask {
         return metaData;
     }
 
+    /**
+     * Set the entity factory for the build stage.
+     * 
+     * @param entityFactory
+     */
+    public void setEntityFactory(EntityFactory<SimpleFeature> entityFactory) {
+        this.entityFactory = entityFactory;
+    }
+
+    /**
+     * Switch this task to streaming mode. In streaming mode, the features
+     * are not collected in a list. Instead, they are handed to the
+     * entity factory through a bounded queue as soon as they are read.
+     * The "build" stage that consumes the queue runs on a thread of its
+     * own, at the same time as the "download" stage.
+     * 
+     * @param entityFactory
+     */
+    public void enableStreaming(EntityFactory<SimpleFeature> entityFactory) {
+        this.entityFactory = entityFactory;
+        this.streaming = true;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
     @Override
     public boolean cancelled() {
         return cancelled;
@@ -78,22 +146,48 @@ public class GtDownloadTask implements DownloadTask {
 //        return exception;
 //    }
 
-    
+    /**
+     * Report the number of features and entities of this source. Bytes
+     * are only known for features read from the feature cache. The
+     * entity factory time includes the transformation to the Osm CRS.
+     */
+    @Override
+    public void reportMetrics(DownloadMetrics metrics) {
+        String source = dataSource.getFeatureType();
+        metrics.count(source, "features", featureCount);
+        if (cacheBytes > 0) {
+            metrics.count(source, "cached features", cachedFeatureCount);
+            metrics.count(source, "cache bytes read", cacheBytes);
+        }
+        metrics.count(source, "entities", getEntities().size());
+        metrics.count(source, "issues", getIssues().size());
+        metrics.time(source, "entity factory", buildTime);
+        metrics.time(source, "boundary filter", filterTime);
+    }
 
     @Override
     public void cancel() {
         cancelled = true;
     }
 
+    /**
+     * Add the prepare, download and build stages of this source. In
+     * streaming mode, the build stage is a consumer stage that runs at the
+     * same time as the download stage. Otherwise it starts when the
+     * download has finished.
+     */
     @Override
-    public Callable<Object> stage(String subTask) {
-        switch (subTask) {
-        case "prepare":
-            return new PrepareSubTask();
-        case "download":
-            return new DownloadSubTask();
+    public Collection<Stage> schedule(Download download, Stage... dependencies) {
+        String source = dataSource.getFeatureType();
+        // Preparing initializes the host, which fetches its metadata
+        Stage prepare = download.addIo("prepare", source, new PrepareSubTask(), dependencies);
+        Stage downloadStage = download.addIo("download", source, new DownloadSubTask(), prepare);
+        if (isStreaming()) {
+            Stage build = download.addConsumer("build", source, new BuildSubTask(), prepare);
+            return Arrays.asList(downloadStage, build);
         }
-        return null;
+        return Collections.singletonList(
+            download.add("build", source, new BuildSubTask(), downloadStage));
     }
 
     
@@ -120,48 +214,158 @@ public class GtDownloadTask implements DownloadTask {
 //    }
 
     public List<SimpleFeature> getFeatures() {
-        if (cancelled) {
+        if (cancelled || isStreaming()) {
             return new ArrayList<SimpleFeature>(0);
         }
         return features;
     }
 
+    /**
+     * Get the entities that were built in the build stage.
+     * 
+     * @return
+     */
+    public List<Entity> getEntities() {
+        if (cancelled || entities == null) {
+            return new ArrayList<Entity>(0);
+        }
+        return entities;
+    }
+
+    /**
+     * Get the issues that occurred while building entities.
+     * 
+     * @return
+     */
+    public List<Issue> getIssues() {
+        if (issues == null) {
+            return new ArrayList<Issue>(0);
+        }
+        return issues;
+    }
+
+    /**
+     * Download the features. If the feature cache is enabled, the features
+     * are read from the cache tile by tile. Only the tiles that are not in
+     * the cache are downloaded. The downloaded features are written to the
+     * cache afterwards.
+     * The feature cache is not used in streaming mode, because it would
+     * keep all features in memory.
+     */
     class DownloadSubTask implements Callable<Object> {
+        private List<SimpleFeature> cacheBuffer = null;
+        private Set<Serializable> ids = null;
+
         @Override
         public Object call() throws ExecutionException {
+            if (failed || cancelled) {
+                // The prepare stage failed
+                if (featureStream != null) {
+                    featureStream.close();
+                }
+                return null;
+            }
             SimpleFeatureIterator it = null;
+            PagedFeatureReader pagedReader = null;
+            TiledFeatureReader tiledReader = null;
+            Host host = getDataSource().getOdsFeatureSource().getHost();
+            Integer pageSize = host.getPageSize();
+            Integer maxFeatures = host.getMaxFeatures();
+            boolean paged = pageSize != null && host instanceof GtHost
+                && PagedFeatureReader.isSupported(featureSource);
+            if (pageSize != null && !paged) {
+                Main.info(host.getName() + " doesn't pass a start index on. Paging is switched off.");
+            }
+            if (paged && maxFeatures != null && pageSize > maxFeatures) {
+                // The server would truncate every page
+                pageSize = maxFeatures;
+            }
+            boolean tiled = !paged && maxFeatures != null && host instanceof GtHost
+                && Main.pref.getBoolean("openservices.download.tiling", true);
+            String cacheVersion = (isStreaming() ? null : getCacheVersion(host));
+            cachedFeatureCount = 0;
+            cacheBytes = 0;
             try {
-                SimpleFeatureCollection featureCollection = featureSource.getFeatures(filter);
                 features = new LinkedList<SimpleFeature>();
-                it = featureCollection.features();
-                // retrieve all features
-                while (!Thread.currentThread().isInterrupted() && it.hasNext()) {
-                    features.add(it.next());
+                featureCount = 0;
+                Filter downloadFilter = filter;
+                ReferencedEnvelope downloadBbox = bbox;
+                List<Tile> missingTiles = null;
+                if (cacheVersion != null) {
+                    ids = new HashSet<>();
+                    missingTiles = readCache(host, cacheVersion);
+                    if (!missingTiles.isEmpty()) {
+                        // Download whole tiles, so they can be cached
+                        downloadBbox = crsUtil.createBoundingBox(crs,
+                            FeatureCache.getBounds(missingTiles));
+                        downloadFilter = createFilter(downloadBbox);
+                        cacheBuffer = new ArrayList<>();
+                    }
+                }
+                boolean truncated = false;
+                if (missingTiles != null && missingTiles.isEmpty()) {
+                    // Nothing to download
+                }
+                else if (paged) {
+                    pagedReader = new PagedFeatureReader(featureSource, downloadFilter, pageSize,
+                        host.getMaxRequests(), dataSource.getIdFactory().getKeyAttribute(),
+                        ((GtHost) host).getRequestExecutor());
+                    while (proceed() && pagedReader.hasNext()) {
+                        for (SimpleFeature feature : pagedReader.nextPage()) {
+                            addFeature(feature);
+                        }
+                    }
+                    truncated = pagedReader.isTruncated();
+                }
+                else if (tiled) {
+                    tiledReader = new TiledFeatureReader(featureSource, geometryProperty,
+                        dataSource.getFilter(), maxFeatures, dataSource.getIdFactory(),
+                        ((GtHost) host).getRequestExecutor());
+                    tiledReader.start(downloadBbox);
+                    while (proceed() && tiledReader.hasNext()) {
+                        for (SimpleFeature feature : tiledReader.nextTile()) {
+                            addFeature(feature);
+                        }
+                    }
+                    truncated = tiledReader.isTruncated();
+                }
+                else {
+                    SimpleFeatureCollection featureCollection = featureSource.getFeatures(downloadFilter);
+                    it = featureCollection.features();
+                    int downloadCount = 0;
+                    // retrieve all features
+                    while (proceed() && it.hasNext()) {
+                        addFeature(it.next());
+                        downloadCount++;
+                    }
+                    truncated = maxFeatures != null && downloadCount >= maxFeatures;
                 }
                 if (Thread.currentThread().isInterrupted()) {
                     cancelled = true;
                 }
-                else if (features.isEmpty() && getDataSource().isRequired()) {
+                else if (featureStream != null && featureStream.isStopped()) {
+                    // The build stage failed, and reports why
+                    return null;
+                }
+                else if (truncated) {
+                    String featureType = getDataSource().getFeatureType();
+                    message = I18n.tr(
+                       "To many {0} objects. Please choose a smaller download area.", featureType);
+                    cancelled = true;
+                    return null;
+                }
+                else if (featureCount == 0 && getDataSource().isRequired()) {
                     String featureType = getDataSource().getFeatureType();
                     message = I18n.tr("The selected download area contains no {0} objects.",
                         featureType);
                 }
-                else {
-                    Host host = getDataSource().getOdsFeatureSource().getHost();
-                    host.getMaxFeatures();
-                    Integer maxFeatures = host.getMaxFeatures();
-                    if (maxFeatures != null && features.size() >= maxFeatures) {
-                        String featureType = getDataSource().getFeatureType();
-                        message = I18n.tr(
-                           "To many {0} objects. Please choose a smaller download area.", featureType);
-                        cancelled = true;
-                        return null;
-                    }
-                }
                 if (cancelled || failed) {
                     Thread.currentThread().interrupt();
                     return null;
                 }
+                if (cacheBuffer != null) {
+                    writeCache(host, cacheVersion, missingTiles);
+                }
             }
             catch (FileNotFoundException e) {
                 failed = true;
@@ -178,11 +382,200 @@ public class GtDownloadTask implements DownloadTask {
                 }
                 throw new ExecutionException(e.getMessage(), e.getCause());
             } finally {
+                if (featureStream != null) {
+                    featureStream.close();
+                }
+                cacheBuffer = null;
+                ids = null;
                 if (it != null)
                     it.close();
+                if (pagedReader != null)
+                    pagedReader.close();
+                if (tiledReader != null)
+                    tiledReader.close();
             }
             return null;
         }
+
+        /**
+         * Add a feature to the result. When the cache is used, the features
+         * come from whole tiles. In that case, the features outside the
+         * download area are skipped, as are the features that were seen
+         * in another tile.
+         *
+         * @param feature
+         * @throws InterruptedException
+         */
+        private void addFeature(SimpleFeature feature) throws InterruptedException {
+            if (cacheBuffer != null) {
+                cacheBuffer.add(feature);
+            }
+            if (ids != null && (!filter.evaluate(feature) || !ids.add(getId(feature)))) {
+                return;
+            }
+            if (featureStream != null) {
+                featureStream.put(feature);
+            }
+            else {
+                features.add(feature);
+            }
+            featureCount++;
+        }
+
+        /**
+         * Check if reading should go on. It stops when the task is
+         * interrupted, or in streaming mode when the build stage has stopped.
+         *
+         * @return
+         */
+        private boolean proceed() {
+            return !Thread.currentThread().isInterrupted()
+                && (featureStream == null || !featureStream.isStopped());
+        }
+
+        private Serializable getId(SimpleFeature feature) {
+            Serializable id = dataSource.getIdFactory().getId(feature);
+            return (id == null ? feature.getID() : id);
+        }
+
+        /**
+         * Read the tiles of the download area from the cache.
+         *
+         * @param host
+         * @param cacheVersion
+         * @return the tiles that are not in the cache
+         * @throws InterruptedException
+         */
+        private List<Tile> readCache(Host host, String cacheVersion) throws InterruptedException {
+            FeatureCache cache = FeatureCache.getInstance();
+            Filter dataFilter = dataSource.getFilter();
+            List<Tile> missingTiles = new LinkedList<>();
+            for (Tile tile : FeatureCache.getTiles(boundary.getBounds())) {
+                List<SimpleFeature> cachedFeatures = null;
+                try {
+                    cachedFeatures = cache.read(host.getName(), featureSource.getSchema(),
+                        tile, dataFilter, cacheVersion);
+                } catch (IOException e) {
+                    Main.warn(e.getMessage());
+                }
+                if (cachedFeatures == null) {
+                    missingTiles.add(tile);
+                    continue;
+                }
+                cacheBytes += cache.getSize(host.getName(), featureSource.getSchema(),
+                    tile, dataFilter);
+                for (SimpleFeature feature : cachedFeatures) {
+                    int count = featureCount;
+                    addFeature(feature);
+                    cachedFeatureCount += featureCount - count;
+                }
+            }
+            return missingTiles;
+        }
+
+        /**
+         * Write the downloaded features to the cache, one file for each
+         * missing tile. A feature is written to every tile its bounding
+         * box intersects.
+         *
+         * @param host
+         * @param cacheVersion
+         * @param tiles
+         * @throws CRSException
+         */
+        private void writeCache(Host host, String cacheVersion, List<Tile> tiles)
+                throws CRSException {
+            FeatureCache cache = FeatureCache.getInstance();
+            for (Tile tile : tiles) {
+                ReferencedEnvelope tileBbox = crsUtil.createBoundingBox(crs, tile.getBounds());
+                List<SimpleFeature> tileFeatures = new ArrayList<>();
+                for (SimpleFeature feature : cacheBuffer) {
+                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                    if (geometry != null && tileBbox.intersects(geometry.getEnvelopeInternal())) {
+                        tileFeatures.add(feature);
+                    }
+                }
+                try {
+                    cache.write(host.getName(), featureSource.getSchema(), tile,
+                        dataSource.getFilter(), cacheVersion, tileFeatures);
+                } catch (IOException e) {
+                    Main.warn(e.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the version of the source data for the feature cache.
+     *
+     * @param host
+     * @return the version, or null if the features should not be cached.
+     */
+    private String getCacheVersion(Host host) {
+        String key = host.getCacheVersionKey();
+        if (key == null || !Main.pref.getBoolean("openservices.cache.enabled", true)) {
+            return null;
+        }
+        Object version = metaData.get(key);
+        return (version == null ? null : version.toString());
+    }
+
+    /**
+     * Build entities from the downloaded features. In streaming mode, the
+     * features are taken from the stream while the download is in progress.
+     * When this stage stops, for whatever reason, it stops the stream, so
+     * the download stage doesn't wait for it.
+     */
+    class BuildSubTask implements Callable<Object> {
+        private PreparedPolygon preparedBoundary = null;
+
+        @Override
+        public Object call() throws InterruptedException {
+            entities = new LinkedList<>();
+            issues = new LinkedList<>();
+            if (!boundary.isRectangular()) {
+                preparedBoundary = new PreparedPolygon(boundary.getPolygon());
+            }
+            if (!isStreaming()) {
+                if (features != null && !cancelled && !failed) {
+                    for (SimpleFeature feature : features) {
+                        build(feature);
+                    }
+                }
+                return null;
+            }
+            if (featureStream == null) {
+                // The prepare stage failed
+                return null;
+            }
+            try {
+                SimpleFeature feature;
+                while ((feature = featureStream.take()) != null) {
+                    build(feature);
+                }
+            } finally {
+                featureStream.stop();
+            }
+            return null;
+        }
+
+        private void build(SimpleFeature feature) {
+            long start = System.nanoTime();
+            try {
+                Entity entity = entityFactory.buildEntity(feature, metaData);
+                long built = System.nanoTime();
+                buildTime += built - start;
+                if (entity != null && (preparedBoundary == null
+                        || preparedBoundary.intersects(entity.getGeometry()))) {
+                    entities.add(entity);
+                }
+                filterTime += System.nanoTime() - built;
+            } catch (BuildException e) {
+                buildTime += System.nanoTime() - start;
+                issues.add(e.getIssue());
+            }
+        }
     }
 
     class PrepareSubTask implements Callable<Object> {
@@ -196,19 +589,18 @@ public class GtDownloadTask implements DownloadTask {
                         .getOdsFeatureSource();
                 // TODO check if selected boundaries overlap with
                 // featureSource boundaries;
-                FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
-                String geometryProperty = gtFeatureSource.getFeatureType()
+                geometryProperty = gtFeatureSource.getFeatureType()
                         .getGeometryDescriptor().getLocalName();
                 //Polygon polygon = geoUtil.createPolygon(boundary, null);
                 Bounds bounds = boundary.getBounds();
                 //Geometry transformedBoundary = crsUtil.fromOsm(polygon, gtFeatureSource.getCrs());
-                ReferencedEnvelope bbox = crsUtil.createBoundingBox(gtFeatureSource.getCrs(), bounds);
-                filter = ff.bbox(ff.property(geometryProperty), bbox);
-                Filter dataFilter = dataSource.getFilter();
-                if (dataFilter != null) {
-                    filter = ff.and(filter, dataFilter);
-                }
+                crs = gtFeatureSource.getCrs();
+                bbox = crsUtil.createBoundingBox(crs, bounds);
+                filter = createFilter(bbox);
                 featureSource = gtFeatureSource.getFeatureSource();
+                if (isStreaming()) {
+                    featureStream = new FeatureStream(QUEUE_CAPACITY);
+                }
             } catch (Exception e) {
                 failed = true;
                 exception = e;
@@ -216,4 +608,21 @@ public class GtDownloadTask implements DownloadTask {
             return null;
         }
     }
+
+    /**
+     * Create the filter for the features in the given bounding box that
+     * pass the data filter of the data source.
+     * 
+     * @param envelope
+     * @return
+     */
+    private Filter createFilter(ReferencedEnvelope envelope) {
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+        Filter bboxFilter = ff.bbox(ff.property(geometryProperty), envelope);
+        Filter dataFilter = dataSource.getFilter();
+        if (dataFilter != null) {
+            return ff.and(bboxFilter, dataFilter);
+        }
+        return bboxFilter;
+    }
 }
@@ -4,6 +4,9 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFinder;
@@ -20,19 +23,25 @@ public abstract class GtHost extends Host {
   private List<String> featureTypes;
   private DataStore dataStore;
   private boolean initialized = false;
+  private ExecutorService requestExecutor;
   
   @Override
-  public synchronized void initialize() throws InitializationException {
-    if (initialized) return;
-    super.initialize();
-    // TODO move to next line configuration fase
-    Map<?, ?> connectionParameters = getConnectionParameters();
+  public void initialize() throws InitializationException {
+    getInitializationLock().lock();
     try {
-      dataStore = DataStoreFinder.getDataStore(connectionParameters);
-      featureTypes = Arrays.asList(getDataStore().getTypeNames());
-      initialized = true;
-    } catch (IOException e) {
-      throw new InitializationException("Unable to connect to the datastore", e);
+      if (initialized) return;
+      super.initialize();
+      // TODO move to next line configuration fase
+      Map<?, ?> connectionParameters = getConnectionParameters();
+      try {
+        dataStore = DataStoreFinder.getDataStore(connectionParameters);
+        featureTypes = Arrays.asList(getDataStore().getTypeNames());
+        initialized = true;
+      } catch (IOException e) {
+        throw new InitializationException("Unable to connect to the datastore", e);
+      }
+    } finally {
+      getInitializationLock().unlock();
     }
   }
   
@@ -50,6 +59,27 @@ public abstract class GtHost extends Host {
     return dataStore;
   }
   
+  /**
+   * Get the executor for requests to this host. The number of threads
+   * is limited to getMaxRequests(), so concurrent page requests from
+   * different download tasks share the same limit.
+   * 
+   * @return
+   */
+  public synchronized ExecutorService getRequestExecutor() {
+    if (requestExecutor == null) {
+      requestExecutor = Executors.newFixedThreadPool(getMaxRequests(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "ODS request " + getName());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return requestExecutor;
+  }
+
   @Override
   public boolean hasFeatureType(String type) {
     return getFeatureTypes().contains(type);
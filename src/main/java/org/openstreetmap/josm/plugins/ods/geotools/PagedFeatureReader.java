@@ -0,0 +1,209 @@
+package org.openstreetmap.josm.plugins.ods.geotools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+/**
+ * Read the features from a feature source in pages. A page is a query with
+ * a start index and a maximum number of features. For a WFS 2.0 server
+ * these are the startIndex and count parameters.
+ * The WFS client of GeoTools 10 only speaks WFS 1.0 and 1.1, which have no
+ * start index, and doesn't send it. Use isSupported to check if a feature
+ * source passes the start index on, before paging through it.
+ * Up to maxRequests pages are requested at the same time. The pages are
+ * returned in order. As soon as a page is returned that is not full, the
+ * requests for the pages after it are cancelled.
+ *
+ * The pages are sorted on the key attribute, so they don't overlap. If the
+ * feature source reports the number of matching features, no pages are
+ * requested beyond that number.
+ * A server that ignores startIndex returns the first page again. Features
+ * that were returned before are dropped, and reading stops. In that case,
+ * or if fewer features were read than the number of matching features,
+ * the result is truncated.
+ *
+ * @author gertjan
+ *
+ */
+public class PagedFeatureReader {
+    private final SimpleFeatureSource featureSource;
+    private final Filter filter;
+    private final int pageSize;
+    private final int maxRequests;
+    private final ExecutorService executor;
+    private final LinkedList<Future<List<SimpleFeature>>> pending = new LinkedList<>();
+    private final SortBy[] sortBy;
+    private final int numberMatched;
+    private final Set<String> ids = new HashSet<>();
+    private int nextStartIndex = 0;
+    private int featureCount = 0;
+    private boolean lastPageFound = false;
+    private boolean truncated = false;
+
+    /**
+     * @param featureSource
+     * @param filter
+     * @param pageSize The number of features per page
+     * @param maxRequests The maximum number of concurrent page requests
+     * @param sortAttribute The attribute to sort the pages on, or null to
+     *     use the natural order of the feature source
+     * @param executor
+     * @throws IOException if the number of matching features could not be
+     *     retrieved
+     */
+    public PagedFeatureReader(SimpleFeatureSource featureSource, Filter filter,
+            int pageSize, int maxRequests, String sortAttribute,
+            ExecutorService executor) throws IOException {
+        this.featureSource = featureSource;
+        this.filter = filter;
+        this.pageSize = pageSize;
+        this.maxRequests = maxRequests;
+        this.executor = executor;
+        this.sortBy = createSortBy(sortAttribute);
+        this.numberMatched = featureSource.getCount(
+            new Query(featureSource.getSchema().getTypeName(), filter));
+        requestPages();
+    }
+
+    /**
+     * Check if the feature source supports a start index. Otherwise every
+     * page would be the first page again.
+     *
+     * @param featureSource
+     * @return
+     */
+    public static boolean isSupported(SimpleFeatureSource featureSource) {
+        return featureSource.getQueryCapabilities().isOffsetSupported();
+    }
+
+    private SortBy[] createSortBy(String sortAttribute) {
+        if (sortAttribute != null) {
+            FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+            SortBy[] attributeSort = new SortBy[] {ff.sort(sortAttribute, SortOrder.ASCENDING)};
+            if (featureSource.getQueryCapabilities().supportsSorting(attributeSort)) {
+                return attributeSort;
+            }
+        }
+        return new SortBy[] {SortBy.NATURAL_ORDER};
+    }
+
+    /**
+     * Check if the features that were read are not all matching features.
+     * Only reliable after the last page has been read.
+     *
+     * @return
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public boolean hasNext() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Get the next page. Waits until the page has been retrieved.
+     *
+     * @return the features of the page
+     * @throws IOException if the page could not be retrieved
+     * @throws InterruptedException
+     */
+    public List<SimpleFeature> nextPage() throws IOException, InterruptedException {
+        Future<List<SimpleFeature>> future = pending.removeFirst();
+        List<SimpleFeature> page;
+        try {
+            page = future.get();
+        } catch (ExecutionException e) {
+            close();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+        List<SimpleFeature> newFeatures = new ArrayList<>(page.size());
+        for (SimpleFeature feature : page) {
+            if (ids.add(feature.getID())) {
+                newFeatures.add(feature);
+            }
+        }
+        featureCount += newFeatures.size();
+        if (newFeatures.size() < page.size()) {
+            // The server returned features of an earlier page
+            lastPageFound = true;
+            truncated = true;
+            close();
+        }
+        else if (page.size() < pageSize) {
+            lastPageFound = true;
+            truncated = numberMatched >= 0 && featureCount < numberMatched;
+            close();
+        }
+        else {
+            requestPages();
+        }
+        return newFeatures;
+    }
+
+    /**
+     * Cancel the pending requests.
+     */
+    public void close() {
+        for (Future<List<SimpleFeature>> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    private void requestPages() {
+        while (!lastPageFound && pending.size() < maxRequests
+                && (numberMatched < 0 || nextStartIndex < numberMatched)) {
+            pending.add(executor.submit(new PageRequest(nextStartIndex)));
+            nextStartIndex += pageSize;
+        }
+    }
+
+    private class PageRequest implements Callable<List<SimpleFeature>> {
+        private final int startIndex;
+
+        public PageRequest(int startIndex) {
+            this.startIndex = startIndex;
+        }
+
+        @Override
+        public List<SimpleFeature> call() throws IOException {
+            Query query = new Query(featureSource.getSchema().getTypeName(), filter);
+            query.setStartIndex(startIndex);
+            query.setMaxFeatures(pageSize);
+            query.setSortBy(sortBy);
+            List<SimpleFeature> page = new ArrayList<>(pageSize);
+            SimpleFeatureIterator it = featureSource.getFeatures(query).features();
+            try {
+                while (!Thread.currentThread().isInterrupted() && it.hasNext()) {
+                    page.add(it.next());
+                }
+            } finally {
+                it.close();
+            }
+            return page;
+        }
+    }
+}
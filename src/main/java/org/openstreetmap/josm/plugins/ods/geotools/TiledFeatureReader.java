@@ -0,0 +1,251 @@
+package org.openstreetmap.josm.plugins.ods.geotools;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.openstreetmap.josm.plugins.ods.IdFactory;
+
+/**
+ * Read the features in a bounding box from a feature source that limits the
+ * number of features per request. The bounding box is split into a grid of
+ * tiles that are requested in parallel. The grid size is estimated from the
+ * feature count if the feature source can provide it, but the grid never
+ * has more than MAX_TILES tiles. A tile that reaches the limit is split
+ * into 4 smaller tiles. A tile is split at most MAX_DEPTH times, and no
+ * more than MAX_TILES tiles are requested in total, including the tiles
+ * of the initial grid.
+ * Features that intersect more than one tile are returned only once,
+ * so the result is the same as the result of one large request.
+ *
+ * @author gertjan
+ *
+ */
+public class TiledFeatureReader {
+    private final static FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+    // Aim for tiles that are half full, so most tiles don't have to be split.
+    private final static double FILL_FACTOR = 0.5;
+    private final static int MAX_DEPTH = 3;
+    private final static int MAX_TILES = 256;
+    private final static int MAX_GRID_SIZE = (int) Math.floor(Math.sqrt(MAX_TILES));
+
+    private final SimpleFeatureSource featureSource;
+    private final String geometryProperty;
+    private final Filter dataFilter;
+    private final int maxFeatures;
+    private final IdFactory idFactory;
+    private final CompletionService<Tile> completionService;
+    private final List<Future<Tile>> pending = new ArrayList<>();
+    private final Set<Serializable> ids = new HashSet<>();
+    private boolean truncated = false;
+    private int tileCount = 0;
+
+    public TiledFeatureReader(SimpleFeatureSource featureSource,
+            String geometryProperty, Filter dataFilter, int maxFeatures,
+            IdFactory idFactory, ExecutorService executor) {
+        this.featureSource = featureSource;
+        this.geometryProperty = geometryProperty;
+        this.dataFilter = dataFilter;
+        this.maxFeatures = maxFeatures;
+        this.idFactory = idFactory;
+        this.completionService = new ExecutorCompletionService<>(executor);
+    }
+
+    /**
+     * Split the bounding box in tiles and start the requests.
+     *
+     * @param bbox
+     */
+    public void start(ReferencedEnvelope bbox) {
+        int gridSize = estimateGridSize(bbox);
+        double width = bbox.getWidth() / gridSize;
+        double height = bbox.getHeight() / gridSize;
+        for (int i = 0; i < gridSize; i++) {
+            for (int j = 0; j < gridSize; j++) {
+                double minX = bbox.getMinX() + i * width;
+                double minY = bbox.getMinY() + j * height;
+                submit(new ReferencedEnvelope(minX, minX + width, minY, minY + height,
+                    bbox.getCoordinateReferenceSystem()), 0);
+            }
+        }
+    }
+
+    public boolean hasNext() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Get the features of the next tile that was retrieved, without
+     * the features that were returned before for an other tile.
+     * Waits until a tile has been retrieved.
+     *
+     * @return the new features
+     * @throws IOException if a tile could not be retrieved
+     * @throws InterruptedException
+     */
+    public List<SimpleFeature> nextTile() throws IOException, InterruptedException {
+        Future<Tile> future = completionService.take();
+        pending.remove(future);
+        Tile tile;
+        try {
+            tile = future.get();
+        } catch (ExecutionException e) {
+            close();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+        if (tile.features.size() >= maxFeatures) {
+            if (tile.depth < MAX_DEPTH && tileCount + 4 <= MAX_TILES) {
+                split(tile);
+                return Collections.emptyList();
+            }
+            truncated = true;
+        }
+        List<SimpleFeature> result = new ArrayList<>(tile.features.size());
+        for (SimpleFeature feature : tile.features) {
+            if (ids.add(getId(feature))) {
+                result.add(feature);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the id of the feature. The id factory returns null if the key
+     * attribute is missing. Use the feature id in that case.
+     */
+    private Serializable getId(SimpleFeature feature) {
+        Serializable id = idFactory.getId(feature);
+        return (id == null ? feature.getID() : id);
+    }
+
+    /**
+     * Cancel the pending requests.
+     */
+    public void close() {
+        for (Future<Tile> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    /**
+     * @return true if a tile reached the limit and could not be split
+     *     any further.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return the number of tiles that have been requested.
+     */
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    private int estimateGridSize(ReferencedEnvelope bbox) {
+        int count;
+        try {
+            count = featureSource.getCount(new Query(
+                featureSource.getSchema().getTypeName(), createFilter(bbox)));
+        } catch (IOException e) {
+            count = -1;
+        }
+        if (count <= 0) {
+            return 1;
+        }
+        double tiles = count / (FILL_FACTOR * maxFeatures);
+        int gridSize = (int) Math.ceil(Math.sqrt(tiles));
+        return Math.max(1, Math.min(gridSize, MAX_GRID_SIZE));
+    }
+
+    private void split(Tile tile) {
+        ReferencedEnvelope e = tile.envelope;
+        double midX = (e.getMinX() + e.getMaxX()) / 2;
+        double midY = (e.getMinY() + e.getMaxY()) / 2;
+        int depth = tile.depth + 1;
+        submit(new ReferencedEnvelope(e.getMinX(), midX, e.getMinY(), midY,
+            e.getCoordinateReferenceSystem()), depth);
+        submit(new ReferencedEnvelope(midX, e.getMaxX(), e.getMinY(), midY,
+            e.getCoordinateReferenceSystem()), depth);
+        submit(new ReferencedEnvelope(e.getMinX(), midX, midY, e.getMaxY(),
+            e.getCoordinateReferenceSystem()), depth);
+        submit(new ReferencedEnvelope(midX, e.getMaxX(), midY, e.getMaxY(),
+            e.getCoordinateReferenceSystem()), depth);
+    }
+
+    private void submit(ReferencedEnvelope envelope, int depth) {
+        pending.add(completionService.submit(new TileRequest(envelope, depth)));
+        tileCount++;
+    }
+
+    private Filter createFilter(ReferencedEnvelope envelope) {
+        Filter filter = ff.bbox(ff.property(geometryProperty), envelope);
+        if (dataFilter != null) {
+            filter = ff.and(filter, dataFilter);
+        }
+        return filter;
+    }
+
+    private static class Tile {
+        final ReferencedEnvelope envelope;
+        final int depth;
+        final List<SimpleFeature> features;
+
+        public Tile(ReferencedEnvelope envelope, int depth,
+                List<SimpleFeature> features) {
+            this.envelope = envelope;
+            this.depth = depth;
+            this.features = features;
+        }
+    }
+
+    private class TileRequest implements Callable<Tile> {
+        private final ReferencedEnvelope envelope;
+        private final int depth;
+
+        public TileRequest(ReferencedEnvelope envelope, int depth) {
+            this.envelope = envelope;
+            this.depth = depth;
+        }
+
+        @Override
+        public Tile call() throws IOException {
+            Query query = new Query(featureSource.getSchema().getTypeName(),
+                createFilter(envelope));
+            query.setMaxFeatures(maxFeatures);
+            List<SimpleFeature> features = new ArrayList<>();
+            SimpleFeatureIterator it = featureSource.getFeatures(query).features();
+            try {
+                while (!Thread.currentThread().isInterrupted() && it.hasNext()) {
+                    features.add(it.next());
+                }
+            } finally {
+                it.close();
+            }
+            return new Tile(envelope, depth, features);
+        }
+    }
+}
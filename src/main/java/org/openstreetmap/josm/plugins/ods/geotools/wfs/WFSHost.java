@@ -15,6 +15,7 @@ import org.openstreetmap.josm.plugins.ods.geotools.GtHost;
  *
  */
 public class WFSHost extends GtHost {
+  private final static int BUFFER_SIZE = 1000;
 
   @Override
   public Map<?, ?> getConnectionParameters() throws InitializationException{
@@ -26,7 +27,9 @@ public class WFSHost extends GtHost {
       Map<String, Object> connectionParameters = new HashMap<>();
       connectionParameters.put(WFSDataStoreFactory.URL.key, capabilitiesUrl);
       connectionParameters.put(WFSDataStoreFactory.TIMEOUT.key, 60000);
-      connectionParameters.put(WFSDataStoreFactory.BUFFER_SIZE.key, 1000);
+      Integer pageSize = getPageSize();
+      connectionParameters.put(WFSDataStoreFactory.BUFFER_SIZE.key,
+          pageSize != null ? pageSize : BUFFER_SIZE);
       connectionParameters.put(WFSDataStoreFactory.PROTOCOL.key, "FALSE");     
       return connectionParameters;
     } catch (MalformedURLException e) {
@@ -0,0 +1,319 @@
+package org.openstreetmap.josm.plugins.ods.jts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.openstreetmap.josm.Main;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+
+/**
+ * Aligns two linearRings like the {@link LinearRingAligner},
+ * without creating Coordinate and LineSegment objects for every step.
+ * The vertices of a ring are stored in double arrays, and are linked in
+ * ring order, so a vertex can be inserted without shifting the arrays.
+ * For rings with many vertices, the segments that are near a vertex of
+ * the other ring are found with a quadtree over the segment envelopes,
+ * instead of checking all segments. The quadtree is updated when a vertex
+ * is moved or inserted.
+ * The results are not always the same as those of the LinearRingAligner.
+ * The rings are not re-oriented, and with the quadtree, segments that are
+ * inserted while a vertex is aligned are not checked against that vertex
+ * again. That's why the CrossingBuildingFixer only uses this aligner if
+ * the openservices.aligner.packed preference is set.
+ *
+ * @author gertjan
+ *
+ */
+public class PackedRingAligner {
+    // Rings with less vertices than this are searched linearly
+    private final static int INDEX_THRESHOLD = 64;
+
+    private LinearRing ring1;
+    private LinearRing ring2;
+    private final double tolerance;
+    private PackedRing packed1;
+    private PackedRing packed2;
+
+    public PackedRingAligner(LinearRing ring1, LinearRing ring2,
+            Double tolerance) {
+        this.ring1 = ring1;
+        this.ring2 = ring2;
+        this.tolerance = tolerance;
+    }
+
+    public void run() {
+        packed1 = new PackedRing(ring1);
+        packed2 = new PackedRing(ring2);
+        fix(packed1, packed2);
+        fix(packed2, packed1);
+        if (packed1.modified) {
+            ring1 = packed1.toLinearRing(ring1);
+        }
+        if (packed2.modified) {
+            ring2 = packed2.toLinearRing(ring2);
+        }
+    }
+
+    /**
+     * Align the segments of the target ring to the vertices of the source ring.
+     */
+    private void fix(PackedRing source, PackedRing target) {
+        boolean indexed = target.hasIndex();
+        List<Integer> candidates = new ArrayList<>();
+        Envelope search = new Envelope();
+        int v = 0;
+        do {
+            double cx = source.x[v];
+            double cy = source.y[v];
+            if (indexed) {
+                search.init(cx - tolerance, cx + tolerance, cy - tolerance, cy + tolerance);
+                target.query(search, candidates);
+                for (Integer segment : candidates) {
+                    target.align(segment, cx, cy, tolerance);
+                }
+            }
+            else {
+                int segment = 0;
+                do {
+                    segment = target.align(segment, cx, cy, tolerance);
+                } while (segment != 0);
+            }
+            v = source.next[v];
+        } while (v != 0);
+    }
+
+    public boolean ring1Modified() {
+        return packed1.modified;
+    }
+
+    public boolean ring2Modified() {
+        return packed2.modified;
+    }
+
+    public LinearRing getRing1() {
+        return ring1;
+    }
+
+    public LinearRing getRing2() {
+        return ring2;
+    }
+
+    /**
+     * Distance from point p to the line segment from a to b.
+     */
+    static double segmentDistance(double px, double py, double ax, double ay,
+            double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double length2 = dx * dx + dy * dy;
+        double t = 0;
+        if (length2 > 0) {
+            t = ((px - ax) * dx + (py - ay) * dy) / length2;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double qx = ax + t * dx - px;
+        double qy = ay + t * dy - py;
+        return Math.sqrt(qx * qx + qy * qy);
+    }
+
+    static double distance(double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * The vertices of a ring, without the closing vertex. Vertex 0 is
+     * the start of the ring. A segment is identified by its start vertex.
+     */
+    private static class PackedRing {
+        double[] x;
+        double[] y;
+        int[] next;
+        int[] prev;
+        // Position of the vertex in the ring, for sorting
+        double[] order;
+        int size;
+        boolean modified = false;
+        private Quadtree index = null;
+        private Envelope[] envelopes;
+        private Integer[] items;
+        private final Comparator<Integer> ringOrder = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer s1, Integer s2) {
+                return Double.compare(order[s1], order[s2]);
+            }
+        };
+
+        public PackedRing(LinearRing ring) {
+            CoordinateSequence sequence = ring.getCoordinateSequence();
+            size = sequence.size() - 1;
+            int capacity = size * 2 + 4;
+            x = new double[capacity];
+            y = new double[capacity];
+            next = new int[capacity];
+            prev = new int[capacity];
+            order = new double[capacity];
+            for (int i = 0; i < size; i++) {
+                x[i] = sequence.getX(i);
+                y[i] = sequence.getY(i);
+                next[i] = (i + 1 == size ? 0 : i + 1);
+                prev[i] = (i == 0 ? size - 1 : i - 1);
+                order[i] = i;
+            }
+            if (size >= INDEX_THRESHOLD) {
+                index = new Quadtree();
+                envelopes = new Envelope[capacity];
+                items = new Integer[capacity];
+                for (int i = 0; i < size; i++) {
+                    indexSegment(i);
+                }
+            }
+        }
+
+        public boolean hasIndex() {
+            return index != null;
+        }
+
+        /**
+         * Find the segments with an envelope that intersects the search
+         * envelope, in ring order.
+         */
+        public void query(Envelope search, List<Integer> result) {
+            result.clear();
+            @SuppressWarnings("unchecked")
+            List<Integer> found = index.query(search);
+            for (Integer segment : found) {
+                if (envelopes[segment].intersects(search)) {
+                    result.add(segment);
+                }
+            }
+            Collections.sort(result, ringOrder);
+        }
+
+        /**
+         * Align segment s to the point (cx, cy), like
+         * {@link LinearRingAligner} does.
+         *
+         * @return the next segment to check
+         */
+        public int align(int s, double cx, double cy, double tolerance) {
+            int e = next[s];
+            double d = segmentDistance(cx, cy, x[s], y[s], x[e], y[e]);
+            if (d >= tolerance) {
+                return e;
+            }
+            if (distance(x[s], y[s], cx, cy) < tolerance) {
+                moveVertex(s, cx, cy);
+            }
+            else if (distance(x[e], y[e], cx, cy) < tolerance) {
+                moveVertex(e, cx, cy);
+            }
+            else {
+                int p = prev[s];
+                // Only split the segment that is nearest to the point
+                if (d <= segmentDistance(cx, cy, x[p], y[p], x[s], y[s]) &&
+                        d <= segmentDistance(cx, cy, x[e], y[e], x[next[e]], y[next[e]])) {
+                    insertAfter(s, cx, cy);
+                }
+            }
+            return e;
+        }
+
+        private void moveVertex(int v, double cx, double cy) {
+            if (x[v] == cx && y[v] == cy) {
+                return;
+            }
+            int p = prev[v];
+            unindexSegment(p);
+            unindexSegment(v);
+            x[v] = cx;
+            y[v] = cy;
+            indexSegment(p);
+            indexSegment(v);
+            modified = true;
+        }
+
+        private void insertAfter(int s, double cx, double cy) {
+            if (size == x.length) {
+                grow();
+            }
+            int e = next[s];
+            int w = size++;
+            x[w] = cx;
+            y[w] = cy;
+            next[w] = e;
+            prev[w] = s;
+            next[s] = w;
+            prev[e] = w;
+            order[w] = (e == 0 ? order[s] + 1 : (order[s] + order[e]) / 2);
+            unindexSegment(s);
+            indexSegment(s);
+            indexSegment(w);
+            modified = true;
+        }
+
+        private void grow() {
+            int capacity = x.length * 2;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            order = Arrays.copyOf(order, capacity);
+            if (index != null) {
+                envelopes = Arrays.copyOf(envelopes, capacity);
+                items = Arrays.copyOf(items, capacity);
+            }
+        }
+
+        private void indexSegment(int s) {
+            if (index == null) {
+                return;
+            }
+            int e = next[s];
+            Envelope envelope = new Envelope(x[s], x[e], y[s], y[e]);
+            if (items[s] == null) {
+                items[s] = s;
+            }
+            envelopes[s] = envelope;
+            index.insert(envelope, items[s]);
+        }
+
+        private void unindexSegment(int s) {
+            if (index == null) {
+                return;
+            }
+            index.remove(envelopes[s], items[s]);
+            envelopes[s] = null;
+        }
+
+        public LinearRing toLinearRing(LinearRing original) {
+            double[] coords = new double[(size + 1) * 2];
+            int i = 0;
+            int v = 0;
+            do {
+                coords[i++] = x[v];
+                coords[i++] = y[v];
+                v = next[v];
+            } while (v != 0);
+            coords[i++] = x[0];
+            coords[i++] = y[0];
+            try {
+                return original.getFactory().createLinearRing(
+                    new PackedCoordinateSequence.Double(coords, 2));
+            }
+            catch (IllegalArgumentException e) {
+                Main.warn("Invalid ring. Not fixed.");
+                return original;
+            }
+        }
+    }
+}
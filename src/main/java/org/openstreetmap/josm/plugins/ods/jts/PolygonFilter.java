@@ -2,12 +2,16 @@ package org.openstreetmap.josm.plugins.ods.jts;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataIntegrityProblemException;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
@@ -28,20 +32,57 @@ import com.vividsolutions.jts.geom.prep.PreparedPolygon;
  * Filter a Josm dataSet using a Polygon. All primitives that are completely
  * outside the dataSet will be removed from the dataSet
  * 
+ * There are 3 modes:
+ * <ul>
+ * <li>SIMPLE tests every node as a Point against a prepared polygon, and
+ * copies the primitives to a new dataSet.</li>
+ * <li>INDEXED classifies the nodes with a {@link PreparedBoundary}, so only
+ * nodes near the border of the polygon need an exact test, and no Point
+ * is created. The primitives are copied in a single pass, using a map from
+ * the original primitives to their clones.</li>
+ * <li>IN_PLACE classifies the nodes like INDEXED, but removes the other
+ * primitives from the original dataSet instead of copying it. Members of
+ * the kept relations are kept as they are, where the copying modes
+ * replace the members outside the polygon by incomplete primitives.</li>
+ * </ul>
+ * 
  * @author gertjan
  * 
  */
 public class PolygonFilter {
     private final static GeoUtil geoUtil = GeoUtil.getInstance();
 
+    public enum Mode {
+        SIMPLE, INDEXED, IN_PLACE
+    }
+
+    private final Polygon polygon;
     private final PreparedPolygon pp;
+    private final Mode mode;
     private Set<OsmPrimitive> keep;
 
     public PolygonFilter(Polygon polygon) {
+        this(polygon, Mode.SIMPLE);
+    }
+
+    public PolygonFilter(Polygon polygon, Mode mode) {
+        this.polygon = polygon;
         this.pp = new PreparedPolygon(polygon);
+        this.mode = mode;
     }
 
     public DataSet filter(DataSet dataSet) {
+        switch (mode) {
+        case INDEXED:
+            return filterIndexed(dataSet);
+        case IN_PLACE:
+            return filterInPlace(dataSet);
+        default:
+            return filterSimple(dataSet);
+        }
+    }
+
+    private DataSet filterSimple(DataSet dataSet) {
         // Create a Collection of all nodes inside the polygon
         Collection<Node> nodes = new LinkedList<>();
         for (Node node : dataSet.getNodes()) {
@@ -119,6 +160,185 @@ public class PolygonFilter {
         return newDataSet;
     }
 
+    private DataSet filterIndexed(DataSet dataSet) {
+        collectKeep(dataSet);
+        DataSet newDataSet = new DataSet();
+        Map<OsmPrimitive, OsmPrimitive> clones = new IdentityHashMap<>(keep.size());
+        List<Relation> relations = new ArrayList<>();
+        for (OsmPrimitive primitive : keep) {
+            switch (primitive.getType()) {
+            case NODE:
+                getNodeClone((Node) primitive, clones, newDataSet);
+                break;
+            case WAY:
+                getWayClone((Way) primitive, clones, newDataSet);
+                break;
+            case RELATION:
+                relations.add((Relation) primitive);
+                break;
+            default:
+                break;
+            }
+        }
+        // The member relations of the kept relations are copied as well.
+        // The relations are created without members first, because
+        // relations may refer to each other.
+        List<Relation> clonedRelations = new ArrayList<>();
+        for (int i = 0; i < relations.size(); i++) {
+            Relation relation = relations.get(i);
+            if (clones.containsKey(relation)) {
+                continue;
+            }
+            Relation clone = new Relation(relation);
+            clone.setMembers(null);
+            clones.put(relation, clone);
+            newDataSet.addPrimitive(clone);
+            clonedRelations.add(relation);
+            if (!relation.isIncomplete()) {
+                for (RelationMember member : relation.getMembers()) {
+                    if (member.isRelation()) {
+                        relations.add(member.getRelation());
+                    }
+                }
+            }
+        }
+        // Now all relations exist in the new dataSet, so we can add the members
+        for (Relation relation : clonedRelations) {
+            if (relation.isIncomplete()) {
+                continue;
+            }
+            Relation clone = (Relation) clones.get(relation);
+            List<RelationMember> members = new ArrayList<>(relation.getMembersCount());
+            for (RelationMember member : relation.getMembers()) {
+                OsmPrimitive newMember = clones.get(member.getMember());
+                if (newMember == null) {
+                    newMember = createIncomplete(member.getMember());
+                    clones.put(member.getMember(), newMember);
+                    newDataSet.addPrimitive(newMember);
+                }
+                members.add(new RelationMember(member.getRole(), newMember));
+            }
+            clone.setMembers(members);
+        }
+        return newDataSet;
+    }
+
+    private DataSet filterInPlace(DataSet dataSet) {
+        collectKeep(dataSet);
+        // Keep the members of the kept relations, so the relations
+        // don't refer to primitives outside the dataSet.
+        List<OsmPrimitive> relations = new ArrayList<>();
+        for (OsmPrimitive primitive : keep) {
+            if (primitive.getType() == RELATION) {
+                relations.add(primitive);
+            }
+        }
+        for (int i = 0; i < relations.size(); i++) {
+            for (OsmPrimitive member : ((Relation) relations.get(i)).getMemberPrimitives()) {
+                if (keep.add(member)) {
+                    if (member.getType() == WAY) {
+                        keep.addAll(((Way) member).getNodes());
+                    }
+                    else if (member.getType() == RELATION) {
+                        relations.add(member);
+                    }
+                }
+            }
+        }
+        dataSet.beginUpdate();
+        try {
+            // Remove the primitives that refer to others first
+            for (Relation relation : new ArrayList<>(dataSet.getRelations())) {
+                if (!keep.contains(relation)) {
+                    dataSet.removePrimitive(relation);
+                }
+            }
+            for (Way way : new ArrayList<>(dataSet.getWays())) {
+                if (!keep.contains(way)) {
+                    dataSet.removePrimitive(way);
+                }
+            }
+            for (Node node : new ArrayList<>(dataSet.getNodes())) {
+                if (!keep.contains(node)) {
+                    dataSet.removePrimitive(node);
+                }
+            }
+        } finally {
+            dataSet.endUpdate();
+        }
+        return dataSet;
+    }
+
+    /**
+     * Find the nodes inside the polygon and the primitives that refer to
+     * them, using the grid of a {@link PreparedBoundary}.
+     * Like in the SIMPLE mode, nodes on the border of the polygon are not
+     * inside.
+     */
+    private void collectKeep(DataSet dataSet) {
+        PreparedBoundary boundary = new PreparedBoundary(polygon);
+        keep = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+        for (Node node : dataSet.getNodes()) {
+            if (node.isIncomplete()) {
+                continue;
+            }
+            LatLon latLon = node.getCoor();
+            if (latLon != null && boundary.contains(latLon.lon(), latLon.lat())) {
+                keep.add(node);
+                for (OsmPrimitive primitive : node.getReferrers()) {
+                    if (primitive.getType() == WAY) {
+                        keep((Way)primitive);
+                    }
+                    if (primitive.getType() == RELATION) {
+                        keep((Relation)primitive);
+                    }
+                }
+            }
+        }
+    }
+
+    private Node getNodeClone(Node node, Map<OsmPrimitive, OsmPrimitive> clones,
+            DataSet newDataSet) {
+        Node clone = (Node) clones.get(node);
+        if (clone == null) {
+            clone = clone(node);
+            clones.put(node, clone);
+            newDataSet.addPrimitive(clone);
+        }
+        return clone;
+    }
+
+    private Way getWayClone(Way way, Map<OsmPrimitive, OsmPrimitive> clones,
+            DataSet newDataSet) {
+        Way clone = (Way) clones.get(way);
+        if (clone != null) {
+            return clone;
+        }
+        clone = new Way(way);
+        if (!way.isIncomplete()) {
+            clone.setKeys(way.getKeys());
+            List<Node> nodes = new ArrayList<>(way.getNodesCount());
+            for (Node node : way.getNodes()) {
+                nodes.add(getNodeClone(node, clones, newDataSet));
+            }
+            clone.setNodes(nodes);
+        }
+        clones.put(way, clone);
+        newDataSet.addPrimitive(clone);
+        return clone;
+    }
+
+    private static OsmPrimitive createIncomplete(OsmPrimitive primitive) {
+        switch (primitive.getType()) {
+        case NODE:
+            return new Node(primitive.getId(), 0);
+        case WAY:
+            return new Way(primitive.getId(), 0);
+        default:
+            return new Relation(primitive.getId(), 0);
+        }
+    }
+
     /**
      * 
      * @param way
@@ -0,0 +1,244 @@
+package org.openstreetmap.josm.plugins.ods.jts;
+
+import com.vividsolutions.jts.algorithm.locate.IndexedPointInAreaLocator;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Location;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * Prepared (multi)polygon for many covers tests against the same boundary.
+ * The envelope of the boundary is divided in a grid of cells. The cells
+ * are classified as interior (covered by the boundary), exterior (disjoint
+ * from the boundary) or border by recursive subdivision of the envelope,
+ * so only the cells near the border need a test of their own.
+ * A geometry with an envelope that only touches interior cells is covered,
+ * and a geometry in exterior cells is not covered, without further tests.
+ * Only geometries near the border get an exact test on the prepared
+ * geometry.
+ * Points can be tested by their coordinates, without creating a Point,
+ * with or without the border.
+ *
+ * @author gertjan
+ *
+ */
+public class PreparedBoundary {
+    private final static int DEFAULT_DEPTH = 6;
+    private final static byte BORDER = 0;
+    private final static byte INTERIOR = 1;
+    private final static byte EXTERIOR = 2;
+
+    private final Geometry boundary;
+    private final PreparedGeometry prepared;
+    private IndexedPointInAreaLocator locator = null;
+    private final Coordinate scratch = new Coordinate();
+    private final GeometryFactory factory;
+    private final Envelope envelope;
+    private final int gridSize;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final byte[] cells;
+    private int fastAccepts = 0;
+    private int fastRejects = 0;
+    private int exactTests = 0;
+
+    public PreparedBoundary(Geometry boundary) {
+        this(boundary, DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param boundary
+     * @param depth The grid has 2^depth x 2^depth cells
+     */
+    public PreparedBoundary(Geometry boundary, int depth) {
+        this.boundary = boundary;
+        this.prepared = PreparedGeometryFactory.prepare(boundary);
+        this.factory = boundary.getFactory();
+        this.envelope = boundary.getEnvelopeInternal();
+        this.gridSize = 1 << depth;
+        this.cellWidth = envelope.getWidth() / gridSize;
+        this.cellHeight = envelope.getHeight() / gridSize;
+        this.cells = new byte[gridSize * gridSize];
+        if (cellWidth > 0 && cellHeight > 0) {
+            classify(0, 0, gridSize);
+        }
+    }
+
+    public boolean covers(Geometry geometry) {
+        Envelope env = geometry.getEnvelopeInternal();
+        if (!envelope.covers(env)) {
+            return false;
+        }
+        if (cellWidth > 0 && cellHeight > 0) {
+            byte state = getState(env);
+            if (state == INTERIOR) {
+                fastAccepts++;
+                return true;
+            }
+            if (state == EXTERIOR) {
+                fastRejects++;
+                return false;
+            }
+        }
+        exactTests++;
+        return prepared.covers(geometry);
+    }
+
+    /**
+     * Check if the point (x, y) is inside the boundary or on the border.
+     * 
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean covers(double x, double y) {
+        if (!envelope.covers(x, y)) {
+            return false;
+        }
+        if (cellWidth > 0 && cellHeight > 0) {
+            byte state = cells[cell(x - envelope.getMinX(), cellWidth) * gridSize
+                + cell(y - envelope.getMinY(), cellHeight)];
+            if (state == INTERIOR) {
+                fastAccepts++;
+                return true;
+            }
+            if (state == EXTERIOR) {
+                fastRejects++;
+                return false;
+            }
+        }
+        exactTests++;
+        if (locator == null) {
+            locator = new IndexedPointInAreaLocator(boundary);
+        }
+        scratch.x = x;
+        scratch.y = y;
+        return locator.locate(scratch) != Location.EXTERIOR;
+    }
+
+    /**
+     * Check if the point (x, y) is inside the boundary and not on the border,
+     * like {@link PreparedGeometry#contains} for a Point.
+     * An interior cell may share its edges with the border, so a point in
+     * an interior cell is only accepted if it is not on the edge of the cell.
+     * 
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean contains(double x, double y) {
+        if (!envelope.covers(x, y)) {
+            return false;
+        }
+        if (cellWidth > 0 && cellHeight > 0) {
+            int i = cell(x - envelope.getMinX(), cellWidth);
+            int j = cell(y - envelope.getMinY(), cellHeight);
+            byte state = cells[i * gridSize + j];
+            if (state == INTERIOR
+                    && x > envelope.getMinX() + i * cellWidth
+                    && x < envelope.getMinX() + (i + 1) * cellWidth
+                    && y > envelope.getMinY() + j * cellHeight
+                    && y < envelope.getMinY() + (j + 1) * cellHeight) {
+                fastAccepts++;
+                return true;
+            }
+            if (state == EXTERIOR) {
+                fastRejects++;
+                return false;
+            }
+        }
+        exactTests++;
+        if (locator == null) {
+            locator = new IndexedPointInAreaLocator(boundary);
+        }
+        scratch.x = x;
+        scratch.y = y;
+        return locator.locate(scratch) == Location.INTERIOR;
+    }
+
+    /**
+     * @return The number of covers tests that were accepted by the grid
+     */
+    public int getFastAccepts() {
+        return fastAccepts;
+    }
+
+    /**
+     * @return The number of covers tests that were rejected by the grid
+     */
+    public int getFastRejects() {
+        return fastRejects;
+    }
+
+    /**
+     * @return The number of covers tests that needed an exact test
+     */
+    public int getExactTests() {
+        return exactTests;
+    }
+
+    /**
+     * Get the common state of the cells that intersect the envelope,
+     * or BORDER if the states differ.
+     */
+    private byte getState(Envelope env) {
+        int minI = cell(env.getMinX() - envelope.getMinX(), cellWidth);
+        int maxI = cell(env.getMaxX() - envelope.getMinX(), cellWidth);
+        int minJ = cell(env.getMinY() - envelope.getMinY(), cellHeight);
+        int maxJ = cell(env.getMaxY() - envelope.getMinY(), cellHeight);
+        byte state = cells[minI * gridSize + minJ];
+        for (int i = minI; i <= maxI && state != BORDER; i++) {
+            for (int j = minJ; j <= maxJ; j++) {
+                if (cells[i * gridSize + j] != state) {
+                    return BORDER;
+                }
+            }
+        }
+        return state;
+    }
+
+    private int cell(double offset, double cellSize) {
+        return Math.min((int) (offset / cellSize), gridSize - 1);
+    }
+
+    /**
+     * Classify the square block of cells starting at cell (i, j).
+     * A covered block is marked interior and a disjoint block is marked
+     * exterior as a whole. Other blocks are split in 4.
+     */
+    private void classify(int i, int j, int size) {
+        Envelope block = new Envelope(
+            envelope.getMinX() + i * cellWidth,
+            envelope.getMinX() + (i + size) * cellWidth,
+            envelope.getMinY() + j * cellHeight,
+            envelope.getMinY() + (j + size) * cellHeight);
+        Geometry rectangle = factory.toGeometry(block);
+        if (prepared.covers(rectangle)) {
+            mark(i, j, size, INTERIOR);
+            return;
+        }
+        if (!prepared.intersects(rectangle)) {
+            mark(i, j, size, EXTERIOR);
+            return;
+        }
+        if (size == 1) {
+            return;
+        }
+        int half = size / 2;
+        classify(i, j, half);
+        classify(i + half, j, half);
+        classify(i, j + half, half);
+        classify(i + half, j + half, half);
+    }
+
+    private void mark(int i, int j, int size, byte state) {
+        for (int k = i; k < i + size; k++) {
+            for (int l = j; l < j + size; l++) {
+                cells[k * gridSize + l] = state;
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -15,6 +16,7 @@ import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
+import org.openstreetmap.josm.Main;
 
 /**
  * Implementation of MetaDataLoader that
@@ -30,6 +32,7 @@ public class HttpMetaDataLoader implements MetaDataLoader {
   private final String url;
   private String method = "GET";
   private Map<String, String> requestData = null;
+  private MetaDataCache cache = null;
   private final List<MetaDataAttribute> attributes = 
     new LinkedList<MetaDataAttribute>();
   
@@ -63,8 +66,76 @@ public class HttpMetaDataLoader implements MetaDataLoader {
     attributes.add(attribute);
   }
   
+  /**
+   * Use a cache for the values of this page. Without a cache, the shared
+   * cache is used, unless the openservices.metadata.cache preference is
+   * false.
+   * 
+   * @param cache
+   */
+  public void setCache(MetaDataCache cache) {
+    this.cache = cache;
+  }
+
+  private MetaDataCache getCache() {
+    if (cache == null && Main.pref.getBoolean("openservices.metadata.cache", true)) {
+      cache = MetaDataCache.getInstance();
+    }
+    return cache;
+  }
+
   @Override
   public void populateMetaData(MetaData metaData) throws MetaDataException {
+    MetaDataCache theCache = getCache();
+    Map<String, String> values;
+    if (theCache == null) {
+      values = fetch();
+    }
+    else {
+      values = theCache.get(getCacheKey(), new MetaDataCache.Fetcher() {
+        @Override
+        public Map<String, String> fetch() throws MetaDataException {
+          return HttpMetaDataLoader.this.fetch();
+        }
+      });
+    }
+    try {
+      for (MetaDataAttribute attribute: attributes) {
+        String sValue = values.get(attribute.getName());
+        if (sValue != null) {
+          Object oValue = attribute.getValueMapper().parse(sValue);
+          metaData.put(attribute.getName(), oValue);
+        }
+      }
+    } catch (ValueMapperException e) {
+      throw new MetaDataException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * The values of a page depend on the request and on the selected
+   * attributes, so loaders of the same page with different attributes
+   * don't share an entry.
+   */
+  private String getCacheKey() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(method).append(" ").append(url);
+    if (requestData != null) {
+      sb.append(" ").append(requestData);
+    }
+    for (MetaDataAttribute attribute : attributes) {
+      sb.append(" ").append(attribute.getName()).append("=").append(attribute.getQuery());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Retrieve the page and select the raw value for every attribute.
+   * 
+   * @return The attribute name to raw value mapping
+   * @throws MetaDataException
+   */
+  private Map<String, String> fetch() throws MetaDataException {
     Document doc;
     try {
   	  Connection conn = Jsoup.connect(url);
@@ -78,14 +149,14 @@ public class HttpMetaDataLoader implements MetaDataLoader {
       else {
         throw new MetaDataException("Unsupported HTML access method: " + method);
       }
+      Map<String, String> values = new LinkedHashMap<>();
       for (MetaDataAttribute attribute: attributes) {
         Elements elements = doc.select(attribute.getQuery());
         if (elements.size() > 0) {
-          String sValue = elements.get(0).text();
-          Object oValue = attribute.getValueMapper().parse(sValue);
-          metaData.put(attribute.getName(), oValue);
+          values.put(attribute.getName(), elements.get(0).text());
         }
       }
+      return values;
     } catch (UnknownHostException e) {
         URL theUrl;
         try {
@@ -97,8 +168,6 @@ public class HttpMetaDataLoader implements MetaDataLoader {
         }
     } catch (IOException e) {
         throw new MetaDataException(e.getMessage(), e);
-    } catch (ValueMapperException e) {
-      throw new MetaDataException(e.getMessage(), e);
     }
   }
 }
@@ -19,6 +19,16 @@ public class MetaData {
     metaData.put(key, value);
   }
 
+  /**
+   * Copy the values of another metaData object, without the values of its
+   * parent.
+   * 
+   * @param other
+   */
+  public void putAll(MetaData other) {
+    metaData.putAll(other.metaData);
+  }
+
   public Object get(Object key) {
     Object value = metaData.get(key);
     if (value == null && parent != null) {
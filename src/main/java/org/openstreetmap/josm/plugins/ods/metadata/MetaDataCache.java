@@ -0,0 +1,243 @@
+package org.openstreetmap.josm.plugins.ods.metadata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.plugins.Plugin;
+import org.openstreetmap.josm.plugins.ods.IoExecutors;
+import org.openstreetmap.josm.plugins.ods.ODS;
+
+/**
+ * Persistent cache for the raw metadata values of a metadata page.
+ * The values are kept in memory, and in a properties file per page in
+ * the plugin directory, so they survive a restart of Josm.
+ *
+ * An entry is stale when it is older than the time-to-live. A stale entry
+ * is still returned, but a refresh is started in the background. The
+ * refreshed values are used by the next request for the same page.
+ * An entry that is older than the maximum age is not returned before it
+ * has been refreshed. Hosts read their metadata only once per session, so
+ * the maximum age limits how old the metadata of a session can be.
+ *
+ * @author gertjan
+ *
+ */
+public class MetaDataCache {
+  private final static String TIMESTAMP = "timestamp";
+  private final static String VALUE_PREFIX = "value.";
+
+  private static MetaDataCache instance;
+
+  private final File directory;
+  private final long ttl;
+  private final long maxAge;
+  private final ExecutorService refreshExecutor;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Set<String> refreshing = Collections.newSetFromMap(
+      new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * @param directory The directory for the cache files
+   * @param ttl The time-to-live of an entry in milliseconds
+   * @param refreshExecutor The executor for background refreshes
+   */
+  public MetaDataCache(File directory, long ttl, ExecutorService refreshExecutor) {
+    this(directory, ttl, Long.MAX_VALUE, refreshExecutor);
+  }
+
+  /**
+   * @param directory The directory for the cache files
+   * @param ttl The time-to-live of an entry in milliseconds
+   * @param maxAge The maximum age of a stale entry in milliseconds
+   * @param refreshExecutor The executor for background refreshes
+   */
+  public MetaDataCache(File directory, long ttl, long maxAge, ExecutorService refreshExecutor) {
+    this.directory = directory;
+    this.ttl = ttl;
+    this.maxAge = maxAge;
+    this.refreshExecutor = refreshExecutor;
+  }
+
+  /**
+   * Get the cache in the plugin directory of the current module.
+   * The time-to-live is read from the openservices.metadata.ttl preference,
+   * in minutes, the maximum age from openservices.metadata.maxage, in hours.
+   *
+   * @return
+   */
+  public static synchronized MetaDataCache getInstance() {
+    if (instance == null) {
+      Plugin plugin = (Plugin) ODS.getModule();
+      long ttl = Main.pref.getInteger("openservices.metadata.ttl", 60) * 60000L;
+      long maxAge = Main.pref.getInteger("openservices.metadata.maxage", 24) * 3600000L;
+      ExecutorService executor = IoExecutors.newCachedExecutor("ODS metadata refresh");
+      instance = new MetaDataCache(new File(plugin.getPluginDir(), "metadata"), ttl,
+          maxAge, executor);
+    }
+    return instance;
+  }
+
+  /**
+   * Get the values for a key. If there is no entry for the key, the values
+   * are fetched and stored. If the entry is stale, the stale values are
+   * returned and a refresh is started. If the entry is older than the
+   * maximum age, the values are fetched first. The old values are only
+   * returned if that fails.
+   *
+   * @param key The key that identifies the metadata page
+   * @param fetcher Retrieves the values from the source
+   * @return The attribute name to raw value mapping
+   * @throws MetaDataException if there is no entry and the values could not
+   *     be fetched
+   */
+  public Map<String, String> get(String key, Fetcher fetcher) throws MetaDataException {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = read(key);
+      if (entry != null) {
+        entries.put(key, entry);
+      }
+    }
+    if (entry == null) {
+      Map<String, String> values = fetcher.fetch();
+      store(key, values);
+      return values;
+    }
+    long age = System.currentTimeMillis() - entry.timestamp;
+    if (age > maxAge) {
+      try {
+        Map<String, String> values = fetcher.fetch();
+        store(key, values);
+        return values;
+      } catch (MetaDataException e) {
+        Main.warn("Refresh of metadata failed, using old values: " + e.getMessage());
+        return entry.values;
+      }
+    }
+    if (age > ttl) {
+      refresh(key, fetcher);
+    }
+    return entry.values;
+  }
+
+  private void refresh(final String key, final Fetcher fetcher) {
+    if (!refreshing.add(key)) {
+      return;
+    }
+    refreshExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          store(key, fetcher.fetch());
+        } catch (MetaDataException e) {
+          Main.warn("Refresh of metadata failed: " + e.getMessage());
+        } finally {
+          refreshing.remove(key);
+        }
+      }
+    });
+  }
+
+  private void store(String key, Map<String, String> values) {
+    Entry entry = new Entry(System.currentTimeMillis(), values);
+    entries.put(key, entry);
+    try {
+      write(key, entry);
+    } catch (IOException e) {
+      Main.warn("Unable to write metadata cache: " + e.getMessage());
+    }
+  }
+
+  private Entry read(String key) {
+    File file = getFile(key);
+    if (!file.exists()) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+      long timestamp = Long.parseLong(properties.getProperty(TIMESTAMP));
+      Map<String, String> values = new LinkedHashMap<>();
+      for (String name : properties.stringPropertyNames()) {
+        if (name.startsWith(VALUE_PREFIX)) {
+          values.put(name.substring(VALUE_PREFIX.length()), properties.getProperty(name));
+        }
+      }
+      return new Entry(timestamp, values);
+    } catch (IOException | NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Write the entry to a temporary file first, so readers never see a
+   * partial file.
+   */
+  private void write(String key, Entry entry) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create cache directory " + directory);
+    }
+    Properties properties = new Properties();
+    properties.setProperty(TIMESTAMP, Long.toString(entry.timestamp));
+    for (Map.Entry<String, String> value : entry.values.entrySet()) {
+      properties.setProperty(VALUE_PREFIX + value.getKey(), value.getValue());
+    }
+    File file = getFile(key);
+    File tmpFile = File.createTempFile(file.getName(), ".tmp", directory);
+    try (OutputStream out = new FileOutputStream(tmpFile)) {
+      properties.store(out, key);
+    } catch (IOException e) {
+      tmpFile.delete();
+      throw e;
+    }
+    file.delete();
+    if (!tmpFile.renameTo(file)) {
+      tmpFile.delete();
+      throw new IOException("Unable to write cache file " + file);
+    }
+  }
+
+  private File getFile(String key) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-1");
+      byte[] hash = md.digest(key.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        sb.append(String.format("%02x", b));
+      }
+      return new File(directory, sb.append(".properties").toString());
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-1 is available on every Java platform
+      throw new RuntimeException(e);
+    }
+  }
+
+  public interface Fetcher {
+    Map<String, String> fetch() throws MetaDataException;
+  }
+
+  private static class Entry {
+    final long timestamp;
+    final Map<String, String> values;
+
+    public Entry(long timestamp, Map<String, String> values) {
+      this.timestamp = timestamp;
+      this.values = Collections.unmodifiableMap(values);
+    }
+  }
+}
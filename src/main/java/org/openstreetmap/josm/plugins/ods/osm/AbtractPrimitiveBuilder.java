@@ -182,16 +182,27 @@ public abstract class AbtractPrimitiveBuilder<T extends Entity> {
      */
     public Node buildNode(Coordinate coordinate, boolean merge) {
         LatLon latlon = new LatLon(coordinate.y, coordinate.x);
-        Node node = new Node(latlon);
+        NodeCache nodeCache = NodeCache.getSession(dataSet);
         if (merge) {
-            BBox bbox = new BBox(node);
-            List<Node> existingNodes = dataSet.searchNodes(bbox);
-            if (existingNodes.size() > 0) {
-                node = existingNodes.get(0);
-                return node;
+            // Use the node cache in a merge session, otherwise search the dataset
+            if (nodeCache != null) {
+                Node existingNode = nodeCache.get(latlon);
+                if (existingNode != null) {
+                    return existingNode;
+                }
+            }
+            else {
+                List<Node> existingNodes = dataSet.searchNodes(new BBox(latlon, latlon));
+                if (existingNodes.size() > 0) {
+                    return existingNodes.get(0);
+                }
             }
         }
+        Node node = new Node(latlon);
         dataSet.addPrimitive(node);
+        if (nodeCache != null) {
+            nodeCache.put(node);
+        }
         return node;
     }
 
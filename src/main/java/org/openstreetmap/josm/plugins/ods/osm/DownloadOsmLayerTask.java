@@ -2,7 +2,10 @@ package org.openstreetmap.josm.plugins.ods.osm;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 import javax.swing.JOptionPane;
@@ -17,6 +20,9 @@ import org.openstreetmap.josm.io.OsmServerLocationReader;
 import org.openstreetmap.josm.io.OsmServerReader;
 import org.openstreetmap.josm.io.OsmTransferException;
 import org.openstreetmap.josm.plugins.ods.DataLayer;
+import org.openstreetmap.josm.plugins.ods.DownloadMetrics;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Download;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Stage;
 import org.openstreetmap.josm.plugins.ods.DownloadTask;
 import org.openstreetmap.josm.plugins.ods.ODS;
 import org.openstreetmap.josm.plugins.ods.OdsWorkingSet;
@@ -33,6 +39,7 @@ import org.openstreetmap.josm.plugins.ods.jts.PolygonFilter;
 import org.openstreetmap.josm.tools.I18n;
 
 public class DownloadOsmLayerTask implements DownloadTask {
+    private final static String SOURCE = "osm";
     private static String overpassQuery = "(node($bbox);rel(bn)->.x;way($bbox);"
             + "node(w)->.x;rel(bw);)";
 
@@ -51,6 +58,12 @@ public class DownloadOsmLayerTask implements DownloadTask {
     private DataLayer dataLayer;
     private List<Analyzer> analyzers;
     private EntitySet newEntities;
+    // Metrics
+    private int primitiveCount = 0;
+    private int entityCount = 0;
+    private long mergeTime = 0;
+    private long buildTime = 0;
+    private final Map<Analyzer, Long> analyzerTimings = new LinkedHashMap<>();
 
     public DownloadOsmLayerTask(Boundary boundary) {
         super();
@@ -89,37 +102,52 @@ public class DownloadOsmLayerTask implements DownloadTask {
     }
 
     @Override
-    public Callable<Object> stage(String stage) {
-        switch (stage) {
-        case "prepare":
-            return new Callable<Object>() {
-                @Override
-                public Object call() throws Exception {
-                    switch (downloadSource) {
-                    case OSM:
-                        osmServerReader = new BoundingBoxDownloader(
-                                boundary.getBounds());
-                        break;
-                    case OVERPASS:
-                        String url = Overpass.getURL(overpassQuery, boundary);
-                        osmServerReader = new OsmServerLocationReader(url);
-                        break;
-                    }
-                    return null;
-                };
-            };
-        case "download":
-            return new DownloadStage();            
-        case "process":
-            return new ProcessStage();
-        default:
-            return null;
+    public Collection<Stage> schedule(Download download, Stage... dependencies) {
+        Stage prepare = download.add("prepare", SOURCE, new PrepareStage(), dependencies);
+        Stage downloadStage = download.addIo("download", SOURCE, new DownloadStage(), prepare);
+        return Collections.singletonList(download.add("process", SOURCE, new ProcessStage(), downloadStage));
+    }
+
+    /**
+     * Report the number of primitives and entities, and the timings of the
+     * merge, the entity building and the analyzers. The Osm API doesn't
+     * report the number of bytes read.
+     */
+    @Override
+    public void reportMetrics(DownloadMetrics metrics) {
+        metrics.count(SOURCE, "primitives", primitiveCount);
+        metrics.count(SOURCE, "entities", entityCount);
+        metrics.time(SOURCE, "merge", mergeTime);
+        metrics.time(SOURCE, "entity factory", buildTime);
+        for (Map.Entry<Analyzer, Long> entry : analyzerTimings.entrySet()) {
+            metrics.time(SOURCE, "analyzer " + entry.getKey().getClass().getSimpleName(),
+                entry.getValue());
         }
     }
 
     private void analyze() {
         for (Analyzer analyzer : analyzers) {
+            long start = System.nanoTime();
             analyzer.analyze(dataLayer, newEntities);
+            analyzerTimings.put(analyzer, System.nanoTime() - start);
+        }
+    }
+
+    class PrepareStage implements Callable<Object> {
+
+        @Override
+        public Object call() throws Exception {
+            switch (downloadSource) {
+            case OSM:
+                osmServerReader = new BoundingBoxDownloader(
+                        boundary.getBounds());
+                break;
+            case OVERPASS:
+                String url = Overpass.getURL(overpassQuery, boundary);
+                osmServerReader = new OsmServerLocationReader(url);
+                break;
+            }
+            return null;
         }
     }
 
@@ -133,10 +161,11 @@ public class DownloadOsmLayerTask implements DownloadTask {
                 dataSet = parseDataSet();
                 if (downloadSource == DownloadSource.OSM) {
                     PolygonFilter filter = new PolygonFilter(
-                            boundary.getPolygon());
+                            boundary.getPolygon(), getFilterMode());
                     dataSet = filter.filter(dataSet);
                 }
-                if (dataSet.allPrimitives().isEmpty()) {
+                primitiveCount = dataSet.allPrimitives().size();
+                if (primitiveCount == 0) {
                     cancelled = true;
                     message = I18n
                             .tr("The selected download area contains no OSM objects");
@@ -165,24 +194,45 @@ public class DownloadOsmLayerTask implements DownloadTask {
         private DataSet parseDataSet() throws OsmTransferException {
             return osmServerReader.parseOsm(NullProgressMonitor.INSTANCE);
         }
+
+        /**
+         * By default, the indexed filter is used. It replaces the members
+         * of kept relations outside the boundary by incomplete primitives,
+         * like the simple filter. The in_place filter is faster, but keeps
+         * these members complete, so it has to be switched on explicitly.
+         */
+        private PolygonFilter.Mode getFilterMode() {
+            String mode = Main.pref.get("openservices.osm.filter", "indexed");
+            try {
+                return PolygonFilter.Mode.valueOf(mode.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                Main.warn(I18n.tr("Unknown filter mode: {0}", mode));
+                return PolygonFilter.Mode.SIMPLE;
+            }
+        }
     }
 
     class ProcessStage implements Callable<Object> {
         public Object call() throws Exception {
+            long start = System.nanoTime();
             workingSet.odsOsmDataLayer.getOsmDataLayer().mergeFrom(dataSet);
+            mergeTime = System.nanoTime() - start;
 //            BuiltEnvironmentEntityBuilder builder = new BuiltEnvironmentEntityBuilder(
 //                    workingSet.internalDataLayer);
 //            builder.setEntityFactory(entityFactory);
             try {
                 EntityFactory<OsmPrimitive> entityFactory = 
                      ODS.getModule().getEntityFactory(OsmPrimitive.class, null);
+                start = System.nanoTime();
                 newEntities = new DefaultEntitySet();
                 for (OsmPrimitive primitive: dataSet.allPrimitives()) {
                     Entity entity = entityFactory.buildEntity(primitive, null);
                     if (entity != null) {
                         newEntities.add(entity);
+                        entityCount++;
                     }
                 }
+                buildTime = System.nanoTime() - start;
 //                builder.build();
 //                newEntities = builder.getNewEntities();
                 analyze();
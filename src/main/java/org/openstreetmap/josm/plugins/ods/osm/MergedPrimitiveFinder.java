@@ -0,0 +1,51 @@
+package org.openstreetmap.josm.plugins.ods.osm;
+
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+
+/**
+ * Find the primitives in a dataset that a detached dataset has been merged
+ * into. The merger gives new primitives a new id in the target dataset, or
+ * joins them with an equal primitive that was already there, so they can't
+ * be found by their id. Instead, the primitives near the original are
+ * searched for one with the same semantic attributes: the same tags, and
+ * the same position, nodes or members.
+ *
+ * @author gertjan
+ *
+ */
+public class MergedPrimitiveFinder {
+    private final DataSet dataSet;
+
+    public MergedPrimitiveFinder(DataSet dataSet) {
+        this.dataSet = dataSet;
+    }
+
+    /**
+     * @param primitive A primitive of the detached dataset
+     * @return The merged primitive, or null if there is no primitive with
+     *     the same semantic attributes
+     */
+    public OsmPrimitive find(OsmPrimitive primitive) {
+        List<? extends OsmPrimitive> candidates;
+        switch (primitive.getType()) {
+        case NODE:
+            candidates = dataSet.searchNodes(primitive.getBBox());
+            break;
+        case WAY:
+            candidates = dataSet.searchWays(primitive.getBBox());
+            break;
+        default:
+            candidates = dataSet.searchRelations(primitive.getBBox());
+            break;
+        }
+        for (OsmPrimitive candidate : candidates) {
+            if (!candidate.isDeleted() && candidate.hasEqualSemanticAttributes(primitive)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,149 @@
+package org.openstreetmap.josm.plugins.ods.osm;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+
+/**
+ * Cache to find existing nodes by their position while primitives are being
+ * added to a dataset. The positions are quantized to the 1e7 precision of
+ * OSM coordinates, and packed into a long. The cache is a open addressing
+ * hash map from this long to the node, so a lookup doesn't need a quadtree
+ * query on the dataset.
+ *
+ * A cache is only valid during a merge session. The session starts with
+ * {@link #beginSession(DataSet)}, which fills the cache with the nodes that
+ * are already in the dataset, and ends with {@link #endSession(DataSet)}.
+ * Nodes must be added to the cache with {@link #put(Node)} when they are
+ * added to the dataset during the session.
+ *
+ * @author gertjan
+ *
+ */
+public class NodeCache {
+    private final static double SCALE = 1e7;
+    private final static Map<DataSet, NodeCache> sessions = new WeakHashMap<>();
+
+    private long[] keys;
+    private Node[] nodes;
+    private int size = 0;
+
+    public NodeCache() {
+        this(1024);
+    }
+
+    public NodeCache(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        nodes = new Node[capacity];
+    }
+
+    /**
+     * Start a merge session for this dataset.
+     *
+     * @param dataSet
+     */
+    public static void beginSession(DataSet dataSet) {
+        Collection<Node> existingNodes = dataSet.getNodes();
+        NodeCache cache = new NodeCache(existingNodes.size());
+        for (Node node : existingNodes) {
+            if (!node.isDeleted() && node.getCoor() != null) {
+                cache.put(node);
+            }
+        }
+        synchronized (sessions) {
+            sessions.put(dataSet, cache);
+        }
+    }
+
+    public static void endSession(DataSet dataSet) {
+        synchronized (sessions) {
+            sessions.remove(dataSet);
+        }
+    }
+
+    /**
+     * Get the cache of the current merge session for this dataset.
+     *
+     * @param dataSet
+     * @return the cache, or null if there is no merge session for this dataset
+     */
+    public static NodeCache getSession(DataSet dataSet) {
+        synchronized (sessions) {
+            return sessions.get(dataSet);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Node get(LatLon latLon) {
+        long key = key(latLon);
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (nodes[i] != null) {
+            if (keys[i] == key) {
+                return nodes[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Add a node to the cache. If there already is a node at the same
+     * position, the cache is not changed.
+     *
+     * @param node
+     */
+    public void put(Node node) {
+        if (2 * (size + 1) > keys.length) {
+            resize();
+        }
+        insert(key(node.getCoor()), node);
+    }
+
+    private void insert(long key, Node node) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (nodes[i] != null) {
+            if (keys[i] == key) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        nodes[i] = node;
+        size++;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Node[] oldNodes = nodes;
+        keys = new long[oldKeys.length * 2];
+        nodes = new Node[oldNodes.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldNodes[i] != null) {
+                insert(oldKeys[i], oldNodes[i]);
+            }
+        }
+    }
+
+    private static long key(LatLon latLon) {
+        long lat = Math.round(latLon.lat() * SCALE);
+        long lon = Math.round(latLon.lon() * SCALE);
+        return (lat << 32) | (lon & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        // Mix the bits, because neighbouring nodes have similar keys
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
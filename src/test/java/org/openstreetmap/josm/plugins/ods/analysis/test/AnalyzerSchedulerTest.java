@@ -0,0 +1,178 @@
+package org.openstreetmap.josm.plugins.ods.analysis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.DataLayer;
+import org.openstreetmap.josm.plugins.ods.analysis.Analyzer;
+import org.openstreetmap.josm.plugins.ods.analysis.AnalyzerScheduler;
+import org.openstreetmap.josm.plugins.ods.analysis.EntityAspect;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.AddressNodeDistributor;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.AddressToBuildingMatcher;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.BlockAnalysis;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.BlockStoreImpl;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.BuildingCompletenessAnalyzer;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.BuildingSimplifier;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.CrossingBuildingAnalyzer;
+import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
+import org.openstreetmap.josm.plugins.ods.geotools.DownloadGtLayerTask;
+
+public class AnalyzerSchedulerTest {
+
+    /**
+     * The analyzers of the imported data layer. Only the address matcher
+     * and the completeness analysis run at the same time.
+     */
+    @Test
+    public void testImportStages() {
+        List<Analyzer> analyzers = DownloadGtLayerTask.createAnalyzers(
+            new BlockStoreImpl(), false, true);
+        List<List<Analyzer>> stages = new AnalyzerScheduler(analyzers).getStages();
+        assertEquals(4, stages.size());
+        assertEquals(Arrays.asList(BuildingSimplifier.class), classes(stages.get(0)));
+        assertEquals(Arrays.asList(CrossingBuildingAnalyzer.class), classes(stages.get(1)));
+        assertEquals(Arrays.asList(AddressToBuildingMatcher.class,
+            BuildingCompletenessAnalyzer.class), classes(stages.get(2)));
+        assertEquals(Arrays.asList(AddressNodeDistributor.class), classes(stages.get(3)));
+        checkStages(analyzers, stages);
+    }
+
+    /**
+     * The block analysis takes the place of the crossing building analysis.
+     */
+    @Test
+    public void testImportStagesWithBlocks() {
+        List<Analyzer> analyzers = DownloadGtLayerTask.createAnalyzers(
+            new BlockStoreImpl(), true, true);
+        List<List<Analyzer>> stages = new AnalyzerScheduler(analyzers).getStages();
+        assertEquals(Arrays.asList(BlockAnalysis.class), classes(stages.get(1)));
+        checkStages(analyzers, stages);
+    }
+
+    /**
+     * Random sets of aspects. Analyzers that conflict are never in the same
+     * stage, and keep their logical order.
+     */
+    @Test
+    public void testConflictsNeverShareStage() {
+        Random random = new Random(12345);
+        EntityAspect[] aspects = EntityAspect.values();
+        for (int run = 0; run < 1000; run++) {
+            int n = 1 + random.nextInt(8);
+            List<Analyzer> analyzers = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                Set<EntityAspect> reads = EnumSet.noneOf(EntityAspect.class);
+                Set<EntityAspect> writes = EnumSet.noneOf(EntityAspect.class);
+                for (EntityAspect aspect : aspects) {
+                    switch (random.nextInt(4)) {
+                    case 0:
+                        reads.add(aspect);
+                        break;
+                    case 1:
+                        writes.add(aspect);
+                        break;
+                    default:
+                        break;
+                    }
+                }
+                analyzers.add(new TestAnalyzer(reads, writes));
+            }
+            checkStages(analyzers, new AnalyzerScheduler(analyzers).getStages());
+        }
+    }
+
+    /**
+     * An analyzer that writes an aspect is never in the same stage as
+     * an analyzer that reads or writes it.
+     */
+    @Test
+    public void testReadWriteConflict() {
+        Analyzer reader = new TestAnalyzer(EnumSet.of(EntityAspect.BUILDING_GEOMETRY),
+            EnumSet.noneOf(EntityAspect.class));
+        Analyzer otherReader = new TestAnalyzer(EnumSet.of(EntityAspect.BUILDING_GEOMETRY),
+            EnumSet.of(EntityAspect.ADDRESS_STREET));
+        Analyzer writer = new TestAnalyzer(EnumSet.noneOf(EntityAspect.class),
+            EnumSet.of(EntityAspect.BUILDING_GEOMETRY));
+        List<List<Analyzer>> stages = new AnalyzerScheduler(
+            Arrays.asList(reader, otherReader, writer)).getStages();
+        assertEquals(2, stages.size());
+        assertEquals(Arrays.asList(reader, otherReader), stages.get(0));
+        assertEquals(Collections.singletonList(writer), stages.get(1));
+    }
+
+    /**
+     * Check that every analyzer is in exactly one stage, that no two
+     * analyzers in a stage conflict, and that an analyzer is in a later
+     * stage than every earlier analyzer it conflicts with.
+     */
+    private static void checkStages(List<Analyzer> analyzers, List<List<Analyzer>> stages) {
+        Map<Analyzer, Integer> levels = new IdentityHashMap<>();
+        for (int level = 0; level < stages.size(); level++) {
+            assertFalse(stages.get(level).isEmpty());
+            for (Analyzer analyzer : stages.get(level)) {
+                assertEquals(null, levels.put(analyzer, level));
+            }
+        }
+        assertEquals(analyzers.size(), levels.size());
+        for (int j = 0; j < analyzers.size(); j++) {
+            for (int i = 0; i < j; i++) {
+                Analyzer earlier = analyzers.get(i);
+                Analyzer later = analyzers.get(j);
+                if (conflicts(earlier, later)) {
+                    assertTrue(levels.get(earlier) < levels.get(later));
+                }
+            }
+        }
+    }
+
+    private static boolean conflicts(Analyzer a1, Analyzer a2) {
+        return !Collections.disjoint(a1.getWrites(), a2.getReads())
+            || !Collections.disjoint(a1.getWrites(), a2.getWrites())
+            || !Collections.disjoint(a1.getReads(), a2.getWrites());
+    }
+
+    private static List<Class<?>> classes(List<Analyzer> analyzers) {
+        List<Class<?>> classes = new ArrayList<>(analyzers.size());
+        for (Analyzer analyzer : analyzers) {
+            classes.add(analyzer.getClass());
+        }
+        return classes;
+    }
+
+    private static class TestAnalyzer implements Analyzer {
+        private final Set<EntityAspect> reads;
+        private final Set<EntityAspect> writes;
+
+        public TestAnalyzer(Set<EntityAspect> reads, Set<EntityAspect> writes) {
+            this.reads = reads;
+            this.writes = writes;
+        }
+
+        @Override
+        public void analyze(DataLayer dataLayer, EntitySet newEntities) {
+            // Nothing to analyze
+        }
+
+        @Override
+        public Set<EntityAspect> getReads() {
+            return reads;
+        }
+
+        @Override
+        public Set<EntityAspect> getWrites() {
+            return writes;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.openstreetmap.josm.plugins.ods.builtenvironment.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.AddressToBuildingMatcher;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.Building;
+import org.openstreetmap.josm.plugins.ods.entities.DefaultEntitySet;
+import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class AddressToBuildingMatcherTest {
+    private final static GeometryFactory factory = new GeometryFactory();
+    // Roughly the size of a row house in degrees
+    private final static double SIZE = 1e-4;
+
+    @Test
+    public void testMatchByGeometry() {
+        List<TestAddressNode> addresses = new ArrayList<>();
+        List<TestBuilding> buildings = new ArrayList<>();
+        EntitySet entities = createGrid(20, buildings, addresses);
+        new AddressToBuildingMatcher().analyze(null, entities);
+        for (int i = 0; i < addresses.size(); i++) {
+            assertSame(buildings.get(i), addresses.get(i).getBuilding());
+            assertEquals(1, buildings.get(i).getAddressNodes().size());
+        }
+    }
+
+    /**
+     * Compare the indexed matcher with the linear search it replaced.
+     * Disabled by default because it takes a while.
+     */
+    //@Test
+    public void benchmark() {
+        int n = 150; // 22500 buildings and addresses
+        List<TestAddressNode> addresses = new ArrayList<>();
+        List<TestBuilding> buildings = new ArrayList<>();
+        EntitySet entities = createGrid(n, buildings, addresses);
+        long start = System.currentTimeMillis();
+        for (TestAddressNode address : addresses) {
+            Iterator<Building> it = entities.<Building>getStore(Building.class).iterator();
+            while (it.hasNext()) {
+                Building building = it.next();
+                if (building.getGeometry().covers(address.getGeometry())) {
+                    break;
+                }
+            }
+        }
+        long linear = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        new AddressToBuildingMatcher().analyze(null, entities);
+        long indexed = System.currentTimeMillis() - start;
+        System.out.println(String.format("%d buildings. Linear search: %d ms. Indexed: %d ms",
+            n * n, linear, indexed));
+    }
+
+    private EntitySet createGrid(int n, List<TestBuilding> buildings, List<TestAddressNode> addresses) {
+        EntitySet entities = new DefaultEntitySet();
+        long id = 1;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double x = 5.0 + i * SIZE;
+                double y = 52.0 + j * SIZE;
+                TestBuilding building = new TestBuilding(id, createSquare(x, y));
+                TestAddressNode address = new TestAddressNode(id, factory.createPoint(
+                    new Coordinate(x + SIZE / 2, y + SIZE / 2)), null);
+                entities.add(building);
+                entities.add(address);
+                buildings.add(building);
+                addresses.add(address);
+                id++;
+            }
+        }
+        return entities;
+    }
+
+    private Polygon createSquare(double x, double y) {
+        Coordinate[] coords = new Coordinate[] {
+            new Coordinate(x, y),
+            new Coordinate(x + SIZE, y),
+            new Coordinate(x + SIZE, y + SIZE),
+            new Coordinate(x, y + SIZE),
+            new Coordinate(x, y)
+        };
+        return factory.createPolygon(factory.createLinearRing(coords), null);
+    }
+}
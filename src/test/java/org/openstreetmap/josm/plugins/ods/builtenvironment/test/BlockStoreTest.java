@@ -0,0 +1,130 @@
+package org.openstreetmap.josm.plugins.ods.builtenvironment.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.Block;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.BlockStatistics;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.BlockStoreImpl;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class BlockStoreTest {
+    private final GeometryFactory factory = new GeometryFactory();
+
+    /**
+     * Two rows of touching buildings. The buildings of each row are added
+     * in an order that creates separate blocks first, which must be merged
+     * when the gaps are filled.
+     */
+    @Test
+    public void testBlocks() {
+        BlockStoreImpl store = new BlockStoreImpl(1e-3);
+        TestBuilding[] row1 = new TestBuilding[10];
+        TestBuilding[] row2 = new TestBuilding[5];
+        long id = 1;
+        for (int i = 0; i < row1.length; i++) {
+            row1[i] = new TestBuilding(id++, square(i, 0));
+        }
+        for (int i = 0; i < row2.length; i++) {
+            row2[i] = new TestBuilding(id++, square(i, 5));
+        }
+        // Odd buildings first, so each of them starts its own block
+        for (int i = 1; i < row1.length; i += 2) {
+            store.addBuilding(row1[i]);
+        }
+        assertEquals(5, store.getStatistics().getBlockCount());
+        for (int i = 0; i < row1.length; i += 2) {
+            store.addBuilding(row1[i]);
+        }
+        for (TestBuilding building : row2) {
+            store.addBuilding(building);
+        }
+        assertNull(store.getBlock(new TestBuilding(id++, square(20, 20))));
+
+        Block block1 = store.getBlock(row1[0]);
+        Block block2 = store.getBlock(row2[0]);
+        assertNotSame(block1, block2);
+        for (TestBuilding building : row1) {
+            assertSame(block1, store.getBlock(building));
+        }
+        assertEquals(10, block1.size());
+        assertEquals(5, block2.size());
+        assertEquals(10.0, block1.getGeometry().getArea(), 1e-9);
+
+        // Neighbours are the adjacent buildings in the row
+        assertEquals(1, row1[0].getNeighbours().size());
+        assertEquals(2, row1[5].getNeighbours().size());
+        assertTrue(row1[5].getNeighbours().contains(row1[4]));
+        assertTrue(row1[5].getNeighbours().contains(row1[6]));
+
+        BlockStatistics statistics = store.getStatistics();
+        assertEquals(2, statistics.getBlockCount());
+        assertEquals(15, statistics.getBuildingCount());
+        assertEquals(10, statistics.getMaxBlockSize());
+        assertEquals(45 + 10, statistics.getPairCount());
+    }
+
+    /**
+     * A removed block leaves no trace. New buildings at the place of its
+     * buildings start new blocks, and merging blocks still works.
+     */
+    @Test
+    public void testRemove() {
+        BlockStoreImpl store = new BlockStoreImpl(1e-3);
+        TestBuilding[] row = new TestBuilding[6];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = new TestBuilding((long) i, square(i, 0));
+            store.addBuilding(row[i]);
+        }
+        Block block = store.getBlock(row[0]);
+        store.remove(block);
+        assertEquals(0, store.getStatistics().getBlockCount());
+        for (TestBuilding building : row) {
+            assertNull(store.getBlock(building));
+        }
+        TestBuilding left = new TestBuilding(10L, square(-1, 0));
+        TestBuilding right = new TestBuilding(11L, square(1, 0));
+        store.addBuilding(left);
+        store.addBuilding(right);
+        assertEquals(2, store.getStatistics().getBlockCount());
+        // Fill the gap, which merges the new blocks
+        TestBuilding middle = new TestBuilding(12L, square(0, 0));
+        store.addBuilding(middle);
+        assertEquals(1, store.getStatistics().getBlockCount());
+        assertSame(store.getBlock(left), store.getBlock(right));
+        assertEquals(3, store.getBlock(middle).size());
+    }
+
+    /**
+     * After a building has moved, new buildings are joined with it at its
+     * new place only. The store follows the geometry by itself.
+     */
+    @Test
+    public void testUpdateGeometry() {
+        BlockStoreImpl store = new BlockStoreImpl(1e-3);
+        TestBuilding building = new TestBuilding(1L, square(0, 0));
+        store.addBuilding(building);
+        building.setGeometry(square(10, 0));
+        TestBuilding oldNeighbour = new TestBuilding(2L, square(1, 0));
+        TestBuilding newNeighbour = new TestBuilding(3L, square(11, 0));
+        store.addBuilding(oldNeighbour);
+        store.addBuilding(newNeighbour);
+        assertNotSame(store.getBlock(building), store.getBlock(oldNeighbour));
+        assertSame(store.getBlock(building), store.getBlock(newNeighbour));
+    }
+
+    private Geometry square(double x, double y) {
+        return factory.createPolygon(factory.createLinearRing(new Coordinate[] {
+            new Coordinate(x, y), new Coordinate(x + 1, y),
+            new Coordinate(x + 1, y + 1), new Coordinate(x, y + 1),
+            new Coordinate(x, y)
+        }), null);
+    }
+}
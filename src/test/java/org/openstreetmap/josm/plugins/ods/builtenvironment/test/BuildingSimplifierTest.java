@@ -0,0 +1,102 @@
+package org.openstreetmap.josm.plugins.ods.builtenvironment.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.BuildingSimplifier;
+import org.openstreetmap.josm.plugins.ods.entities.DefaultEntitySet;
+import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
+import org.openstreetmap.josm.plugins.ods.issue.Issue;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class BuildingSimplifierTest {
+    private final static GeometryFactory factory = new GeometryFactory();
+    private final static double TOLERANCE = 0.3;
+    private final static int N = 200;
+
+    /**
+     * The parallel run gives the same geometries and the same issues, in
+     * the same order, as the serial run, whatever the chunk size.
+     */
+    @Test
+    public void testSameAsSerial() {
+        List<TestBuilding> expected = createBuildings();
+        BuildingSimplifier serial = new BuildingSimplifier(TOLERANCE);
+        serial.analyze(null, createEntitySet(expected));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunkSize : new int[] {1, 7, 64, N, N + 1}) {
+                List<TestBuilding> buildings = createBuildings();
+                BuildingSimplifier parallel = new BuildingSimplifier(TOLERANCE, pool, chunkSize);
+                parallel.analyze(null, createEntitySet(buildings));
+                for (int i = 0; i < N; i++) {
+                    Geometry geometry = buildings.get(i).getGeometry();
+                    assertTrue("Building " + i + ", chunk size " + chunkSize,
+                        expected.get(i).getGeometry().equalsExact(geometry));
+                }
+                assertEquals(messages(serial.getIssues()), messages(parallel.getIssues()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Irregular rings with many vertices, so most buildings are simplified.
+     * Every tenth building is a bow tie, which is invalid and left alone.
+     */
+    private static List<TestBuilding> createBuildings() {
+        Random random = new Random(7);
+        List<TestBuilding> buildings = new ArrayList<>(N);
+        for (int i = 0; i < N; i++) {
+            double x = (i % 20) * 50;
+            double y = (i / 20) * 50;
+            Geometry geometry;
+            if (i % 10 == 9) {
+                geometry = factory.createPolygon(new Coordinate[] {
+                    new Coordinate(x, y), new Coordinate(x + 10, y + 10),
+                    new Coordinate(x + 10, y), new Coordinate(x, y + 10),
+                    new Coordinate(x, y)});
+            }
+            else {
+                int n = 10 + random.nextInt(50);
+                Coordinate[] coords = new Coordinate[n + 1];
+                for (int j = 0; j < n; j++) {
+                    double angle = 2 * Math.PI * j / n;
+                    double radius = 10 + random.nextDouble();
+                    coords[j] = new Coordinate(x + radius * Math.cos(angle),
+                        y + radius * Math.sin(angle));
+                }
+                coords[n] = coords[0];
+                geometry = factory.createPolygon(coords);
+            }
+            buildings.add(new TestBuilding(Long.valueOf(i), geometry));
+        }
+        return buildings;
+    }
+
+    private static EntitySet createEntitySet(List<TestBuilding> buildings) {
+        EntitySet entitySet = new DefaultEntitySet();
+        for (TestBuilding building : buildings) {
+            entitySet.add(building);
+        }
+        return entitySet;
+    }
+
+    private static List<String> messages(List<Issue> issues) {
+        List<String> messages = new ArrayList<>(issues.size());
+        for (Issue issue : issues) {
+            messages.add(issue.getMessage());
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,139 @@
+package org.openstreetmap.josm.plugins.ods.builtenvironment.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.Building;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.CrossingBuildingAnalyzer;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.CrossingBuildingFixer;
+import org.openstreetmap.josm.plugins.ods.entities.DefaultEntitySet;
+import org.openstreetmap.josm.plugins.ods.entities.EntitySet;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class CrossingBuildingAnalyzerTest {
+    private final static GeometryFactory factory = new GeometryFactory();
+    // A power of two, so the gaps below are exact
+    private final static double TOLERANCE = 0.25;
+    // Gaps between the buildings of a pair. Negative gaps overlap.
+    private final static double[] GAPS = new double[] {
+        -0.125, 0, 0.125, TOLERANCE, 0.375, 2 * TOLERANCE
+    };
+
+    /**
+     * Pairs of buildings at gaps around the tolerance, including a gap of
+     * exactly the tolerance. The indexed analyzer fixes the same pairs as
+     * the all-pairs loop it replaced, with the same building first, and
+     * the resulting geometries are the same.
+     */
+    @Test
+    public void testSameAsAllPairs() {
+        List<TestBuilding> expected = createBuildings();
+        RecordingFixer allPairs = new RecordingFixer();
+        fixAllPairs(expected, allPairs);
+        List<TestBuilding> buildings = createBuildings();
+        RecordingFixer indexed = new RecordingFixer();
+        new CrossingBuildingAnalyzer(TOLERANCE, indexed).analyze(null,
+            createEntitySet(buildings));
+        assertEquals(allPairs.pairs, indexed.pairs);
+        for (int i = 0; i < buildings.size(); i++) {
+            assertTrue(buildings.get(i).toString(), expected.get(i).getGeometry()
+                .equalsExact(buildings.get(i).getGeometry()));
+        }
+        // The pairs up to exactly the tolerance are fixed, the others not
+        for (int i = 0; i < GAPS.length; i++) {
+            String pair = buildings.get(2 * i).getId() + "-" + buildings.get(2 * i + 1).getId();
+            String reversed = buildings.get(2 * i + 1).getId() + "-" + buildings.get(2 * i).getId();
+            boolean fixed = indexed.pairs.contains(pair) || indexed.pairs.contains(reversed);
+            assertEquals("Gap " + GAPS[i], GAPS[i] <= TOLERANCE, fixed);
+        }
+    }
+
+    /**
+     * The all-pairs loop of the analyzer before it used a spatial index.
+     */
+    private static void fixAllPairs(List<TestBuilding> buildings, CrossingBuildingFixer fixer) {
+        for (TestBuilding building1 : buildings) {
+            for (TestBuilding building2 : buildings) {
+                Comparable<Object> id1 = building1.getId();
+                if (id1.compareTo(building2.getId()) > 0 && building1.getGeometry()
+                        .isWithinDistance(building2.getGeometry(), TOLERANCE)) {
+                    fixer.setBuildings(building1, building2);
+                    fixer.fix();
+                }
+            }
+        }
+    }
+
+    /**
+     * A pair of buildings for every gap, side by side. The right building
+     * is lower than the left one, so its corners face the wall of the left
+     * building. The ids are shuffled, so the order of the ids differs from
+     * the order of the pairs.
+     */
+    private static List<TestBuilding> createBuildings() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 2 * GAPS.length; id++) {
+            ids.add(id);
+        }
+        Collections.shuffle(ids, new Random(5));
+        List<TestBuilding> buildings = new ArrayList<>();
+        for (int i = 0; i < GAPS.length; i++) {
+            double x = i * 100;
+            buildings.add(new TestBuilding(ids.get(2 * i), createRectangle(x, 0, x + 10, 10)));
+            double left = x + 10 + GAPS[i];
+            buildings.add(new TestBuilding(ids.get(2 * i + 1),
+                createRectangle(left, 2, left + 10, 8)));
+        }
+        return buildings;
+    }
+
+    private static Polygon createRectangle(double minX, double minY, double maxX, double maxY) {
+        return factory.createPolygon(new Coordinate[] {
+            new Coordinate(minX, minY), new Coordinate(maxX, minY),
+            new Coordinate(maxX, maxY), new Coordinate(minX, maxY),
+            new Coordinate(minX, minY)});
+    }
+
+    private static EntitySet createEntitySet(List<TestBuilding> buildings) {
+        EntitySet entitySet = new DefaultEntitySet();
+        for (TestBuilding building : buildings) {
+            entitySet.add(building);
+        }
+        return entitySet;
+    }
+
+    /**
+     * Fixer that records the pairs it fixes, as "id1-id2".
+     */
+    private static class RecordingFixer extends CrossingBuildingFixer {
+        final Set<String> pairs = new HashSet<>();
+        private String pair;
+
+        public RecordingFixer() {
+            super(TOLERANCE);
+        }
+
+        @Override
+        public void setBuildings(Building building1, Building building2) {
+            super.setBuildings(building1, building2);
+            pair = building1.getId() + "-" + building2.getId();
+        }
+
+        @Override
+        public void fix() {
+            assertTrue(pair, pairs.add(pair));
+            super.fix();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.openstreetmap.josm.plugins.ods.builtenvironment.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.Address;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.AddressNode;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.Building;
+import org.openstreetmap.josm.plugins.ods.entities.Entity;
+import org.openstreetmap.josm.plugins.ods.entities.GeometryListener;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Minimal AddressNode implementation for tests and benchmarks.
+ *
+ * @author gertjan
+ *
+ */
+public class TestAddressNode implements AddressNode {
+    private final Long id;
+    private final Object buildingRef;
+    private Point geometry;
+    private Building building;
+    private final List<GeometryListener> geometryListeners = new ArrayList<>(1);
+    private Collection<OsmPrimitive> primitives = Collections.emptyList();
+
+    public TestAddressNode(Long id, Point geometry, Object buildingRef) {
+        this.id = id;
+        this.geometry = geometry;
+        this.buildingRef = buildingRef;
+    }
+
+    @Override
+    public Class<? extends Entity> getType() {
+        return AddressNode.class;
+    }
+
+    @Override
+    public String getSource() {
+        return "test";
+    }
+
+    @Override
+    public boolean isInternal() {
+        return false;
+    }
+
+    @Override
+    public boolean isIncomplete() {
+        return false;
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return false;
+    }
+
+    @Override
+    public boolean hasReferenceId() {
+        return false;
+    }
+
+    @Override
+    public Object getReferenceId() {
+        return null;
+    }
+
+    @Override
+    public boolean hasGeometry() {
+        return geometry != null;
+    }
+
+    @Override
+    public void setGeometry(Geometry geometry) {
+        setGeometry((Point) geometry);
+    }
+
+    @Override
+    public void setGeometry(Point point) {
+        this.geometry = point;
+        fireGeometryChanged();
+    }
+
+    @Override
+    public Command updateGeometry(Point point) {
+        setGeometry(point);
+        return null;
+    }
+
+    @Override
+    public Point getGeometry() {
+        return geometry;
+    }
+
+    @Override
+    public void addGeometryListener(GeometryListener listener) {
+        geometryListeners.add(listener);
+    }
+
+    @Override
+    public void removeGeometryListener(GeometryListener listener) {
+        geometryListeners.remove(listener);
+    }
+
+    private void fireGeometryChanged() {
+        for (GeometryListener listener : geometryListeners) {
+            listener.geometryChanged(this);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Comparable<T> getId() {
+        return (Comparable<T>) (Comparable<?>) id;
+    }
+
+    @Override
+    public boolean hasName() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return null;
+    }
+
+    @Override
+    public Collection<OsmPrimitive> getPrimitives() {
+        return primitives;
+    }
+
+    @Override
+    public void setPrimitives(Collection<OsmPrimitive> primitives) {
+        this.primitives = primitives;
+    }
+
+    @Override
+    public Map<String, String> getOtherTags() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Address getAddress() {
+        return null;
+    }
+
+    @Override
+    public Object getBuildingRef() {
+        return buildingRef;
+    }
+
+    @Override
+    public void setBuilding(Building building) {
+        this.building = building;
+    }
+
+    @Override
+    public Building getBuilding() {
+        return building;
+    }
+}
@@ -0,0 +1,193 @@
+package org.openstreetmap.josm.plugins.ods.builtenvironment.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.Address;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.AddressNode;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.Building;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.City;
+import org.openstreetmap.josm.plugins.ods.entities.Entity;
+import org.openstreetmap.josm.plugins.ods.entities.GeometryListener;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Minimal Building implementation for tests and benchmarks.
+ *
+ * @author gertjan
+ *
+ */
+public class TestBuilding implements Building {
+    private final Long id;
+    private Geometry geometry;
+    private boolean incomplete = false;
+    private boolean internal = false;
+    private final Set<AddressNode> addressNodes = new HashSet<>();
+    private final Set<Building> neighbours = new HashSet<>();
+    private final List<GeometryListener> geometryListeners = new ArrayList<>(1);
+    private Collection<OsmPrimitive> primitives = Collections.emptyList();
+
+    public TestBuilding(Long id, Geometry geometry) {
+        this.id = id;
+        this.geometry = geometry;
+    }
+
+    @Override
+    public Class<? extends Entity> getType() {
+        return Building.class;
+    }
+
+    @Override
+    public String getSource() {
+        return "test";
+    }
+
+    public void setInternal(boolean internal) {
+        this.internal = internal;
+    }
+
+    @Override
+    public boolean isInternal() {
+        return internal;
+    }
+
+    @Override
+    public boolean isIncomplete() {
+        return incomplete;
+    }
+
+    @Override
+    public void setIncomplete(boolean incomplete) {
+        this.incomplete = incomplete;
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return false;
+    }
+
+    @Override
+    public boolean hasReferenceId() {
+        return false;
+    }
+
+    @Override
+    public Object getReferenceId() {
+        return null;
+    }
+
+    @Override
+    public boolean hasGeometry() {
+        return geometry != null;
+    }
+
+    @Override
+    public void setGeometry(Geometry geometry) {
+        this.geometry = geometry;
+        fireGeometryChanged();
+    }
+
+    @Override
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    @Override
+    public void addGeometryListener(GeometryListener listener) {
+        geometryListeners.add(listener);
+    }
+
+    @Override
+    public void removeGeometryListener(GeometryListener listener) {
+        geometryListeners.remove(listener);
+    }
+
+    private void fireGeometryChanged() {
+        for (GeometryListener listener : geometryListeners) {
+            listener.geometryChanged(this);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Comparable<T> getId() {
+        return (Comparable<T>) (Comparable<?>) id;
+    }
+
+    @Override
+    public boolean hasName() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return null;
+    }
+
+    @Override
+    public Collection<OsmPrimitive> getPrimitives() {
+        return primitives;
+    }
+
+    @Override
+    public void setPrimitives(Collection<OsmPrimitive> primitives) {
+        this.primitives = primitives;
+    }
+
+    @Override
+    public Map<String, String> getOtherTags() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public City getCity() {
+        return null;
+    }
+
+    @Override
+    public String getBuildingType() {
+        return "yes";
+    }
+
+    @Override
+    public Address getAddress() {
+        return null;
+    }
+
+    @Override
+    public Set<AddressNode> getAddressNodes() {
+        return addressNodes;
+    }
+
+    @Override
+    public Set<Building> getNeighbours() {
+        return neighbours;
+    }
+
+    @Override
+    public void addNeighbour(Building building) {
+        neighbours.add(building);
+    }
+
+    @Override
+    public boolean isUnderConstruction() {
+        return false;
+    }
+
+    @Override
+    public String getStartDate() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "Building " + id;
+    }
+}
@@ -0,0 +1,88 @@
+package org.openstreetmap.josm.plugins.ods.crs.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.crs.FastPathCRSTransformFactory;
+import org.openstreetmap.josm.plugins.ods.crs.JTSCoordinateTransform;
+import org.openstreetmap.josm.plugins.ods.crs.JTSCoordinateTransformFactory;
+import org.openstreetmap.josm.plugins.ods.crs.Proj4jCRSTransformFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Transform the same points from many threads at the same time and check
+ * that the results are the same as the single threaded results.
+ * The transforms are created by the factories directly, so the proj4j
+ * transform is tested regardless of the fast path setting.
+ * 
+ * @author gertjan
+ *
+ */
+public class CRSUtilConcurrencyTest {
+    private final static GeometryFactory factory = new GeometryFactory();
+    private final static int THREADS = 8;
+    private final static int POINTS = 10000;
+    private final static Long RD_NEW = 28992L;
+    private final static Long WGS84 = 4326L;
+
+    @Test
+    public void testConcurrentProj4jTransform() throws Exception {
+        testConcurrentTransform(new Proj4jCRSTransformFactory());
+    }
+
+    @Test
+    public void testConcurrentFastPathTransform() throws Exception {
+        testConcurrentTransform(new FastPathCRSTransformFactory(
+            new Proj4jCRSTransformFactory()));
+    }
+
+    private void testConcurrentTransform(JTSCoordinateTransformFactory ctFactory)
+            throws Exception {
+        final JTSCoordinateTransform transform = ctFactory.createJTSCoordinateTransform(
+            RD_NEW, WGS84, 10000000.0);
+        final List<Point> points = new ArrayList<>(POINTS);
+        for (int i = 0; i < POINTS; i++) {
+            points.add(factory.createPoint(new Coordinate(
+                100000 + i * 10.0, 400000 + i * 15.0)));
+        }
+        final List<Geometry> expected = new ArrayList<>(POINTS);
+        for (Point point : points) {
+            expected.add(transform.transform(point));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<Geometry>>> futures = new ArrayList<>(THREADS);
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(new Callable<List<Geometry>>() {
+                    @Override
+                    public List<Geometry> call() throws Exception {
+                        List<Geometry> result = new ArrayList<>(POINTS);
+                        for (Point point : points) {
+                            result.add(transform.transform(point));
+                        }
+                        return result;
+                    }
+                }));
+            }
+            for (Future<List<Geometry>> future : futures) {
+                List<Geometry> result = future.get();
+                for (int i = 0; i < POINTS; i++) {
+                    assertEquals(expected.get(i).getCoordinate(), result.get(i).getCoordinate());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
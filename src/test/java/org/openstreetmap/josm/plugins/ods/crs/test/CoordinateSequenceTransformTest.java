@@ -0,0 +1,83 @@
+package org.openstreetmap.josm.plugins.ods.crs.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.crs.JTSCoordinateTransform;
+import org.openstreetmap.josm.plugins.ods.crs.Proj4jCRSTransformFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.impl.CoordinateArraySequence;
+
+public class CoordinateSequenceTransformTest {
+    private final static Long RD_NEW = 28992L;
+    private final static Long WGS84 = 4326L;
+
+    @Test
+    public void testSequenceEqualsCoordinates() {
+        JTSCoordinateTransform transform = new Proj4jCRSTransformFactory()
+            .createJTSCoordinateTransform(RD_NEW, WGS84, 1e7);
+        CoordinateSequence sequence = createSequence(1000);
+        CoordinateSequence result = transform.transform(sequence);
+        assertEquals(sequence.size(), result.size());
+        for (int i = 0; i < sequence.size(); i++) {
+            Coordinate expected = transform.transform(sequence.getCoordinate(i));
+            assertEquals(expected.x, result.getX(i), 0.0);
+            assertEquals(expected.y, result.getY(i), 0.0);
+        }
+    }
+
+    /**
+     * Compare the per-coordinate transformation with the bulk
+     * transformation of a sequence for 1M vertices.
+     * Disabled by default because it takes a while.
+     */
+    //@Test
+    public void benchmark() {
+        int n = 1000000;
+        JTSCoordinateTransform transform = new Proj4jCRSTransformFactory()
+            .createJTSCoordinateTransform(RD_NEW, WGS84, 1e7);
+        CoordinateSequence sequence = createSequence(n);
+        Coordinate[] coords = sequence.toCoordinateArray();
+        // Warm up
+        transform.transform(coords);
+        transform.transform(sequence);
+
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        transform.transform(coords);
+        long coordTime = System.nanoTime() - start;
+        long coordBytes = allocatedBytes() - bytes;
+
+        bytes = allocatedBytes();
+        start = System.nanoTime();
+        transform.transform(sequence);
+        long sequenceTime = System.nanoTime() - start;
+        long sequenceBytes = allocatedBytes() - bytes;
+
+        System.out.println(String.format("%d vertices. Per coordinate: %d ms, %d bytes/vertex. " +
+            "Sequence: %d ms, %d bytes/vertex", n,
+            coordTime / 1000000, coordBytes / n, sequenceTime / 1000000, sequenceBytes / n));
+    }
+
+    private static CoordinateSequence createSequence(int n) {
+        Coordinate[] coords = new Coordinate[n];
+        for (int i = 0; i < n; i++) {
+            // Spread the points over the Netherlands
+            coords[i] = new Coordinate(13000 + (i % 1000) * 265.0, 306000 + (i / 1000 % 1000) * 300.0);
+        }
+        return new CoordinateArraySequence(coords);
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
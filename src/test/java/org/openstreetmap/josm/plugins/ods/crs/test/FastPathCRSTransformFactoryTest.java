@@ -0,0 +1,80 @@
+package org.openstreetmap.josm.plugins.ods.crs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.crs.FastPathCRSTransformFactory;
+import org.openstreetmap.josm.plugins.ods.crs.JTSCoordinateTransform;
+import org.openstreetmap.josm.plugins.ods.crs.Proj4jCRSTransformFactory;
+import org.openstreetmap.josm.plugins.ods.crs.RDNewToWgs84Transform;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Compare the transforms of the fast path factory with proj4j, at the
+ * precision that is used for Osm coordinates.
+ *
+ * @author gertjan
+ *
+ */
+public class FastPathCRSTransformFactoryTest {
+    private final static Long RD_NEW = 28992L;
+    private final static Long WGS84 = 4326L;
+    private final static Long ETRS89 = 4258L;
+    private final static double SCALE = 10000000.0;
+    // One unit of the Osm precision model
+    private final static double MAX_ERROR = 1 / SCALE;
+    private final static GeometryFactory geometryFactory = new GeometryFactory();
+
+    /**
+     * Only RD-New to WGS84 takes the fast path.
+     */
+    @Test
+    public void testFastPathSelection() {
+        FastPathCRSTransformFactory factory = new FastPathCRSTransformFactory(
+            new Proj4jCRSTransformFactory());
+        assertTrue(factory.createJTSCoordinateTransform(RD_NEW, WGS84, SCALE)
+            instanceof RDNewToWgs84Transform);
+        assertFalse(factory.createJTSCoordinateTransform(WGS84, RD_NEW, SCALE)
+            instanceof RDNewToWgs84Transform);
+        assertFalse(factory.createJTSCoordinateTransform(RD_NEW, ETRS89, SCALE)
+            instanceof RDNewToWgs84Transform);
+    }
+
+    /**
+     * Random building outlines all over the Netherlands. After rounding to
+     * the Osm precision, every vertex is at most one unit away from the
+     * proj4j result.
+     */
+    @Test
+    public void testAccuracy() {
+        JTSCoordinateTransform exact = new Proj4jCRSTransformFactory()
+            .createJTSCoordinateTransform(RD_NEW, WGS84, SCALE);
+        JTSCoordinateTransform fast = new FastPathCRSTransformFactory(
+            new Proj4jCRSTransformFactory()).createJTSCoordinateTransform(RD_NEW, WGS84, SCALE);
+        Random random = new Random(2);
+        double maxError = 0;
+        for (int i = 0; i < 10000; i++) {
+            double x = -7000 + random.nextDouble() * 307000;
+            double y = 289000 + random.nextDouble() * 340000;
+            Polygon polygon = geometryFactory.createPolygon(new Coordinate[] {
+                new Coordinate(x, y), new Coordinate(x + 10, y),
+                new Coordinate(x + 10, y + 12), new Coordinate(x, y + 12),
+                new Coordinate(x, y)});
+            Coordinate[] expected = exact.transform(polygon).getCoordinates();
+            Coordinate[] actual = fast.transform(polygon).getCoordinates();
+            assertEquals(expected.length, actual.length);
+            for (int j = 0; j < expected.length; j++) {
+                maxError = Math.max(maxError, Math.abs(expected[j].x - actual[j].x));
+                maxError = Math.max(maxError, Math.abs(expected[j].y - actual[j].y));
+            }
+        }
+        assertTrue("Maximum error " + maxError, maxError <= MAX_ERROR * 1.001);
+    }
+}
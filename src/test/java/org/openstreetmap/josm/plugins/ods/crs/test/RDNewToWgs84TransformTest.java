@@ -0,0 +1,78 @@
+package org.openstreetmap.josm.plugins.ods.crs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.crs.JTSCoordinateTransform;
+import org.openstreetmap.josm.plugins.ods.crs.Proj4jCRSTransformFactory;
+import org.openstreetmap.josm.plugins.ods.crs.RDNewToWgs84Transform;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.geom.impl.CoordinateArraySequence;
+
+public class RDNewToWgs84TransformTest {
+    private final static Long RD_NEW = 28992L;
+    private final static Long WGS84 = 4326L;
+
+    @Test
+    public void testAccuracy() {
+        JTSCoordinateTransform exact = new Proj4jCRSTransformFactory()
+            .createJTSCoordinateTransform(RD_NEW, WGS84);
+        RDNewToWgs84Transform fast = new RDNewToWgs84Transform(exact, new PrecisionModel());
+        Random random = new Random(1);
+        double maxError = 0;
+        for (int i = 0; i < 100000; i++) {
+            Coordinate coord = new Coordinate(-7000 + random.nextDouble() * 307000,
+                289000 + random.nextDouble() * 340000);
+            Coordinate expected = exact.transform(coord);
+            Coordinate actual = fast.transform(coord);
+            maxError = Math.max(maxError, Math.abs(expected.x - actual.x));
+            maxError = Math.max(maxError, Math.abs(expected.y - actual.y));
+        }
+        assertTrue("Maximum error " + maxError, maxError < RDNewToWgs84Transform.MAX_ERROR);
+    }
+
+    @Test
+    public void testOutsideDomain() {
+        JTSCoordinateTransform exact = new Proj4jCRSTransformFactory()
+            .createJTSCoordinateTransform(RD_NEW, WGS84);
+        RDNewToWgs84Transform fast = new RDNewToWgs84Transform(exact, new PrecisionModel());
+        Coordinate coord = new Coordinate(400000, 700000);
+        assertEquals(exact.transform(coord), fast.transform(coord));
+    }
+
+    /**
+     * Compare the throughput of the fast path with proj4j for 1M vertices.
+     * Disabled by default because it takes a while.
+     */
+    //@Test
+    public void benchmark() {
+        int n = 1000000;
+        JTSCoordinateTransform exact = new Proj4jCRSTransformFactory()
+            .createJTSCoordinateTransform(RD_NEW, WGS84, 1e7);
+        RDNewToWgs84Transform fast = new RDNewToWgs84Transform(new Proj4jCRSTransformFactory()
+            .createJTSCoordinateTransform(RD_NEW, WGS84), new PrecisionModel(1e7));
+        Coordinate[] coords = new Coordinate[n];
+        for (int i = 0; i < n; i++) {
+            coords[i] = new Coordinate(13000 + (i % 1000) * 265.0, 306000 + (i / 1000 % 1000) * 300.0);
+        }
+        CoordinateSequence sequence = new CoordinateArraySequence(coords);
+        // Warm up
+        exact.transform(sequence);
+        fast.transform(sequence);
+
+        long start = System.nanoTime();
+        exact.transform(sequence);
+        long exactTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        fast.transform(sequence);
+        long fastTime = System.nanoTime() - start;
+        System.out.println(String.format("%d vertices. Proj4j: %d ms. Fast path: %d ms",
+            n, exactTime / 1000000, fastTime / 1000000));
+    }
+}
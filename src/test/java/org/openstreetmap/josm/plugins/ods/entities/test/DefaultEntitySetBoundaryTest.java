@@ -0,0 +1,52 @@
+package org.openstreetmap.josm.plugins.ods.entities.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.entities.DefaultEntitySet;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class DefaultEntitySetBoundaryTest {
+    private final GeometryFactory factory = new GeometryFactory();
+
+    @Test
+    public void testBoundary() {
+        DefaultEntitySet entitySet = new DefaultEntitySet();
+        assertNull(entitySet.getBoundary());
+        assertFalse(entitySet.boundaryCovers(rectangle(0, 0, 1, 1)));
+
+        entitySet.extendBoundary(rectangle(0, 0, 10, 10));
+        entitySet.extendBoundary(rectangle(10, 0, 20, 10));
+        // Downloading the same area again doesn't change the boundary
+        entitySet.extendBoundary(rectangle(2, 2, 8, 8));
+        assertEquals(200.0, entitySet.getBoundary().getArea(), 1e-9);
+        assertEquals(1, entitySet.getBoundary().getNumGeometries());
+
+        // Covered by one download area
+        assertTrue(entitySet.boundaryCovers(rectangle(1, 1, 2, 2)));
+        // Covered by the union of both download areas
+        assertTrue(entitySet.boundaryCovers(rectangle(9, 1, 11, 2)));
+        // Partly outside
+        assertFalse(entitySet.boundaryCovers(rectangle(19, 9, 21, 11)));
+
+        // The prepared boundary must be updated after an extension
+        assertFalse(entitySet.boundaryCovers(rectangle(5, 9, 15, 11)));
+        entitySet.extendBoundary(rectangle(0, 10, 20, 20));
+        assertTrue(entitySet.boundaryCovers(rectangle(5, 9, 15, 11)));
+        assertEquals(400.0, entitySet.getBoundary().getArea(), 1e-9);
+    }
+
+    private Polygon rectangle(double minX, double minY, double maxX, double maxY) {
+        return factory.createPolygon(factory.createLinearRing(new Coordinate[] {
+            new Coordinate(minX, minY), new Coordinate(maxX, minY),
+            new Coordinate(maxX, maxY), new Coordinate(minX, maxY),
+            new Coordinate(minX, minY)
+        }), null);
+    }
+}
@@ -0,0 +1,78 @@
+package org.openstreetmap.josm.plugins.ods.entities.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.Building;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.test.TestBuilding;
+import org.openstreetmap.josm.plugins.ods.entities.EntityStore;
+import org.openstreetmap.josm.plugins.ods.entities.LongEntityStore;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class EntityStoreSpatialIndexTest {
+    private final GeometryFactory factory = new GeometryFactory();
+
+    @Test
+    public void testDefaultStore() {
+        testStore(new EntityStore<Building>());
+    }
+
+    @Test
+    public void testLongStore() {
+        testStore(new LongEntityStore<Building>(16));
+    }
+
+    private void testStore(EntityStore<Building> store) {
+        // A 10 x 10 grid of 1 x 1 squares, at distance 2 from each other
+        TestBuilding[][] grid = new TestBuilding[10][10];
+        long id = 0;
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                grid[i][j] = new TestBuilding(id++, square(2 * i, 2 * j));
+                store.add(grid[i][j]);
+            }
+        }
+        // Entities added before and after enabling the index must be found
+        store.enableSpatialIndex();
+        assertTrue(store.hasSpatialIndex());
+        TestBuilding extra = new TestBuilding(id++, square(100, 100));
+        store.add(extra);
+
+        List<Building> result = store.query(new Envelope(1.5, 4.5, 1.5, 2.5));
+        assertEquals(2, result.size());
+        result = store.query(new Envelope(99, 102, 99, 102));
+        assertEquals(1, result.size());
+        assertSame(extra, result.get(0));
+
+        // Move buildings, added before and after enabling the index, and
+        // check that the index follows without being told
+        extra.setGeometry(square(-10, -10));
+        assertEquals(0, store.query(new Envelope(99, 102, 99, 102)).size());
+        assertSame(extra, store.query(new Envelope(-10, -9, -10, -9)).get(0));
+        grid[9][9].setGeometry(square(200, 200));
+        assertEquals(0, store.query(new Envelope(18, 19, 18, 19)).size());
+        assertSame(grid[9][9], store.query(new Envelope(200, 201, 200, 201)).get(0));
+
+        store.remove(grid[0][0]);
+        assertEquals(0, store.query(new Envelope(0, 1, 0, 1)).size());
+        // A removed building is no longer followed
+        grid[0][0].setGeometry(square(300, 300));
+        assertEquals(0, store.query(new Envelope(299, 302, 299, 302)).size());
+    }
+
+    private Geometry square(double x, double y) {
+        return factory.createPolygon(factory.createLinearRing(new Coordinate[] {
+            new Coordinate(x, y), new Coordinate(x + 1, y),
+            new Coordinate(x + 1, y + 1), new Coordinate(x, y + 1),
+            new Coordinate(x, y)
+        }), null);
+    }
+}
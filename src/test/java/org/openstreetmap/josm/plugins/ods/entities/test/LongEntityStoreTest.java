@@ -0,0 +1,164 @@
+package org.openstreetmap.josm.plugins.ods.entities.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.Building;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.Street;
+import org.openstreetmap.josm.plugins.ods.builtenvironment.test.TestBuilding;
+import org.openstreetmap.josm.plugins.ods.entities.DefaultEntitySet;
+import org.openstreetmap.josm.plugins.ods.entities.EntityStore;
+import org.openstreetmap.josm.plugins.ods.entities.LongEntityStore;
+
+public class LongEntityStoreTest {
+
+    @After
+    public void tearDown() {
+        // Don't leak the registration into other tests
+        DefaultEntitySet.unregisterLongIdType(Building.class);
+    }
+
+    @Test
+    public void testAddGetRemove() {
+        EntityStore<Building> store = new LongEntityStore<>(16);
+        List<TestBuilding> buildings = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            TestBuilding building = new TestBuilding(id, null);
+            buildings.add(building);
+            assertTrue(store.add(building));
+        }
+        assertFalse(store.add(new TestBuilding(500L, null)));
+        for (TestBuilding building : buildings) {
+            assertSame(building, store.get(building.getId()));
+        }
+        for (int i = 0; i < buildings.size(); i += 2) {
+            store.remove(buildings.get(i));
+        }
+        for (int i = 0; i < buildings.size(); i++) {
+            TestBuilding building = buildings.get(i);
+            if (i % 2 == 0) {
+                assertNull(store.get(building.getId()));
+            }
+            else {
+                assertSame(building, store.get(building.getId()));
+            }
+        }
+        Set<Building> iterated = new HashSet<>();
+        Iterator<Building> it = store.iterator();
+        while (it.hasNext()) {
+            iterated.add(it.next());
+        }
+        assertEquals(500, iterated.size());
+    }
+
+    /**
+     * Random adds and removes, with ids that collide in the table. The long
+     * store behaves the same as the default store.
+     */
+    @Test
+    public void testSameAsDefaultStore() {
+        EntityStore<Building> store = new EntityStore<>();
+        EntityStore<Building> longStore = new LongEntityStore<>(16);
+        Map<Long, TestBuilding> buildings = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            // Multiples of a large power of two end up in the same slots
+            long id = (random.nextInt(2000) - 1000) * (1L << 40);
+            TestBuilding building = buildings.get(id);
+            if (building == null) {
+                building = new TestBuilding(id, null);
+                buildings.put(id, building);
+            }
+            if (random.nextInt(3) == 0) {
+                store.remove(building);
+                longStore.remove(building);
+            }
+            else {
+                assertEquals(store.add(building), longStore.add(building));
+            }
+        }
+        for (Long id : buildings.keySet()) {
+            assertSame(store.get(id), longStore.get(id));
+        }
+        assertEquals(toSet(store), toSet(longStore));
+    }
+
+    /**
+     * The entity set creates a long store for a registered type only.
+     */
+    @Test
+    public void testRegisteredType() {
+        DefaultEntitySet.registerLongIdType(Building.class);
+        DefaultEntitySet entitySet = new DefaultEntitySet();
+        assertTrue(entitySet.getStore(Building.class) instanceof LongEntityStore);
+        assertFalse(entitySet.getStore(Street.class) instanceof LongEntityStore);
+        TestBuilding building = new TestBuilding(42L, null);
+        assertTrue(entitySet.add(building));
+        assertSame(building, entitySet.getStore(Building.class).get(42L));
+    }
+
+    /**
+     * Compare the heap footprint of the default store with the footprint
+     * of the long store, for 500k entities.
+     * Disabled by default, because the result depends on the garbage collector.
+     */
+    //@Test
+    public void footprint() {
+        int n = 500000;
+        List<TestBuilding> buildings = new ArrayList<>(n);
+        for (long id = 0; id < n; id++) {
+            buildings.add(new TestBuilding(id, null));
+        }
+        long base = usedMemory();
+        EntityStore<Building> store = new EntityStore<>();
+        for (TestBuilding building : buildings) {
+            store.add(building);
+        }
+        long defaultStore = usedMemory() - base;
+        // Keep the store reachable until it has been measured
+        assertSame(buildings.get(0), store.get(0L));
+        store = null;
+
+        base = usedMemory();
+        EntityStore<Building> longStore = new LongEntityStore<>();
+        for (TestBuilding building : buildings) {
+            longStore.add(building);
+        }
+        long longIdStore = usedMemory() - base;
+        System.out.println(String.format("%d entities. Default store: %d bytes/entity. " +
+            "Long store: %d bytes/entity", n, defaultStore / n, longIdStore / n));
+        assertSame(buildings.get(0), longStore.get(0L));
+        assertTrue(longIdStore < defaultStore);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Set<Building> toSet(EntityStore<Building> store) {
+        Set<Building> set = new HashSet<>();
+        Iterator<Building> it = store.iterator();
+        while (it.hasNext()) {
+            assertTrue(set.add(it.next()));
+        }
+        return set;
+    }
+}
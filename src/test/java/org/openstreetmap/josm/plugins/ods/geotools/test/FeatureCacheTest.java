@@ -0,0 +1,180 @@
+package org.openstreetmap.josm.plugins.ods.geotools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.plugins.ods.geotools.FeatureCache;
+import org.openstreetmap.josm.plugins.ods.geotools.FeatureCache.Tile;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class FeatureCacheTest {
+    private final static long DAY = 86400000L;
+    private final static GeometryFactory geometryFactory = new GeometryFactory();
+
+    private File directory;
+    private SimpleFeatureType featureType;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("cache").toFile();
+        featureType = DataUtilities.createType("test",
+            "id:Integer,name:String,code:java.lang.Long,area:Double,height:java.lang.Float,"
+            + "active:Boolean,floors:java.lang.Short,date:java.util.Date,"
+            + "price:java.math.BigDecimal,geom:Polygon");
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    /**
+     * Every attribute type survives a write and a read.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        FeatureCache cache = new FeatureCache(directory, Long.MAX_VALUE, Long.MAX_VALUE);
+        Tile tile = new Tile(512, 5200);
+        SimpleFeature feature = createFeature(1, "\u00e9\u00e9n");
+        SimpleFeature empty = new SimpleFeatureBuilder(featureType).buildFeature("test.2");
+        cache.write("host", featureType, tile, null, "v1", Arrays.asList(feature, empty));
+        List<SimpleFeature> features = cache.read("host", featureType, tile, null, "v1");
+        assertEquals(2, features.size());
+        SimpleFeature result = features.get(0);
+        assertEquals("test.1", result.getID());
+        for (int i = 0; i < featureType.getAttributeCount(); i++) {
+            Object expected = feature.getAttribute(i);
+            if (expected instanceof Geometry) {
+                assertEquals(0, ((Geometry) expected).compareTo(result.getAttribute(i)));
+            }
+            else {
+                assertEquals(expected, result.getAttribute(i));
+            }
+        }
+        assertEquals("test.2", features.get(1).getID());
+        assertEquals(Collections.nCopies(featureType.getAttributeCount(), null),
+            features.get(1).getAttributes());
+        assertEquals(0, directory.listFiles()[0].listFiles()[0]
+            .listFiles(new TmpFilter()).length);
+    }
+
+    /**
+     * A cache file of another version, another tile or another filter is
+     * not used.
+     */
+    @Test
+    public void testMiss() throws Exception {
+        FeatureCache cache = new FeatureCache(directory, Long.MAX_VALUE, Long.MAX_VALUE);
+        Tile tile = new Tile(512, 5200);
+        cache.write("host", featureType, tile, null, "v1",
+            Collections.singletonList(createFeature(1, "a")));
+        assertNull(cache.read("host", featureType, tile, null, "v2"));
+        assertNull(cache.read("host", featureType, new Tile(513, 5200), null, "v1"));
+        assertNull(cache.read("host", featureType, tile, Filter.EXCLUDE, "v1"));
+        assertNotNull(cache.read("host", featureType, new Tile(512, 5200), null, "v1"));
+    }
+
+    /**
+     * Bounds are covered by the tiles of the grid they touch, regardless
+     * of where the bounds start.
+     */
+    @Test
+    public void testTiles() {
+        List<Tile> tiles = FeatureCache.getTiles(new Bounds(52.001, 5.001, 52.019, 5.009));
+        assertEquals(Arrays.asList(new Tile(500, 5200), new Tile(500, 5201)), tiles);
+        Bounds bounds = FeatureCache.getBounds(tiles);
+        assertEquals(52.0, bounds.getMinLat(), 1e-9);
+        assertEquals(5.0, bounds.getMinLon(), 1e-9);
+        assertEquals(52.02, bounds.getMaxLat(), 1e-9);
+        assertEquals(5.01, bounds.getMaxLon(), 1e-9);
+    }
+
+    /**
+     * Files older than the maximum age are removed, and the least recently
+     * used files are removed when the cache is too large.
+     */
+    @Test
+    public void testEvict() throws Exception {
+        FeatureCache cache = new FeatureCache(directory, Long.MAX_VALUE, Long.MAX_VALUE);
+        List<SimpleFeature> features = Collections.singletonList(createFeature(1, "a"));
+        Tile[] tiles = new Tile[] {new Tile(0, 0), new Tile(0, 1), new Tile(0, 2)};
+        for (Tile tile : tiles) {
+            cache.write("host", featureType, tile, null, "v1", features);
+        }
+        File[] files = directory.listFiles()[0].listFiles()[0].listFiles();
+        assertEquals(3, files.length);
+        long fileSize = files[0].length();
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            file.setLastModified(now - 2 * DAY);
+        }
+        // Reading a tile marks it as recently used
+        cache.read("host", featureType, tiles[1], null, "v1");
+
+        new FeatureCache(directory, fileSize * 2, 3 * DAY).evict();
+        assertEquals(2, countFiles());
+        new FeatureCache(directory, Long.MAX_VALUE, DAY).evict();
+        assertEquals(1, countFiles());
+        assertNotNull(cache.read("host", featureType, tiles[1], null, "v1"));
+    }
+
+    private int countFiles() {
+        return directory.listFiles()[0].listFiles()[0].listFiles().length;
+    }
+
+    private SimpleFeature createFeature(int id, String name) {
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+        builder.add(id);
+        builder.add(name);
+        builder.add(Long.valueOf(1234567890123L));
+        builder.add(Double.valueOf(12.5));
+        builder.add(Float.valueOf(3.25f));
+        builder.add(Boolean.TRUE);
+        builder.add(Short.valueOf((short) 3));
+        builder.add(new Date(1400000000000L));
+        builder.add(new BigDecimal("123.45"));
+        builder.add(geometryFactory.createPolygon(new Coordinate[] {
+            new Coordinate(0, 0), new Coordinate(10, 0), new Coordinate(10, 10),
+            new Coordinate(0, 0)}));
+        return builder.buildFeature("test." + id);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static class TmpFilter implements FileFilter {
+        @Override
+        public boolean accept(File file) {
+            return file.getName().endsWith(".tmp");
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.openstreetmap.josm.plugins.ods.geotools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Download;
+import org.openstreetmap.josm.plugins.ods.geotools.FeatureStream;
+
+/**
+ * The download and build stages of streaming mode, on a scheduler with a
+ * single thread. The producer blocks on the small stream long before it
+ * has written all features, so this only finishes if the consumer doesn't
+ * wait for the thread of the producer.
+ *
+ * @author gertjan
+ *
+ */
+public class FeatureStreamTest {
+    private final static int FEATURE_COUNT = 10000;
+    private final static int CAPACITY = 10;
+
+    /**
+     * All features arrive, in order.
+     */
+    @Test(timeout = 10000)
+    public void testStream() throws Exception {
+        final FeatureStream stream = new FeatureStream(CAPACITY);
+        final List<SimpleFeature> taken = new ArrayList<>();
+        Producer producer = new Producer(stream);
+        run(producer, new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try {
+                    SimpleFeature feature;
+                    while ((feature = stream.take()) != null) {
+                        taken.add(feature);
+                    }
+                } finally {
+                    stream.stop();
+                }
+                return null;
+            }
+        });
+        assertEquals(producer.features, taken);
+        assertFalse(producer.refused.get());
+    }
+
+    /**
+     * A consumer that throws stops the stream. The producer doesn't block
+     * forever, but learns that its features are refused.
+     */
+    @Test(timeout = 10000)
+    public void testFailingConsumer() throws Exception {
+        final FeatureStream stream = new FeatureStream(CAPACITY);
+        Producer producer = new Producer(stream);
+        Download download = run(producer, new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try {
+                    stream.take();
+                    throw new IllegalStateException("failed");
+                } finally {
+                    stream.stop();
+                }
+            }
+        });
+        assertTrue(producer.refused.get());
+        assertTrue(stream.isStopped());
+        assertEquals(1, download.getExceptions().size());
+    }
+
+    private static Download run(Producer producer, Callable<?> consumer)
+            throws InterruptedException {
+        DownloadScheduler scheduler = new DownloadScheduler(1);
+        Download download = scheduler.newDownload();
+        download.addIo("download", "test", producer);
+        download.addConsumer("build", "test", consumer);
+        download.start();
+        download.await();
+        return download;
+    }
+
+    private static class Producer implements Callable<Object> {
+        private final FeatureStream stream;
+        final List<SimpleFeature> features = new ArrayList<>(FEATURE_COUNT);
+        final AtomicBoolean refused = new AtomicBoolean(false);
+
+        public Producer(FeatureStream stream) throws Exception {
+            this.stream = stream;
+            SimpleFeatureType featureType = DataUtilities.createType("test", "id:Integer");
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+            for (int i = 0; i < FEATURE_COUNT; i++) {
+                builder.add(i);
+                features.add(builder.buildFeature("test." + i));
+            }
+        }
+
+        @Override
+        public Object call() throws InterruptedException {
+            try {
+                for (SimpleFeature feature : features) {
+                    if (!stream.put(feature)) {
+                        refused.set(true);
+                        return null;
+                    }
+                }
+            } finally {
+                stream.close();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.openstreetmap.josm.plugins.ods.geotools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+import org.openstreetmap.josm.plugins.ods.geotools.PagedFeatureReader;
+
+public class PagedFeatureReaderTest {
+
+    @Test
+    public void testPartialLastPage() throws Exception {
+        checkPaging(2500, 1000, 3);
+    }
+
+    @Test
+    public void testFullLastPage() throws Exception {
+        checkPaging(2000, 1000, 3);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        checkPaging(0, 1000, 2);
+    }
+
+    /**
+     * The pages are sorted on the key attribute.
+     */
+    @Test
+    public void testSortBy() throws Exception {
+        StubFeatureSource stub = new StubFeatureSource(1500);
+        checkPaging(stub, 1000, 2);
+        SortBy sortBy = stub.sortBy[0];
+        assertEquals("id", sortBy.getPropertyName().getPropertyName());
+        assertEquals(SortOrder.ASCENDING, sortBy.getSortOrder());
+    }
+
+    /**
+     * No page is requested beyond the number of matching features.
+     */
+    @Test
+    public void testNumberMatched() throws Exception {
+        StubFeatureSource stub = new StubFeatureSource(2000);
+        checkPaging(stub, 1000, 3);
+        assertEquals(2, stub.requests.get());
+    }
+
+    /**
+     * A server that ignores startIndex returns the first page for every
+     * request. The reader stops, without duplicates, and reports that the
+     * result is truncated.
+     */
+    @Test(timeout = 10000)
+    public void testStartIndexIgnored() throws Exception {
+        StubFeatureSource stub = new StubFeatureSource(2500);
+        stub.ignoreStartIndex = true;
+        stub.reportCount = false;
+        PagedFeatureReader reader = read(stub, 1000, 2, new ArrayList<SimpleFeature>());
+        assertEquals(1000, stub.returned);
+        assertTrue(reader.isTruncated());
+    }
+
+    /**
+     * A page that is shorter than expected ends the download, but the
+     * result is truncated if features are missing.
+     */
+    @Test
+    public void testShortPage() throws Exception {
+        StubFeatureSource stub = new StubFeatureSource(2500);
+        stub.maxFeatures = 800;
+        PagedFeatureReader reader = read(stub, 1000, 2, new ArrayList<SimpleFeature>());
+        assertEquals(800, stub.returned);
+        assertTrue(reader.isTruncated());
+    }
+
+    private void checkPaging(int count, int pageSize, int maxRequests) throws Exception {
+        checkPaging(new StubFeatureSource(count), pageSize, maxRequests);
+    }
+
+    private void checkPaging(StubFeatureSource stub, int pageSize, int maxRequests) throws Exception {
+        List<SimpleFeature> result = new ArrayList<>();
+        PagedFeatureReader reader = read(stub, pageSize, maxRequests, result);
+        int count = stub.features.size();
+        assertEquals(count, result.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, result.get(i).getAttribute("id"));
+        }
+        assertFalse(reader.isTruncated());
+        assertTrue(stub.maxConcurrent.get() <= maxRequests);
+    }
+
+    private PagedFeatureReader read(StubFeatureSource stub, int pageSize, int maxRequests,
+            List<SimpleFeature> result) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(maxRequests);
+        try {
+            PagedFeatureReader reader = new PagedFeatureReader(stub.getProxy(),
+                Filter.INCLUDE, pageSize, maxRequests, "id", executor);
+            while (reader.hasNext()) {
+                List<SimpleFeature> page = reader.nextPage();
+                result.addAll(page);
+                stub.returned += page.size();
+            }
+            return reader;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stub for a WFS feature source that supports startIndex and count.
+     */
+    private static class StubFeatureSource implements InvocationHandler {
+        private final SimpleFeatureType featureType;
+        final List<SimpleFeature> features = new ArrayList<>();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final AtomicInteger requests = new AtomicInteger();
+        boolean ignoreStartIndex = false;
+        boolean reportCount = true;
+        int maxFeatures = Integer.MAX_VALUE;
+        int returned = 0;
+        volatile SortBy[] sortBy;
+
+        public StubFeatureSource(int count) throws Exception {
+            featureType = DataUtilities.createType("test", "id:Integer");
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+            for (int i = 0; i < count; i++) {
+                builder.add(i);
+                features.add(builder.buildFeature("test." + i));
+            }
+        }
+
+        public SimpleFeatureSource getProxy() {
+            return (SimpleFeatureSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {SimpleFeatureSource.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "getSchema":
+                return featureType;
+            case "getFeatures":
+                return getPage((Query) args[0]);
+            case "getCount":
+                return (reportCount ? features.size() : -1);
+            case "getQueryCapabilities":
+                return new QueryCapabilities() {
+                    @Override
+                    public boolean supportsSorting(SortBy[] sortAttributes) {
+                        return true;
+                    }
+                };
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+        private ListFeatureCollection getPage(Query query) throws InterruptedException {
+            requests.incrementAndGet();
+            sortBy = query.getSortBy();
+            int n = active.incrementAndGet();
+            synchronized (maxConcurrent) {
+                maxConcurrent.set(Math.max(n, maxConcurrent.get()));
+            }
+            try {
+                // Simulate network latency
+                Thread.sleep(10);
+                int start = (ignoreStartIndex ? 0
+                    : Math.min(query.getStartIndex(), features.size()));
+                int count = Math.min(query.getMaxFeatures(), maxFeatures);
+                int end = Math.min(start + count, features.size());
+                return new ListFeatureCollection(featureType, features.subList(start, end));
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+}
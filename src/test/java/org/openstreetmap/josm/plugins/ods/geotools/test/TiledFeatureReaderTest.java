@@ -0,0 +1,194 @@
+package org.openstreetmap.josm.plugins.ods.geotools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.openstreetmap.josm.plugins.ods.IdFactory;
+import org.openstreetmap.josm.plugins.ods.geotools.TiledFeatureReader;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class TiledFeatureReaderTest {
+    private final static GeometryFactory geometryFactory = new GeometryFactory();
+    private final static ReferencedEnvelope BBOX = new ReferencedEnvelope(0, 16, 0, 16, null);
+
+    /**
+     * A grid of points, many of them on the edges between tiles. Full tiles
+     * are split, and the points on the edges are returned only once.
+     */
+    @Test(timeout = 10000)
+    public void testSplit() throws Exception {
+        StubFeatureSource stub = new StubFeatureSource();
+        for (int x = 0; x <= 16; x += 2) {
+            for (int y = 0; y <= 16; y += 2) {
+                stub.addPoint(x, y);
+            }
+        }
+        TiledFeatureReader reader = read(stub, 10, true);
+        assertEquals(stub.features.size(), stub.returned.size());
+        assertEquals(stub.features.size(), new HashSet<>(stub.returned).size());
+        assertTrue(reader.getTileCount() > 1);
+        assertFalse(reader.isTruncated());
+    }
+
+    /**
+     * Features without key attribute are told apart by their feature id.
+     * The points lie on the edges of the tiles after the first split.
+     */
+    @Test(timeout = 10000)
+    public void testMissingKey() throws Exception {
+        StubFeatureSource stub = new StubFeatureSource();
+        for (int x = 0; x <= 16; x += 4) {
+            stub.addPoint(x, 8);
+        }
+        TiledFeatureReader reader = read(stub, 4, false);
+        assertEquals(stub.features.size(), stub.returned.size());
+        assertEquals(5, reader.getTileCount());
+    }
+
+    /**
+     * More features at one location than a tile can hold. The splitting
+     * stops, and the result is truncated.
+     */
+    @Test(timeout = 10000)
+    public void testMaxTiles() throws Exception {
+        StubFeatureSource stub = new StubFeatureSource();
+        for (int i = 0; i < 20; i++) {
+            stub.addPoint(5, 5);
+        }
+        TiledFeatureReader reader = read(stub, 10, true);
+        assertTrue(reader.isTruncated());
+        assertTrue(reader.getTileCount() <= 256);
+    }
+
+    /**
+     * A feature source that reports a huge count. The initial grid is
+     * capped, so no more than 256 tiles are requested, and none of them
+     * is split.
+     */
+    @Test(timeout = 10000)
+    public void testLargeCount() throws Exception {
+        StubFeatureSource stub = new StubFeatureSource();
+        stub.count = 1000000;
+        for (int x = 0; x <= 16; x += 2) {
+            for (int y = 0; y <= 16; y += 2) {
+                stub.addPoint(x, y);
+            }
+        }
+        TiledFeatureReader reader = read(stub, 10, true);
+        assertEquals(256, reader.getTileCount());
+        assertEquals(stub.features.size(), stub.returned.size());
+        assertFalse(reader.isTruncated());
+    }
+
+    private TiledFeatureReader read(StubFeatureSource stub, int maxFeatures, final boolean keyed)
+            throws Exception {
+        IdFactory idFactory = new IdFactory() {
+            @Override
+            public SimpleFeatureType getFeatureType() {
+                return null;
+            }
+
+            @Override
+            public Serializable getId(SimpleFeature feature) {
+                return (keyed ? (Serializable) feature.getAttribute("id") : null);
+            }
+
+            @Override
+            public String getKeyAttribute() {
+                return (keyed ? "id" : null);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            TiledFeatureReader reader = new TiledFeatureReader(stub.getProxy(), "geom",
+                null, maxFeatures, idFactory, executor);
+            reader.start(BBOX);
+            while (reader.hasNext()) {
+                for (SimpleFeature feature : reader.nextTile()) {
+                    stub.returned.add(feature.getID());
+                }
+            }
+            return reader;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stub for a feature source that evaluates the bbox filter and returns
+     * at most maxFeatures features per request. By default it doesn't
+     * report a count, so the reader starts with a single tile.
+     */
+    private static class StubFeatureSource implements InvocationHandler {
+        private final SimpleFeatureType featureType;
+        private final SimpleFeatureBuilder builder;
+        final List<SimpleFeature> features = new ArrayList<>();
+        final List<String> returned = new ArrayList<>();
+        int count = -1;
+
+        public StubFeatureSource() throws Exception {
+            featureType = DataUtilities.createType("test", "id:Integer,geom:Point");
+            builder = new SimpleFeatureBuilder(featureType);
+        }
+
+        public void addPoint(double x, double y) {
+            int id = features.size();
+            builder.add(id);
+            builder.add(geometryFactory.createPoint(new Coordinate(x, y)));
+            features.add(builder.buildFeature("test." + id));
+        }
+
+        public SimpleFeatureSource getProxy() {
+            return (SimpleFeatureSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {SimpleFeatureSource.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "getSchema":
+                return featureType;
+            case "getCount":
+                return count;
+            case "getFeatures":
+                return getTile((Query) args[0]);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+        private ListFeatureCollection getTile(Query query) {
+            List<SimpleFeature> result = new ArrayList<>();
+            for (SimpleFeature feature : features) {
+                if (result.size() >= query.getMaxFeatures()) {
+                    break;
+                }
+                if (query.getFilter().evaluate(feature)) {
+                    result.add(feature);
+                }
+            }
+            return new ListFeatureCollection(featureType, result);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package org.openstreetmap.josm.plugins.ods.geotools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFinder;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.data.wfs.WFSDataStoreFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+import org.openstreetmap.josm.plugins.ods.geotools.PagedFeatureReader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Page through a stub WFS 1.1 server that serves canned GML. The stub
+ * honours startIndex and maxFeatures, so it shows whether the start index
+ * of a page really reaches the server.
+ *
+ * @author gertjan
+ *
+ */
+public class WfsPagingTest {
+    private final static int FEATURE_COUNT = 25;
+    private final static int PAGE_SIZE = 10;
+    private final static String NAMESPACES = "xmlns:wfs=\"http://www.opengis.net/wfs\""
+        + " xmlns:ows=\"http://www.opengis.net/ows\""
+        + " xmlns:ogc=\"http://www.opengis.net/ogc\""
+        + " xmlns:gml=\"http://www.opengis.net/gml\""
+        + " xmlns:xlink=\"http://www.w3.org/1999/xlink\""
+        + " xmlns:test=\"http://test.example\"";
+
+    private final static String SCHEMA = "<xsd:schema"
+        + " xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\""
+        + " xmlns:gml=\"http://www.opengis.net/gml\""
+        + " xmlns:test=\"http://test.example\""
+        + " targetNamespace=\"http://test.example\""
+        + " elementFormDefault=\"qualified\">"
+        + "<xsd:import namespace=\"http://www.opengis.net/gml\""
+        + " schemaLocation=\"http://schemas.opengis.net/gml/3.1.1/base/gml.xsd\"/>"
+        + "<xsd:complexType name=\"pandType\"><xsd:complexContent>"
+        + "<xsd:extension base=\"gml:AbstractFeatureType\"><xsd:sequence>"
+        + "<xsd:element name=\"id\" type=\"xsd:int\" minOccurs=\"0\"/>"
+        + "<xsd:element name=\"geom\" type=\"gml:PointPropertyType\" minOccurs=\"0\"/>"
+        + "</xsd:sequence></xsd:extension></xsd:complexContent></xsd:complexType>"
+        + "<xsd:element name=\"pand\" type=\"test:pandType\""
+        + " substitutionGroup=\"gml:_Feature\"/>"
+        + "</xsd:schema>";
+
+    private HttpServer server;
+    private StubWfs wfs;
+    private DataStore dataStore;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        String url = "http://localhost:" + server.getAddress().getPort() + "/wfs";
+        wfs = new StubWfs(url);
+        server.createContext("/wfs", wfs);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(WFSDataStoreFactory.URL.key,
+            new URL(url + "?REQUEST=GetCapabilities&SERVICE=WFS&VERSION=1.1.0"));
+        parameters.put(WFSDataStoreFactory.PROTOCOL.key, Boolean.FALSE);
+        parameters.put(WFSDataStoreFactory.TIMEOUT.key, 10000);
+        dataStore = DataStoreFinder.getDataStore(parameters);
+    }
+
+    @After
+    public void tearDown() {
+        if (dataStore != null) {
+            dataStore.dispose();
+        }
+        server.stop(0);
+    }
+
+    /**
+     * The features come from the server, and are never returned twice.
+     * If the feature source claims to support a start index, the start
+     * index reaches the server and all features are read. Otherwise the
+     * server returns the first page every time, and the reader reports
+     * that the result is truncated.
+     */
+    @Test(timeout = 30000)
+    public void testPaging() throws Exception {
+        SimpleFeatureSource featureSource = dataStore.getFeatureSource(
+            dataStore.getTypeNames()[0]);
+        boolean supported = PagedFeatureReader.isSupported(featureSource);
+        List<SimpleFeature> result = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        PagedFeatureReader reader;
+        try {
+            reader = new PagedFeatureReader(featureSource, Filter.INCLUDE, PAGE_SIZE, 2,
+                null, executor);
+            while (reader.hasNext()) {
+                result.addAll(reader.nextPage());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(wfs.getFeatureRequests.get() > 0);
+        assertFalse(result.isEmpty());
+        HashSet<String> ids = new HashSet<>();
+        for (SimpleFeature feature : result) {
+            assertTrue(ids.add(feature.getID()));
+        }
+        if (supported) {
+            assertTrue(wfs.startIndexSent);
+        }
+        if (wfs.startIndexSent) {
+            assertEquals(FEATURE_COUNT, result.size());
+            assertFalse(reader.isTruncated());
+        }
+        else {
+            assertEquals(PAGE_SIZE, result.size());
+            assertTrue(reader.isTruncated());
+        }
+    }
+
+    /**
+     * Stub for a WFS 1.1 server with a single feature type of points.
+     */
+    private static class StubWfs implements HttpHandler {
+        private final String url;
+        final AtomicInteger getFeatureRequests = new AtomicInteger();
+        volatile boolean startIndexSent = false;
+
+        public StubWfs(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            Map<String, String> parameters = parse(exchange.getRequestURI().getRawQuery());
+            String request = parameters.get("REQUEST");
+            String body;
+            if ("GetCapabilities".equalsIgnoreCase(request)) {
+                body = getCapabilities();
+            }
+            else if ("DescribeFeatureType".equalsIgnoreCase(request)) {
+                body = SCHEMA;
+            }
+            else if ("GetFeature".equalsIgnoreCase(request)) {
+                body = getFeature(parameters);
+            }
+            else {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        private String getFeature(Map<String, String> parameters) {
+            if ("hits".equalsIgnoreCase(parameters.get("RESULTTYPE"))) {
+                return "<wfs:FeatureCollection " + NAMESPACES + " numberOfFeatures=\""
+                    + FEATURE_COUNT + "\" timeStamp=\"2014-05-01T00:00:00\"/>";
+            }
+            getFeatureRequests.incrementAndGet();
+            int start = 0;
+            String startIndex = parameters.get("STARTINDEX");
+            if (startIndex != null) {
+                startIndexSent = true;
+                start = Integer.parseInt(startIndex);
+            }
+            int count = FEATURE_COUNT;
+            String maxFeatures = parameters.get("MAXFEATURES");
+            if (maxFeatures == null) {
+                maxFeatures = parameters.get("COUNT");
+            }
+            if (maxFeatures != null) {
+                count = Integer.parseInt(maxFeatures);
+            }
+            int end = Math.min(start + count, FEATURE_COUNT);
+            StringBuilder sb = new StringBuilder();
+            sb.append("<wfs:FeatureCollection ").append(NAMESPACES)
+                .append(" numberOfFeatures=\"").append(Math.max(0, end - start))
+                .append("\" timeStamp=\"2014-05-01T00:00:00\">");
+            for (int i = start; i < end; i++) {
+                sb.append("<gml:featureMember><test:pand gml:id=\"pand.").append(i)
+                    .append("\"><test:id>").append(i).append("</test:id>")
+                    .append("<test:geom><gml:Point srsName=\"urn:x-ogc:def:crs:EPSG:4326\">")
+                    .append("<gml:pos>52.0 5.").append(i).append("</gml:pos>")
+                    .append("</gml:Point></test:geom></test:pand></gml:featureMember>");
+            }
+            sb.append("</wfs:FeatureCollection>");
+            return sb.toString();
+        }
+
+        private String getCapabilities() {
+            String get = "<ows:DCP><ows:HTTP><ows:Get xlink:href=\"" + url
+                + "?\"/></ows:HTTP></ows:DCP>";
+            return "<wfs:WFS_Capabilities version=\"1.1.0\" " + NAMESPACES + ">"
+                + "<ows:ServiceIdentification><ows:Title>Stub</ows:Title>"
+                + "<ows:ServiceType>WFS</ows:ServiceType>"
+                + "<ows:ServiceTypeVersion>1.1.0</ows:ServiceTypeVersion>"
+                + "</ows:ServiceIdentification>"
+                + "<ows:OperationsMetadata>"
+                + "<ows:Operation name=\"GetCapabilities\">" + get + "</ows:Operation>"
+                + "<ows:Operation name=\"DescribeFeatureType\">" + get
+                + "<ows:Parameter name=\"outputFormat\">"
+                + "<ows:Value>text/xml; subtype=gml/3.1.1</ows:Value></ows:Parameter>"
+                + "</ows:Operation>"
+                + "<ows:Operation name=\"GetFeature\">" + get
+                + "<ows:Parameter name=\"resultType\"><ows:Value>results</ows:Value>"
+                + "<ows:Value>hits</ows:Value></ows:Parameter>"
+                + "<ows:Parameter name=\"outputFormat\">"
+                + "<ows:Value>text/xml; subtype=gml/3.1.1</ows:Value></ows:Parameter>"
+                + "</ows:Operation>"
+                + "</ows:OperationsMetadata>"
+                + "<wfs:FeatureTypeList><wfs:FeatureType>"
+                + "<wfs:Name>test:pand</wfs:Name><wfs:Title>pand</wfs:Title>"
+                + "<wfs:DefaultSRS>urn:x-ogc:def:crs:EPSG:4326</wfs:DefaultSRS>"
+                + "<wfs:OutputFormats><wfs:Format>text/xml; subtype=gml/3.1.1</wfs:Format>"
+                + "</wfs:OutputFormats>"
+                + "<ows:WGS84BoundingBox><ows:LowerCorner>5.0 52.0</ows:LowerCorner>"
+                + "<ows:UpperCorner>6.0 53.0</ows:UpperCorner></ows:WGS84BoundingBox>"
+                + "</wfs:FeatureType></wfs:FeatureTypeList>"
+                + "<ogc:Filter_Capabilities><ogc:Spatial_Capabilities>"
+                + "<ogc:GeometryOperands><ogc:GeometryOperand>gml:Envelope</ogc:GeometryOperand>"
+                + "</ogc:GeometryOperands><ogc:SpatialOperators>"
+                + "<ogc:SpatialOperator name=\"BBOX\"/></ogc:SpatialOperators>"
+                + "</ogc:Spatial_Capabilities><ogc:Scalar_Capabilities>"
+                + "<ogc:LogicalOperators/><ogc:ComparisonOperators>"
+                + "<ogc:ComparisonOperator>EqualTo</ogc:ComparisonOperator>"
+                + "</ogc:ComparisonOperators></ogc:Scalar_Capabilities>"
+                + "<ogc:Id_Capabilities><ogc:FID/></ogc:Id_Capabilities>"
+                + "</ogc:Filter_Capabilities>"
+                + "</wfs:WFS_Capabilities>";
+        }
+
+        private static Map<String, String> parse(String query) throws IOException {
+            Map<String, String> parameters = new HashMap<>();
+            if (query == null) {
+                return parameters;
+            }
+            for (String pair : query.split("&")) {
+                int i = pair.indexOf('=');
+                if (i > 0) {
+                    parameters.put(pair.substring(0, i).toUpperCase(),
+                        URLDecoder.decode(pair.substring(i + 1), "UTF-8"));
+                }
+            }
+            return parameters;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.openstreetmap.josm.plugins.ods.jts.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.jts.LinearRingAligner;
+import org.openstreetmap.josm.plugins.ods.jts.PackedRingAligner;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+
+public class PackedRingAlignerTest {
+    private final GeometryFactory factory = new GeometryFactory();
+
+    /**
+     * Two long buildings with a common wall. The vertices on the wall don't
+     * match, and the walls are 0.01 apart.
+     * After alignment, both rings must have the same vertices on the wall.
+     */
+    @Test
+    public void testCommonWall() {
+        int n = 100;
+        LinearRing ring1 = createRing1(n);
+        LinearRing ring2 = createRing2(n);
+        PackedRingAligner aligner = new PackedRingAligner(ring1, ring2, 0.02);
+        aligner.run();
+        assertTrue(aligner.ring1Modified());
+        assertTrue(aligner.ring2Modified());
+        Set<Coordinate> wall1 = getWall(aligner.getRing1());
+        Set<Coordinate> wall2 = getWall(aligner.getRing2());
+        assertEquals(2 * n + 1, wall1.size());
+        assertEquals(wall1, wall2);
+        assertTrue(aligner.getRing1().isValid());
+        assertTrue(aligner.getRing2().isValid());
+
+        // Compare with the original aligner
+        LinearRingAligner linearAligner = new LinearRingAligner(ring1, ring2, 0.02);
+        linearAligner.run();
+        assertEquals(getWall(linearAligner.getRing1()), wall1);
+        assertEquals(getWall(linearAligner.getRing2()), wall2);
+    }
+
+    /**
+     * Compare the speed of both aligners on rings with many vertices.
+     */
+    //@Test
+    public void benchmark() {
+        int n = 2000;
+        LinearRing ring1 = createRing1(n);
+        LinearRing ring2 = createRing2(n);
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            new LinearRingAligner(ring1, ring2, 0.02).run();
+            long linear = System.nanoTime() - start;
+            start = System.nanoTime();
+            new PackedRingAligner(ring1, ring2, 0.02).run();
+            long packed = System.nanoTime() - start;
+            System.out.println(String.format("%d vertices. LinearRingAligner: %d ms. " +
+                "PackedRingAligner: %d ms", n, linear / 1000000, packed / 1000000));
+        }
+    }
+
+    /**
+     * Building from x=0 to x=10, with n+1 vertices on the east wall.
+     */
+    private LinearRing createRing1(int n) {
+        double step = 10.0 / n;
+        List<Coordinate> coords = new ArrayList<>();
+        coords.add(new Coordinate(0, 0));
+        for (int k = 0; k <= n; k++) {
+            coords.add(new Coordinate(10, k * step));
+        }
+        coords.add(new Coordinate(0, 10));
+        coords.add(new Coordinate(0, 0));
+        return factory.createLinearRing(coords.toArray(new Coordinate[0]));
+    }
+
+    /**
+     * Building from x=10.01 to x=20, with n vertices on the west wall,
+     * halfway between the vertices of the first building.
+     */
+    private LinearRing createRing2(int n) {
+        double step = 10.0 / n;
+        List<Coordinate> coords = new ArrayList<>();
+        coords.add(new Coordinate(10.01, 0));
+        coords.add(new Coordinate(20, 0));
+        coords.add(new Coordinate(20, 10));
+        coords.add(new Coordinate(10.01, 10));
+        for (int k = n - 1; k >= 0; k--) {
+            coords.add(new Coordinate(10.01, (k + 0.5) * step));
+        }
+        coords.add(new Coordinate(10.01, 0));
+        return factory.createLinearRing(coords.toArray(new Coordinate[0]));
+    }
+
+    private static Set<Coordinate> getWall(LinearRing ring) {
+        Set<Coordinate> wall = new HashSet<>();
+        for (Coordinate coord : ring.getCoordinates()) {
+            if (coord.x > 9.5 && coord.x < 10.5) {
+                wall.add(coord);
+            }
+        }
+        return wall;
+    }
+}
@@ -0,0 +1,183 @@
+package org.openstreetmap.josm.plugins.ods.jts.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.ods.jts.PolygonFilter;
+import org.openstreetmap.josm.plugins.ods.jts.PolygonFilter.Mode;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class PolygonFilterTest {
+    private final GeometryFactory factory = new GeometryFactory();
+
+    @Test
+    public void testSimple() {
+        DataSet result = filter(Mode.SIMPLE);
+        assertCommon(result);
+        assertTrue(get(result, OsmPrimitiveType.WAY, 2).isIncomplete());
+    }
+
+    @Test
+    public void testIndexed() {
+        DataSet result = filter(Mode.INDEXED);
+        assertCommon(result);
+        assertTrue(get(result, OsmPrimitiveType.WAY, 2).isIncomplete());
+        assertNull(get(result, OsmPrimitiveType.NODE, 2));
+        assertNull(get(result, OsmPrimitiveType.NODE, 4));
+    }
+
+    @Test
+    public void testInPlace() {
+        DataSet result = filter(Mode.IN_PLACE);
+        assertCommon(result);
+        // The members of kept relations are kept complete
+        assertFalse(get(result, OsmPrimitiveType.WAY, 2).isIncomplete());
+        assertNotNull(get(result, OsmPrimitiveType.NODE, 2));
+        assertNotNull(get(result, OsmPrimitiveType.NODE, 4));
+    }
+
+    /**
+     * The copying modes agree on the completeness of every member of the
+     * kept relation. Only the in place mode keeps the outside members
+     * complete.
+     */
+    @Test
+    public void testRelationMemberCompleteness() {
+        List<Boolean> simple = getMemberCompleteness(filter(Mode.SIMPLE));
+        List<Boolean> indexed = getMemberCompleteness(filter(Mode.INDEXED));
+        List<Boolean> inPlace = getMemberCompleteness(filter(Mode.IN_PLACE));
+        assertEquals(Arrays.asList(true, false), simple);
+        assertEquals(simple, indexed);
+        assertEquals(Arrays.asList(true, true), inPlace);
+    }
+
+    /**
+     * Nodes exactly on the border of the polygon, on the straight and on
+     * the slanted edges and on the vertices, are outside in both copying
+     * modes. The nodes inside are kept.
+     */
+    @Test
+    public void testBorderNodes() {
+        Polygon polygon = factory.createPolygon(factory.createLinearRing(new Coordinate[] {
+            new Coordinate(0, 0), new Coordinate(4, 0), new Coordinate(4, 2),
+            new Coordinate(2, 4), new Coordinate(0, 4), new Coordinate(0, 0)
+        }), null);
+        double[][] border = new double[][] {
+            {0, 0}, {2, 0}, {4, 1}, {4, 2}, {3, 3}, {2.5, 3.5}, {1, 4}, {0, 2}
+        };
+        double[][] inside = new double[][] {
+            {1, 1}, {2, 2}, {3.5, 0.5}, {2.5, 3.25}, {0.125, 3.875}
+        };
+        DataSet dataSet = new DataSet();
+        long id = 1;
+        for (double[] coord : border) {
+            createNode(dataSet, id++, coord[0], coord[1]);
+        }
+        for (double[] coord : inside) {
+            createNode(dataSet, id++, coord[0], coord[1]);
+        }
+        List<Long> simple = getNodeIds(new PolygonFilter(polygon, Mode.SIMPLE).filter(dataSet));
+        List<Long> indexed = getNodeIds(new PolygonFilter(polygon, Mode.INDEXED).filter(dataSet));
+        assertEquals(simple, indexed);
+        List<Long> expected = new ArrayList<>();
+        for (long i = border.length + 1; i < id; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, indexed);
+    }
+
+    private static List<Long> getNodeIds(DataSet result) {
+        List<Long> ids = new ArrayList<>();
+        for (Node node : result.getNodes()) {
+            ids.add(node.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static List<Boolean> getMemberCompleteness(DataSet result) {
+        Relation relation = (Relation) get(result, OsmPrimitiveType.RELATION, 1);
+        List<Boolean> complete = new ArrayList<>();
+        for (RelationMember member : relation.getMembers()) {
+            complete.add(!member.getMember().isIncomplete());
+        }
+        return complete;
+    }
+
+    private void assertCommon(DataSet result) {
+        // Inside the polygon
+        assertNotNull(get(result, OsmPrimitiveType.NODE, 1));
+        // The way crossing the polygon and its outside node
+        assertNotNull(get(result, OsmPrimitiveType.WAY, 1));
+        assertNotNull(get(result, OsmPrimitiveType.NODE, 3));
+        assertTrue(get(result, OsmPrimitiveType.RELATION, 1) != null);
+        // Completely outside
+        assertNull(get(result, OsmPrimitiveType.NODE, 5));
+        assertNull(get(result, OsmPrimitiveType.WAY, 3));
+        assertNull(get(result, OsmPrimitiveType.RELATION, 2));
+    }
+
+    private static OsmPrimitive get(DataSet dataSet, OsmPrimitiveType type, long id) {
+        return dataSet.getPrimitiveById(id, type);
+    }
+
+    /**
+     * Filter a small dataSet with the unit square.
+     */
+    private DataSet filter(Mode mode) {
+        DataSet dataSet = new DataSet();
+        Node n1 = createNode(dataSet, 1, 0.5, 0.5);
+        Node n2 = createNode(dataSet, 2, 2, 2);
+        Node n3 = createNode(dataSet, 3, 2, 0.5);
+        Node n4 = createNode(dataSet, 4, 3, 3);
+        Node n5 = createNode(dataSet, 5, 4, 4);
+        Way w1 = createWay(dataSet, 1, n1, n3);
+        Way w2 = createWay(dataSet, 2, n2, n4);
+        createWay(dataSet, 3, n4, n5);
+        Relation r1 = new Relation(1, 1);
+        r1.setMembers(Arrays.asList(new RelationMember("", w1), new RelationMember("", w2)));
+        dataSet.addPrimitive(r1);
+        Relation r2 = new Relation(2, 1);
+        r2.setMembers(Arrays.asList(new RelationMember("", w2)));
+        dataSet.addPrimitive(r2);
+        Polygon polygon = factory.createPolygon(factory.createLinearRing(new Coordinate[] {
+            new Coordinate(0, 0), new Coordinate(1, 0), new Coordinate(1, 1),
+            new Coordinate(0, 1), new Coordinate(0, 0)
+        }), null);
+        return new PolygonFilter(polygon, mode).filter(dataSet);
+    }
+
+    private static Node createNode(DataSet dataSet, long id, double lon, double lat) {
+        Node node = new Node(id, 1);
+        node.setCoor(new LatLon(lat, lon));
+        dataSet.addPrimitive(node);
+        return node;
+    }
+
+    private static Way createWay(DataSet dataSet, long id, Node... nodes) {
+        Way way = new Way(id, 1);
+        way.setNodes(Arrays.asList(nodes));
+        dataSet.addPrimitive(way);
+        return way;
+    }
+}
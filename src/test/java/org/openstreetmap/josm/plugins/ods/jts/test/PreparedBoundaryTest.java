@@ -0,0 +1,70 @@
+package org.openstreetmap.josm.plugins.ods.jts.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.jts.PreparedBoundary;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class PreparedBoundaryTest {
+    private final GeometryFactory factory = new GeometryFactory();
+
+    /**
+     * Compare the prepared boundary with a plain covers test for random
+     * buildings, on an L-shaped boundary with a hole.
+     */
+    @Test
+    public void testSameAsCovers() {
+        Geometry boundary = rectangle(0, 0, 100, 50).union(rectangle(0, 0, 50, 100))
+            .difference(rectangle(20, 20, 30, 30));
+        PreparedBoundary preparedBoundary = new PreparedBoundary(boundary);
+        Random random = new Random(1);
+        int n = 10000;
+        for (int i = 0; i < n; i++) {
+            double x = random.nextDouble() * 110 - 5;
+            double y = random.nextDouble() * 110 - 5;
+            Polygon building = rectangle(x, y, x + random.nextDouble() * 2,
+                y + random.nextDouble() * 2);
+            assertEquals(boundary.covers(building), preparedBoundary.covers(building));
+        }
+        // Most buildings are decided by the grid
+        int fast = preparedBoundary.getFastAccepts() + preparedBoundary.getFastRejects();
+        assertTrue(fast > 4 * preparedBoundary.getExactTests());
+    }
+
+    /**
+     * Points on the border, also on the edges of the interior cells, are
+     * covered but not contained.
+     */
+    @Test
+    public void testContains() {
+        Geometry boundary = rectangle(0, 0, 64, 64);
+        PreparedBoundary preparedBoundary = new PreparedBoundary(boundary);
+        double[][] points = new double[][] {
+            {0, 0}, {0, 32}, {64, 5}, {16, 64}, {1, 1}, {32, 0.5}, {63.5, 63.5}, {70, 10}
+        };
+        for (double[] point : points) {
+            Geometry geometry = factory.createPoint(new Coordinate(point[0], point[1]));
+            String message = point[0] + " " + point[1];
+            assertEquals(message, boundary.contains(geometry),
+                preparedBoundary.contains(point[0], point[1]));
+            assertEquals(message, boundary.covers(geometry),
+                preparedBoundary.covers(point[0], point[1]));
+        }
+    }
+
+    private Polygon rectangle(double minX, double minY, double maxX, double maxY) {
+        return factory.createPolygon(factory.createLinearRing(new Coordinate[] {
+            new Coordinate(minX, minY), new Coordinate(maxX, minY),
+            new Coordinate(maxX, maxY), new Coordinate(minX, maxY),
+            new Coordinate(minX, minY)
+        }), null);
+    }
+}
@@ -0,0 +1,201 @@
+package org.openstreetmap.josm.plugins.ods.metadata.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.gertjanidema.conversion.valuemapper.ValueMapperFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.Host;
+import org.openstreetmap.josm.plugins.ods.OdsFeatureSource;
+import org.openstreetmap.josm.plugins.ods.metadata.HttpMetaDataLoader;
+import org.openstreetmap.josm.plugins.ods.metadata.MetaData;
+import org.openstreetmap.josm.plugins.ods.metadata.MetaDataAttribute;
+import org.openstreetmap.josm.plugins.ods.metadata.MetaDataCache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpMetaDataLoaderTest {
+    private HttpServer server;
+    private StubHandler handler;
+    private File directory;
+    private ExecutorService refreshExecutor;
+
+    @Before
+    public void setUp() throws IOException {
+        handler = new StubHandler();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", handler);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        directory = File.createTempFile("metadata", "");
+        directory.delete();
+        refreshExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        refreshExecutor.shutdownNow();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * A fresh entry is served from memory, and after a restart from disk.
+     */
+    @Test
+    public void testCached() throws Exception {
+        MetaDataCache cache = new MetaDataCache(directory, 60000, refreshExecutor);
+        assertEquals("2014-05-01", load(cache, "/page").get("actualiteit"));
+        assertEquals("2014-05-01", load(cache, "/page").get("actualiteit"));
+        assertEquals(1, handler.requests.get());
+        // A new cache instance reads the file of the first one
+        MetaDataCache restarted = new MetaDataCache(directory, 60000, refreshExecutor);
+        assertEquals("2014-05-01", load(restarted, "/page").get("actualiteit"));
+        assertEquals(1, handler.requests.get());
+    }
+
+    /**
+     * A stale entry is served while it is refreshed in the background.
+     */
+    @Test
+    public void testStaleWhileRefresh() throws Exception {
+        MetaDataCache cache = new MetaDataCache(directory, 0, refreshExecutor);
+        assertEquals("2014-05-01", load(cache, "/page").get("actualiteit"));
+        handler.value = "2014-06-01";
+        Thread.sleep(5);
+        assertEquals("2014-05-01", load(cache, "/page").get("actualiteit"));
+        refreshExecutor.shutdown();
+        assertTrue(refreshExecutor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(2, handler.requests.get());
+        refreshExecutor = Executors.newSingleThreadExecutor();
+        MetaDataCache restarted = new MetaDataCache(directory, 60000, refreshExecutor);
+        assertEquals("2014-06-01", load(restarted, "/page").get("actualiteit"));
+        assertEquals(2, handler.requests.get());
+    }
+
+    /**
+     * An entry older than the maximum age is refreshed before it is used.
+     */
+    @Test
+    public void testMaxAge() throws Exception {
+        MetaDataCache cache = new MetaDataCache(directory, 0, 0, refreshExecutor);
+        assertEquals("2014-05-01", load(cache, "/page").get("actualiteit"));
+        handler.value = "2014-06-01";
+        Thread.sleep(5);
+        assertEquals("2014-06-01", load(cache, "/page").get("actualiteit"));
+        assertEquals(2, handler.requests.get());
+    }
+
+    /**
+     * Loaders of the same page with different attributes don't share an
+     * entry, so no attribute is missing from the cached values.
+     */
+    @Test
+    public void testAttributesInKey() throws Exception {
+        MetaDataCache cache = new MetaDataCache(directory, 60000, refreshExecutor);
+        MetaData metaData = new MetaData();
+        createLoader(cache, "/page", "actualiteit").populateMetaData(metaData);
+        createLoader(cache, "/page", "datum").populateMetaData(metaData);
+        assertEquals("2014-05-01", metaData.get("datum"));
+        assertEquals(2, handler.requests.get());
+    }
+
+    /**
+     * The loaders of a host run at the same time.
+     */
+    @Test
+    public void testConcurrentLoaders() throws Exception {
+        handler.delay = 300;
+        MetaDataCache cache = new MetaDataCache(directory, 60000, refreshExecutor);
+        TestHost host = new TestHost();
+        for (int i = 0; i < 3; i++) {
+            host.addMetaDataLoader(createLoader(cache, "/page" + i, "value" + i));
+        }
+        host.initialize();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("2014-05-01", host.getMetaData().get("value" + i));
+        }
+        assertEquals(3, handler.requests.get());
+        assertEquals(3, handler.maxConcurrent.get());
+    }
+
+    private MetaData load(MetaDataCache cache, String path) throws Exception {
+        MetaData metaData = new MetaData();
+        createLoader(cache, path, "actualiteit").populateMetaData(metaData);
+        return metaData;
+    }
+
+    private HttpMetaDataLoader createLoader(MetaDataCache cache, String path,
+            String name) throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + path;
+        HttpMetaDataLoader loader = new HttpMetaDataLoader(url);
+        loader.setCache(cache);
+        loader.addAttribute(new MetaDataAttribute(name, "#actualiteit",
+            new ValueMapperFactory().createValueMapper("string", new Properties())));
+        return loader;
+    }
+
+    private static class StubHandler implements HttpHandler {
+        volatile String value = "2014-05-01";
+        volatile long delay = 0;
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            int current = active.incrementAndGet();
+            synchronized (maxConcurrent) {
+                maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = ("<html><body><p>Actualiteit: <span id=\"actualiteit\">"
+                + value + "</span></p></body></html>").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            active.decrementAndGet();
+        }
+    }
+
+    private static class TestHost extends Host {
+        @Override
+        public boolean hasFeatureType(String feature) {
+            return false;
+        }
+
+        @Override
+        public OdsFeatureSource getOdsFeatureSource(String feature) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.openstreetmap.josm.plugins.ods.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.DownloadMetrics;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Download;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Stage;
+
+public class DownloadMetricsTest {
+
+    /**
+     * Every stage that runs is measured, a failed stage is marked as failed.
+     */
+    @Test(timeout = 10000)
+    public void testStages() throws Exception {
+        DownloadMetrics metrics = run();
+        assertEquals(Arrays.asList("download pand", "build pand"), metrics.getStageNames());
+        JsonArray stages = parse(metrics).getJsonArray("stages");
+        JsonObject download = stages.getJsonObject(0);
+        assertEquals("pand", download.getString("source"));
+        assertTrue(download.getBoolean("io"));
+        assertTrue(download.getBoolean("succeeded"));
+        assertTrue(download.getJsonNumber("wallTime").longValue() >= 50);
+        assertFalse(stages.getJsonObject(1).getBoolean("succeeded"));
+    }
+
+    /**
+     * Counters and timings are added up per source.
+     */
+    @Test
+    public void testCounters() throws Exception {
+        DownloadMetrics metrics = new DownloadMetrics();
+        metrics.count("pand", "features", 10);
+        metrics.count("pand", "features", 5);
+        metrics.time(null, "merge", 3000000);
+        metrics.time(null, "merge", 2000000);
+        metrics.finish();
+        assertEquals(Long.valueOf(15), metrics.getCounters("pand").get("features"));
+        assertEquals(Long.valueOf(5000000), metrics.getTimings(null).get("merge"));
+        JsonArray sources = parse(metrics).getJsonArray("sources");
+        assertEquals(15, sources.getJsonObject(0).getJsonObject("counters").getInt("features"));
+        assertFalse(sources.getJsonObject(1).containsKey("source"));
+        assertEquals(5, sources.getJsonObject(1).getJsonObject("timings").getInt("merge"));
+        assertTrue(metrics.getReport().contains("merge"));
+    }
+
+    /**
+     * Every download adds a line to the log.
+     */
+    @Test
+    public void testLog() throws Exception {
+        File file = File.createTempFile("metrics", ".log");
+        try {
+            file.delete();
+            DownloadMetrics metrics = new DownloadMetrics();
+            metrics.finish();
+            metrics.write(file, "BAG", "1.0", Long.MAX_VALUE);
+            metrics.write(file, "BAG", "1.1", Long.MAX_VALUE);
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            assertEquals(2, lines.size());
+            assertEquals("1.1", Json.createReader(new StringReader(lines.get(1)))
+                .readObject().getString("version"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A log that is too large is moved aside, replacing the previous one.
+     */
+    @Test
+    public void testRotate() throws Exception {
+        File directory = Files.createTempDirectory("metrics").toFile();
+        File file = new File(directory, "metrics.log");
+        File old = new File(directory, "metrics.log.1");
+        try {
+            DownloadMetrics metrics = new DownloadMetrics();
+            metrics.finish();
+            for (int i = 0; i < 5; i++) {
+                metrics.write(file, "BAG", String.valueOf(i), 1);
+            }
+            assertEquals(1, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+            List<String> lines = Files.readAllLines(old.toPath(), StandardCharsets.UTF_8);
+            assertEquals(1, lines.size());
+            assertEquals("3", Json.createReader(new StringReader(lines.get(0)))
+                .readObject().getString("version"));
+        } finally {
+            file.delete();
+            old.delete();
+            directory.delete();
+        }
+    }
+
+    private static DownloadMetrics run() throws InterruptedException {
+        DownloadScheduler scheduler = new DownloadScheduler(2);
+        Download download = scheduler.newDownload();
+        DownloadMetrics metrics = new DownloadMetrics();
+        download.setListener(metrics);
+        Stage downloadStage = download.addIo("download", "pand", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                Thread.sleep(50);
+                return null;
+            }
+        });
+        download.add("build", "pand", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                throw new Exception("failed");
+            }
+        }, downloadStage);
+        download.start();
+        download.await();
+        metrics.finish();
+        return metrics;
+    }
+
+    private static JsonObject parse(DownloadMetrics metrics) {
+        return Json.createReader(new StringReader(metrics.toJson("BAG", "1.0"))).readObject();
+    }
+}
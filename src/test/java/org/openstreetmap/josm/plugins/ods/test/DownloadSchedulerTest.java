@@ -0,0 +1,237 @@
+package org.openstreetmap.josm.plugins.ods.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Download;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.Stage;
+import org.openstreetmap.josm.plugins.ods.DownloadScheduler.StageListener;
+import org.openstreetmap.josm.plugins.ods.IoExecutors;
+
+public class DownloadSchedulerTest {
+
+    /**
+     * The last stage of a fast chain runs while a slow chain is still
+     * downloading.
+     */
+    @Test(timeout = 10000)
+    public void testIndependentChains() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(4);
+        Download download = scheduler.newDownload();
+        final CountDownLatch fastProcessed = new CountDownLatch(1);
+        final AtomicBoolean overlapped = new AtomicBoolean(false);
+        Stage slow = download.add("download", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                overlapped.set(fastProcessed.await(5, TimeUnit.SECONDS));
+                return null;
+            }
+        });
+        download.add("process", new Noop(), slow);
+        Stage fast = download.add("download", new Noop());
+        download.add("process", new Callable<Object>() {
+            @Override
+            public Object call() {
+                fastProcessed.countDown();
+                return null;
+            }
+        }, fast);
+        download.start();
+        download.await();
+        assertTrue(overlapped.get());
+        assertTrue(download.getExceptions().isEmpty());
+    }
+
+    /**
+     * The stages after a failed stage are skipped. Other chains go on.
+     */
+    @Test(timeout = 10000)
+    public void testFailure() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(2);
+        Download download = scheduler.newDownload();
+        Counter skipped = new Counter();
+        Counter done = new Counter();
+        Stage failing = download.add("prepare", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                throw new Exception("failed");
+            }
+        });
+        Stage next = download.add("download", skipped, failing);
+        download.add("process", skipped, next);
+        download.add("download", done, download.add("prepare", done));
+        download.start();
+        download.await();
+        assertEquals(0, skipped.count.get());
+        assertEquals(2, done.count.get());
+        assertEquals(1, download.getExceptions().size());
+    }
+
+    /**
+     * Cancelling a download doesn't affect another download on the same
+     * scheduler.
+     */
+    @Test(timeout = 10000)
+    public void testCancel() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(2);
+        Download cancelled = scheduler.newDownload();
+        Download other = scheduler.newDownload();
+        final CountDownLatch running = new CountDownLatch(1);
+        Counter skipped = new Counter();
+        Counter done = new Counter();
+        Stage blocking = cancelled.add("download", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                running.countDown();
+                Thread.sleep(60000);
+                return null;
+            }
+        });
+        cancelled.add("process", skipped, blocking);
+        other.add("process", done, other.add("download", done));
+        cancelled.start();
+        running.await();
+        other.start();
+        cancelled.cancel();
+        cancelled.await();
+        other.await();
+        assertTrue(cancelled.isCancelled());
+        assertFalse(other.isCancelled());
+        assertEquals(0, skipped.count.get());
+        assertEquals(2, done.count.get());
+    }
+
+    /**
+     * The listener sees every stage that runs, and a stage that depends
+     * on several chains starts after all of them.
+     */
+    @Test(timeout = 10000)
+    public void testListener() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(3);
+        Download download = scheduler.newDownload();
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        download.setListener(new StageListener() {
+            @Override
+            public void stageStarted(Stage stage) {
+                events.add("start " + stage);
+            }
+
+            @Override
+            public void stageFinished(Stage stage, boolean succeeded) {
+                events.add("finish " + stage);
+            }
+        });
+        Stage pand = download.add("download", "pand", new Noop());
+        Stage ligplaats = download.add("download", "ligplaats", new Noop());
+        download.add("process", new Noop(), pand, ligplaats);
+        download.start();
+        download.await();
+        assertEquals(6, events.size());
+        assertEquals("finish process", events.get(5));
+        assertTrue(events.indexOf("start process") > events.indexOf("finish download pand"));
+        assertTrue(events.indexOf("start process") > events.indexOf("finish download ligplaats"));
+    }
+
+    /**
+     * I/O stages run on the I/O executor, other stages on the bounded pool.
+     * Consumer stages run on platform threads of their own, never on the
+     * I/O executor.
+     */
+    @Test(timeout = 10000)
+    public void testIoExecutor() throws Exception {
+        ExecutorService ioExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "io");
+            }
+        });
+        try {
+            DownloadScheduler scheduler = new DownloadScheduler(1, ioExecutor);
+            Download download = scheduler.newDownload();
+            ThreadName io = new ThreadName();
+            ThreadName cpu = new ThreadName();
+            ThreadName consumer = new ThreadName();
+            Stage downloadStage = download.addIo("download", "pand", io);
+            download.add("build", "pand", cpu, downloadStage);
+            Stage build = download.addConsumer("build", "ligplaats", consumer);
+            download.start();
+            download.await();
+            assertEquals("io", io.name);
+            assertEquals("ODS download", cpu.name);
+            assertEquals("ODS build", consumer.name);
+            assertTrue(downloadStage.isIo());
+            assertFalse(build.isIo());
+        } finally {
+            ioExecutor.shutdown();
+        }
+    }
+
+    /**
+     * The virtual thread executor is only available when the runtime
+     * supports virtual threads.
+     */
+    @Test(timeout = 10000)
+    public void testVirtualThreads() throws Exception {
+        ExecutorService executor = IoExecutors.createVirtualThreadExecutor();
+        try {
+            Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            // No virtual threads in this runtime
+            assertNull(executor);
+        }
+        if (executor != null) {
+            Future<Object> isVirtual = executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+                }
+            });
+            assertEquals(Boolean.TRUE, isVirtual.get());
+            executor.shutdown();
+        }
+    }
+
+    private static class Noop implements Callable<Object> {
+        @Override
+        public Object call() {
+            return null;
+        }
+    }
+
+    private static class ThreadName implements Callable<Object> {
+        volatile String name;
+
+        @Override
+        public Object call() {
+            name = Thread.currentThread().getName();
+            return null;
+        }
+    }
+
+    private static class Counter implements Callable<Object> {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Object call() {
+            count.incrementAndGet();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.openstreetmap.josm.plugins.ods.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSetMerger;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.ods.PrimitiveBuilder;
+import org.openstreetmap.josm.plugins.ods.osm.MergedPrimitiveFinder;
+import org.openstreetmap.josm.plugins.ods.osm.NodeCache;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+public class PrimitiveBuilderTest {
+    private final static GeometryFactory factory = new GeometryFactory(new PrecisionModel(1e7), 4326);
+    // Roughly the width and depth of a row house in degrees
+    private final static double WIDTH = 8e-5;
+    private final static double DEPTH = 1e-4;
+
+    @Test
+    public void testSharedNodes() {
+        DataSet dataSet = new DataSet();
+        PrimitiveBuilder builder = new PrimitiveBuilder(dataSet);
+        NodeCache.beginSession(dataSet);
+        for (int i = 0; i < 10; i++) {
+            builder.build(createRowHouse(i));
+        }
+        NodeCache.endSession(dataSet);
+        // 10 adjacent houses share their side walls
+        assertEquals(22, dataSet.getNodes().size());
+        assertEquals(10, dataSet.getWays().size());
+    }
+
+    /**
+     * Two downloads built into the same dataset. The house of the second
+     * download shares a wall with a house of the first download. The shared
+     * nodes are merged, not duplicated.
+     */
+    @Test
+    public void testNodesSharedWithEarlierDownload() {
+        DataSet dataSet = new DataSet();
+        Way first = build(dataSet, createRowHouse(0));
+        Way second = build(dataSet, createRowHouse(1));
+        assertEquals(6, dataSet.getNodes().size());
+        assertEquals(2, dataSet.getWays().size());
+        // The east wall of the first house is the west wall of the second
+        assertSame(first.getNode(1), second.getNode(0));
+        assertSame(first.getNode(2), second.getNode(3));
+        for (Node node : second.getNodes()) {
+            assertSame(dataSet, node.getDataSet());
+        }
+    }
+
+    /**
+     * The second download is built in a detached dataset and merged into the
+     * dataset of the first, the way the data layer merges them. The merged
+     * way is found again, and shares the wall with the first house.
+     */
+    @Test
+    public void testMergeDetachedDownload() {
+        DataSet dataSet = new DataSet();
+        Way first = build(dataSet, createRowHouse(0));
+        DataSet batch = new DataSet();
+        Way second = build(batch, createRowHouse(1));
+        new DataSetMerger(dataSet, batch).merge();
+        assertEquals(6, dataSet.getNodes().size());
+        assertEquals(2, dataSet.getWays().size());
+        Way merged = (Way) new MergedPrimitiveFinder(dataSet).find(second);
+        assertNotNull(merged);
+        assertNotSame(second, merged);
+        assertSame(dataSet, merged.getDataSet());
+        assertSame(first.getNode(1), merged.getNode(0));
+        assertSame(first.getNode(2), merged.getNode(3));
+        // The first house is found as itself
+        assertSame(first, new MergedPrimitiveFinder(dataSet).find(first));
+    }
+
+    private static Way build(DataSet dataSet, Polygon polygon) {
+        dataSet.beginUpdate();
+        NodeCache.beginSession(dataSet);
+        try {
+            return new PrimitiveBuilder(dataSet).buildWay(polygon);
+        } finally {
+            NodeCache.endSession(dataSet);
+            dataSet.endUpdate();
+        }
+    }
+
+    /**
+     * Build 100k adjacent row houses with and without the node cache.
+     * Disabled by default because it takes a while.
+     */
+    //@Test
+    public void benchmark() {
+        int n = 100000;
+        DataSet dataSet = new DataSet();
+        PrimitiveBuilder builder = new PrimitiveBuilder(dataSet);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < n; i++) {
+            builder.build(createRowHouse(i));
+        }
+        long search = System.currentTimeMillis() - start;
+
+        dataSet = new DataSet();
+        builder = new PrimitiveBuilder(dataSet);
+        start = System.currentTimeMillis();
+        NodeCache.beginSession(dataSet);
+        for (int i = 0; i < n; i++) {
+            builder.build(createRowHouse(i));
+        }
+        NodeCache.endSession(dataSet);
+        long cached = System.currentTimeMillis() - start;
+        System.out.println(String.format("%d row houses. Dataset search: %d ms. Node cache: %d ms",
+            n, search, cached));
+    }
+
+    /**
+     * Create the i-th house in a row of houses. Rows have 100 houses.
+     */
+    private Polygon createRowHouse(int i) {
+        double x = 5.0 + (i % 100) * WIDTH;
+        double y = 52.0 + (i / 100) * 2 * DEPTH;
+        Coordinate[] coords = new Coordinate[] {
+            new Coordinate(x, y),
+            new Coordinate(x + WIDTH, y),
+            new Coordinate(x + WIDTH, y + DEPTH),
+            new Coordinate(x, y + DEPTH),
+            new Coordinate(x, y)
+        };
+        for (Coordinate coord : coords) {
+            factory.getPrecisionModel().makePrecise(coord);
+        }
+        return factory.createPolygon(factory.createLinearRing(coords), null);
+    }
+}